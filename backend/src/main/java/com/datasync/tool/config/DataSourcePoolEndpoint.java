@@ -0,0 +1,23 @@
+package com.datasync.tool.config;
+
+import com.datasync.tool.service.DataSourcePoolRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+@Component
+@Endpoint(id = "datasourcepools")
+@RequiredArgsConstructor
+public class DataSourcePoolEndpoint {
+
+    private final DataSourcePoolRegistry poolRegistry;
+
+    @ReadOperation
+    public List<Map<String, Object>> pools() {
+        return poolRegistry.getPoolStats();
+    }
+}
@@ -1,9 +1,13 @@
 package com.datasync.tool.controller;
 
+import com.datasync.tool.engine.pipeline.BatchScheduler;
+import com.datasync.tool.engine.runner.TaskRunner;
 import com.datasync.tool.entity.SyncLog;
 import com.datasync.tool.entity.SyncTask;
 import com.datasync.tool.repository.SyncLogRepository;
 import com.datasync.tool.repository.SyncTaskRepository;
+import com.datasync.tool.service.ChangelogSyncService;
+import com.datasync.tool.service.RunProgressRegistry;
 import lombok.RequiredArgsConstructor;
 import org.quartz.*;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -29,6 +33,10 @@ public class MonitorController {
     private final SyncTaskRepository taskRepository;
     private final SyncLogRepository logRepository;
     private final Scheduler scheduler;
+    private final BatchScheduler batchScheduler;
+    private final TaskRunner taskRunner;
+    private final ChangelogSyncService changelogSyncService;
+    private final RunProgressRegistry progressRegistry;
 
     @GetMapping("/stats")
     public Map<String, Object> getStats() {
@@ -43,6 +51,7 @@ public class MonitorController {
         stats.put("todaySuccess", logRepository.countByStartTimeGreaterThanEqualAndResult(todayStart, "SUCCESS"));
         stats.put("todayFailure", logRepository.countByStartTimeGreaterThanEqualAndResult(todayStart, "FAILURE"));
         stats.put("todayRunning", logRepository.countByStartTimeGreaterThanEqualAndResult(todayStart, "RUNNING"));
+        stats.put("todayCancelled", logRepository.countByStartTimeGreaterThanEqualAndResult(todayStart, "CANCELLED"));
         
         // 最近7天趋势
         LocalDateTime sevenDaysAgo = LocalDateTime.of(LocalDate.now().minusDays(6), LocalTime.MIN);
@@ -73,15 +82,56 @@ public class MonitorController {
         return stats;
     }
 
+    @GetMapping("/runs")
+    public Map<String, Object> getRuns() {
+        return taskRunner.getStats();
+    }
+
+    /**
+     * 运行中任务的实时进度：已处理行数、总数、当前速率和各阶段状态。
+     */
+    @GetMapping("/progress")
+    public List<Map<String, Object>> getProgress() {
+        return progressRegistry.snapshot();
+    }
+
+    @GetMapping("/changelog")
+    public Map<Long, Map<String, Object>> getChangelogStats() {
+        return changelogSyncService.getStats();
+    }
+
+    @GetMapping("/scheduler")
+    public Map<String, Object> getSchedulerStats() {
+        return batchScheduler.getStats();
+    }
+
     @GetMapping("/tasks")
     public List<Map<String, Object>> getTaskMonitor() {
         List<SyncTask> tasks = taskRepository.findAllByType("TASK");
+        Map<Long, Map<String, Object>> schedulerStats = batchScheduler.getTaskStats();
+        Map<Long, Map<String, Object>> changelogStats = changelogSyncService.getStats();
         return tasks.stream().map(task -> {
             Map<String, Object> map = new HashMap<>();
             map.put("id", task.getId());
             map.put("name", task.getName());
             map.put("status", task.getStatus());
             map.put("cron", task.getCron());
+            map.put("priority", task.getPriority());
+
+            // 写入调度排队情况（运行中为实时值，否则为最近一次运行）
+            Map<String, Object> sched = schedulerStats.get(task.getId());
+            if (sched != null) {
+                map.put("queueWaitMs", sched.get("queueWaitMs"));
+                map.put("avgQueueWaitMs", sched.get("avgQueueWaitMs"));
+                map.put("maxQueueWaitMs", sched.get("maxQueueWaitMs"));
+                map.put("queuedBatches", sched.get("queuedBatches"));
+            }
+            // 变更日志任务的端到端延迟
+            Map<String, Object> cdc = changelogStats.get(task.getId());
+            if (cdc != null) {
+                map.put("lagMs", cdc.get("lagMs"));
+                map.put("lastSeq", cdc.get("lastSeq"));
+            }
             
             // 下次执行时间
             try {
@@ -103,12 +153,24 @@ public class MonitorController {
                 // Ignore
             }
             
-            // 获取最新执行进度
+            // 获取最新执行进度：运行中的任务直接读内存中的实时值，不查询日志表
+            RunProgressRegistry.RunProgress progress = progressRegistry.findLatestByTask(task.getId()).orElse(null);
+            if (progress != null) {
+                map.put("lastResult", "RUNNING");
+                map.put("lastStartTime", progress.getStartTime());
+                map.put("totalCount", progress.getTotal());
+                map.put("totalEstimated", progress.getTotalEstimated());
+                map.put("processedCount", progress.getProcessed());
+                map.put("rowsPerSecond", Math.round(progress.getRowsPerSecond()));
+                map.put("stage", progress.getStage());
+                return map;
+            }
             logRepository.findFirstByTaskIdOrderByStartTimeDesc(task.getId()).ifPresent(latestLog -> {
                 map.put("lastResult", latestLog.getResult());
                 map.put("lastStartTime", latestLog.getStartTime());
                 if ("RUNNING".equals(latestLog.getResult())) {
                     map.put("totalCount", latestLog.getTotalCount());
+                    map.put("totalEstimated", latestLog.getTotalEstimated());
                     map.put("processedCount", latestLog.getProcessedCount());
                 }
             });
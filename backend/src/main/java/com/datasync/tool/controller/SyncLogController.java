@@ -2,6 +2,7 @@ package com.datasync.tool.controller;
 
 import com.datasync.tool.entity.SyncLog;
 import com.datasync.tool.repository.SyncLogRepository;
+import com.datasync.tool.service.RunProgressRegistry;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -17,6 +18,7 @@ import java.util.List;
 @RequiredArgsConstructor
 public class SyncLogController {
     private final SyncLogRepository syncLogRepository;
+    private final RunProgressRegistry progressRegistry;
 
     @GetMapping
     public Page<SyncLog> getAllLogs(
@@ -37,7 +39,9 @@ public class SyncLogController {
 
     @GetMapping("/task/{taskId}/latest")
     public SyncLog getLatestLogByTaskId(@PathVariable Long taskId) {
-        return syncLogRepository.findFirstByTaskIdOrderByStartTimeDesc(taskId).orElse(null);
+        return syncLogRepository.findFirstByTaskIdOrderByStartTimeDesc(taskId)
+                .map(progressRegistry::overlay)
+                .orElse(null);
     }
 
     @GetMapping("/search")
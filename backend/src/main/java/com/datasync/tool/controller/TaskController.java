@@ -1,8 +1,11 @@
 package com.datasync.tool.controller;
 
 import com.datasync.tool.entity.SyncLog;
+import com.datasync.tool.entity.SyncWatermark;
 import com.datasync.tool.repository.SyncLogRepository;
+import com.datasync.tool.repository.SyncWatermarkRepository;
 import com.datasync.tool.entity.SyncTask;
+import com.datasync.tool.service.RunProgressRegistry;
 import com.datasync.tool.service.SyncTaskService;
 import com.datasync.tool.service.TaskExecutionService;
 import lombok.RequiredArgsConstructor;
@@ -24,14 +27,34 @@ public class TaskController {
     private final SyncTaskService syncTaskService;
     private final TaskExecutionService taskExecutionService;
     private final SyncLogRepository syncLogRepository;
+    private final SyncWatermarkRepository watermarkRepository;
+    private final RunProgressRegistry progressRegistry;
 
     @GetMapping("/{id}/latest-log")
     public ResponseEntity<SyncLog> getLatestLog(@PathVariable Long id) {
+        // 运行中的进度取内存中的实时值
         return syncLogRepository.findFirstByTaskIdOrderByStartTimeDesc(id)
+                .map(progressRegistry::overlay)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @GetMapping("/{id}/watermark")
+    public ResponseEntity<SyncWatermark> getWatermark(@PathVariable Long id) {
+        return watermarkRepository.findById(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 重置水位，下次执行时重新读取全部数据。
+     */
+    @DeleteMapping("/{id}/watermark")
+    public ResponseEntity<Void> resetWatermark(@PathVariable Long id) {
+        watermarkRepository.deleteById(id);
+        return ResponseEntity.ok().build();
+    }
+
     @GetMapping("/cron/next-executions")
     public ResponseEntity<List<Date>> getNextExecutions(@RequestParam String cron, @RequestParam(defaultValue = "5") int count) {
         try {
@@ -104,6 +127,24 @@ public class TaskController {
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * 从最近一次失败或取消的运行的检查点继续执行。
+     */
+    @PostMapping("/{id}/resume")
+    public ResponseEntity<String> resume(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(taskExecutionService.resumeTask(id));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/{id}/stop")
+    public ResponseEntity<String> stop(@PathVariable Long id) {
+        String result = taskExecutionService.stopTask(id);
+        return ResponseEntity.ok(result);
+    }
+
     @PostMapping("/{id}/copy")
     public ResponseEntity<SyncTask> copy(@PathVariable Long id) {
         SyncTask original = syncTaskService.findById(id).orElseThrow();
@@ -112,6 +153,7 @@ public class TaskController {
         copy.setContent(original.getContent());
         copy.setCron(original.getCron());
         copy.setDescription(original.getDescription());
+        copy.setPriority(original.getPriority());
         copy.setStatus("DISABLED");
         copy.setType(original.getType());
         copy.setParentId(original.getParentId());
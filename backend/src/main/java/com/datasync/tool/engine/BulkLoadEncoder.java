@@ -0,0 +1,126 @@
+package com.datasync.tool.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * 把批次编码为 LOAD DATA 的文本格式：字段以制表符分隔、行以换行结束，反斜杠转义，NULL 写作 \N。
+ * 编码在字节层面完成，二进制列原样写入（只转义分隔符），其它值按 UTF-8 编码。
+ */
+public final class BulkLoadEncoder {
+    private static final DateTimeFormatter DATETIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSS");
+
+    private BulkLoadEncoder() {
+    }
+
+    /**
+     * 生成与 {@link #encode} 输出格式对应的 LOAD DATA 语句。conflictStrategy 为 UPDATE 时使用 REPLACE，IGNORE 时使用 IGNORE。
+     * REPLACE 只用于本工具创建的表，写入已有目标表时载入临时表后用 {@link #buildMergeSql} 合并。
+     */
+    public static String buildLoadSql(String tableName, List<ExecutionPlan.OutputField> fields,
+                                      String primaryKey, String conflictStrategy) {
+        StringBuilder sql = new StringBuilder("LOAD DATA LOCAL INFILE 'stream' ");
+        if (!primaryKey.isEmpty() && "UPDATE".equalsIgnoreCase(conflictStrategy)) {
+            sql.append("REPLACE ");
+        } else if (!primaryKey.isEmpty() && "IGNORE".equalsIgnoreCase(conflictStrategy)) {
+            sql.append("IGNORE ");
+        }
+        sql.append("INTO TABLE `").append(tableName).append("` CHARACTER SET utf8mb4 ")
+                .append("FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' (");
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) sql.append(", ");
+            sql.append("`").append(fields.get(i).getName()).append("`");
+        }
+        return sql.append(")").toString();
+    }
+
+    /**
+     * 把临时表中的批次按主键顺序合并到目标表，已有行只更新输出字段。
+     */
+    public static String buildMergeSql(String tableName, String stagingTable, List<ExecutionPlan.OutputField> fields,
+                                       String primaryKey) {
+        StringBuilder cols = new StringBuilder();
+        for (ExecutionPlan.OutputField field : fields) {
+            if (cols.length() > 0) cols.append(", ");
+            cols.append("`").append(field.getName()).append("`");
+        }
+        return "INSERT INTO `" + tableName + "` (" + cols + ") SELECT " + cols + " FROM `" + stagingTable
+                + "` ORDER BY `" + primaryKey + "`" + InsertTemplate.updateClause(fields, primaryKey);
+    }
+
+    public static byte[] encode(RowBatch batch, ValueConverter[] converters) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, batch.estimatedBytes() + 1024));
+        int colCount = converters.length;
+        for (int row = 0; row < batch.size(); row++) {
+            for (int i = 0; i < colCount; i++) {
+                if (i > 0) out.write('\t');
+                writeValue(out, batch.column(i), row, converters[i]);
+            }
+            out.write('\n');
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeValue(ByteArrayOutputStream out, RowBatch.Column column, int row, ValueConverter converter) {
+        if (column.isNull(row)) {
+            out.write('\\');
+            out.write('N');
+            return;
+        }
+        switch (column.kind()) {
+            case LONG -> writeAscii(out, Long.toString(column.getLong(row)));
+            case DOUBLE -> writeAscii(out, Double.toString(column.getDouble(row)));
+            default -> {
+                Object value = column.getObject(row);
+                if (value instanceof byte[] bytes) {
+                    writeEscaped(out, bytes);
+                } else {
+                    writeEscaped(out, format(value, converter).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+
+    private static String format(Object value, ValueConverter converter) {
+        if (value instanceof Boolean b) {
+            return b ? "1" : "0";
+        }
+        if (ConverterRegistry.isBoolean(converter)) {
+            return ConverterRegistry.parseBoolean(value) ? "1" : "0";
+        }
+        if (value instanceof BigDecimal d) {
+            return d.toPlainString();
+        }
+        if (value instanceof Timestamp ts) {
+            return ts.toLocalDateTime().format(DATETIME);
+        }
+        if (value instanceof LocalDateTime dt) {
+            return dt.format(DATETIME);
+        }
+        return value.toString();
+    }
+
+    private static void writeAscii(ByteArrayOutputStream out, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            out.write(s.charAt(i));
+        }
+    }
+
+    private static void writeEscaped(ByteArrayOutputStream out, byte[] bytes) {
+        for (byte b : bytes) {
+            switch (b) {
+                case '\\' -> { out.write('\\'); out.write('\\'); }
+                case '\t' -> { out.write('\\'); out.write('t'); }
+                case '\n' -> { out.write('\\'); out.write('n'); }
+                case '\r' -> { out.write('\\'); out.write('r'); }
+                case 0 -> { out.write('\\'); out.write('0'); }
+                default -> out.write(b);
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.datasync.tool.engine;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 按有序键读取时的断点跟踪：每个分区按键升序读取，读取者登记每个批次的最后一个键，
+ * 写入线程提交后确认。批次可能乱序提交，检查点只推进到连续提交的最后一个批次，
+ * 保证检查点之前（含）的行都已落库。续传时每个分区从 key > 检查点继续读取，已完成的分区跳过。
+ */
+public final class CheckpointTracker {
+    private final String column;
+    private final String planVersion;
+    private final List<Object> boundaries;
+    private final Object watermarkFrom;
+    private final List<Partition> partitions = new ArrayList<>();
+    private final Map<RowBatch, Ticket> tickets = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private record Ticket(Partition partition, int seq, Object lastKey, int rows) {
+    }
+
+    private CheckpointTracker(String column, String planVersion, List<Object> boundaries, Object watermarkFrom) {
+        this.column = column;
+        this.planVersion = planVersion;
+        this.boundaries = boundaries;
+        this.watermarkFrom = watermarkFrom;
+    }
+
+    /**
+     * 新的运行：boundaries 为分区分界值，没有分区时为空列表；watermarkFrom 为本次增量读取的起点，没有时为 null。
+     */
+    public static CheckpointTracker start(String column, String planVersion, List<Object> boundaries,
+                                          Object watermarkFrom) {
+        CheckpointTracker tracker = new CheckpointTracker(column, planVersion, boundaries, watermarkFrom);
+        for (int i = 0; i <= boundaries.size(); i++) {
+            tracker.partitions.add(tracker.new Partition(i, null, false, 0));
+        }
+        return tracker;
+    }
+
+    /**
+     * 从上次运行保存的检查点继续，分区和已提交行数沿用上次的值。
+     */
+    public static CheckpointTracker resume(State state, String planVersion) {
+        if (!planVersion.equals(state.getPlanVersion())) {
+            throw new RuntimeException("Task has been modified since the checkpoint was taken, cannot resume");
+        }
+        List<Object> boundaries = new ArrayList<>();
+        for (TypedValue b : state.getBoundaries()) {
+            boundaries.add(b.toValue());
+        }
+        CheckpointTracker tracker = new CheckpointTracker(state.getColumn(), planVersion, boundaries,
+                state.startingWatermark());
+        List<PartitionState> saved = state.getPartitions();
+        if (saved.size() != boundaries.size() + 1) {
+            throw new RuntimeException("Checkpoint is corrupted: partition count does not match boundaries");
+        }
+        for (int i = 0; i < saved.size(); i++) {
+            PartitionState p = saved.get(i);
+            tracker.partitions.add(tracker.new Partition(i, p.getKey() != null ? p.getKey().toValue() : null,
+                    p.isDone(), p.getRows()));
+        }
+        return tracker;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public List<Object> getBoundaries() {
+        return boundaries;
+    }
+
+    public List<Partition> getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * 之前的运行已提交的行数。
+     */
+    public long resumedRows() {
+        long rows = 0;
+        for (Partition p : partitions) {
+            rows += p.baseRows;
+        }
+        return rows;
+    }
+
+    /**
+     * 批次提交后调用，可被多个写入线程并发调用。
+     */
+    public void committed(RowBatch batch) {
+        Ticket ticket = tickets.remove(batch);
+        if (ticket != null) {
+            ticket.partition.commit(ticket);
+        }
+    }
+
+    public State state() {
+        State state = new State();
+        state.setPlanVersion(planVersion);
+        state.setColumn(column);
+        if (watermarkFrom != null) {
+            state.setWatermarkFrom(TypedValue.of(watermarkFrom));
+        }
+        for (Object b : boundaries) {
+            state.getBoundaries().add(TypedValue.of(b));
+        }
+        for (Partition p : partitions) {
+            state.getPartitions().add(p.state());
+        }
+        return state;
+    }
+
+    public final class Partition {
+        private final int index;
+        private final Object resumeKey;
+        private final long baseRows;
+        private int columnIndex = -1;
+
+        // 以下字段在持有该对象锁时访问
+        private int registered;
+        private int contiguous;
+        private boolean readDone;
+        private Object key;
+        private long rows;
+        private final TreeMap<Integer, Ticket> committedAhead = new TreeMap<>();
+
+        private Partition(int index, Object resumeKey, boolean done, long baseRows) {
+            this.index = index;
+            this.resumeKey = resumeKey;
+            this.baseRows = baseRows;
+            this.key = resumeKey;
+            this.readDone = done;
+            this.rows = baseRows;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * 分区内还需要读取的部分：检查点之后的行，按检查点列升序。
+         */
+        public SourceQuery remaining(SourceQuery partitionQuery) {
+            SourceQuery query = partitionQuery;
+            if (resumeKey != null) {
+                query = query.where(SourceQuery.quote(column) + " > ?", resumeKey);
+            }
+            return query.orderBy(column);
+        }
+
+        public synchronized boolean isDone() {
+            return readDone && contiguous == registered;
+        }
+
+        /**
+         * 读取线程在投递批次前调用，记录批次的最后一个键。
+         */
+        public void register(RowBatch batch) {
+            if (columnIndex < 0) {
+                columnIndex = batch.schema().indexOf(column);
+                if (columnIndex < 0) {
+                    throw new RuntimeException("Checkpoint column not found in source query: " + column);
+                }
+            }
+            Object lastKey = WatermarkTracker.normalize(batch.column(columnIndex).getObject(batch.size() - 1));
+            int seq;
+            synchronized (this) {
+                seq = ++registered;
+            }
+            tickets.put(batch, new Ticket(this, seq, lastKey, batch.size()));
+        }
+
+        /**
+         * 分区读取完毕后调用。
+         */
+        public synchronized void readFinished() {
+            readDone = true;
+        }
+
+        private synchronized void commit(Ticket ticket) {
+            committedAhead.put(ticket.seq, ticket);
+            Ticket next;
+            while ((next = committedAhead.remove(contiguous + 1)) != null) {
+                contiguous++;
+                rows += next.rows;
+                if (next.lastKey != null) {
+                    key = next.lastKey;
+                }
+            }
+        }
+
+        private synchronized PartitionState state() {
+            PartitionState state = new PartitionState();
+            state.setKey(key != null ? TypedValue.of(key) : null);
+            state.setDone(isDone());
+            state.setRows(rows);
+            return state;
+        }
+    }
+
+    /**
+     * 持久化到 sync_log.checkpoint 的检查点。
+     */
+    @Data
+    @NoArgsConstructor
+    public static class State {
+        private String planVersion;
+        private String column;
+        private List<TypedValue> boundaries = new ArrayList<>();
+        private List<PartitionState> partitions = new ArrayList<>();
+        // 原运行增量读取的起点（已应用回看），续传沿用同一起点
+        private TypedValue watermarkFrom;
+
+        public Object startingWatermark() {
+            return watermarkFrom != null ? watermarkFrom.toValue() : null;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class PartitionState {
+        // 连续提交的最后一个键，null 表示该分区尚无进度
+        private TypedValue key;
+        private boolean done;
+        private long rows;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class TypedValue {
+        private String type;
+        private String value;
+
+        static TypedValue of(Object value) {
+            Object normalized = WatermarkTracker.normalize(value);
+            TypedValue v = new TypedValue();
+            v.setType(WatermarkTracker.typeOf(normalized));
+            v.setValue(normalized.toString());
+            return v;
+        }
+
+        Object toValue() {
+            return WatermarkTracker.parse(type, value);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.datasync.tool.engine;
+
+import java.util.Locale;
+
+/**
+ * MySQL 字符串比较规则在 Java 侧的近似：_ci 规则忽略大小写，PAD SPACE 规则忽略尾部空格。
+ * 不处理重音等价（如 _ai 规则下 'é' = 'e'）。
+ */
+public final class Collation {
+    // 默认的 _ci 规则：忽略大小写和尾部空格
+    public static final Collation CASE_INSENSITIVE = new Collation(true, true);
+    // 二进制规则或非字符串列：逐字符比较
+    public static final Collation BINARY = new Collation(false, false);
+
+    private final boolean ignoreCase;
+    private final boolean padSpace;
+
+    private Collation(boolean ignoreCase, boolean padSpace) {
+        this.ignoreCase = ignoreCase;
+        this.padSpace = padSpace;
+    }
+
+    /**
+     * 按列的排序规则名（information_schema.COLUMNS.COLLATION_NAME）选择，null 表示非字符串列。
+     * MySQL 8 的 _0900_ 规则和 MariaDB 的 _nopad_ 规则不忽略尾部空格。
+     */
+    public static Collation of(String collationName) {
+        if (collationName == null) return BINARY;
+        String name = collationName.toLowerCase(Locale.ROOT);
+        boolean padSpace = !name.contains("_0900_") && !name.contains("_nopad_");
+        return new Collation(name.endsWith("_ci"), padSpace);
+    }
+
+    /**
+     * 比较规则下相等的字符串返回相同的结果，用作哈希或缓存的键。
+     */
+    public String key(String s) {
+        int end = s.length();
+        if (padSpace) {
+            while (end > 0 && s.charAt(end - 1) == ' ') end--;
+        }
+        String trimmed = end == s.length() ? s : s.substring(0, end);
+        return ignoreCase ? trimmed.toLowerCase(Locale.ROOT) : trimmed;
+    }
+
+    public int compare(String a, String b) {
+        return key(a).compareTo(key(b));
+    }
+}
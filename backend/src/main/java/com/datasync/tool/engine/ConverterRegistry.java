@@ -0,0 +1,252 @@
+package com.datasync.tool.engine;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 按（源列存储类型, 目标字段类型）选择专用的转换器，每次运行解析一次。
+ * 源端的整数、浮点、DECIMAL 和二进制列分别以 getLong/getDouble/getBigDecimal/getBytes 读取，
+ * 转换器直接调用对应的 setLong/setDouble/setBigDecimal/setBytes，不再经过字符串或 double 中转，DECIMAL 保持精确。
+ * 只有源列为其它对象类型（如字符串）时才在写入时解析。
+ */
+@Slf4j
+public final class ConverterRegistry {
+
+    /**
+     * 目标字段类型的分类，按类型名（去掉长度和 UNSIGNED 等修饰）精确匹配。
+     */
+    public enum TargetType {
+        INTEGER, DECIMAL, FLOATING, BOOLEAN, BINARY, OTHER;
+
+        public static TargetType of(String columnType) {
+            if (columnType == null || columnType.isBlank()) return OTHER;
+            String type = columnType.trim().toUpperCase(Locale.ROOT);
+            int end = 0;
+            while (end < type.length() && Character.isLetter(type.charAt(end))) {
+                end++;
+            }
+            switch (type.substring(0, end)) {
+                case "TINYINT":
+                case "SMALLINT":
+                case "MEDIUMINT":
+                case "INT":
+                case "INTEGER":
+                case "BIGINT":
+                    return INTEGER;
+                case "DECIMAL":
+                case "NUMERIC":
+                case "DEC":
+                case "FIXED":
+                    return DECIMAL;
+                case "DOUBLE":
+                case "FLOAT":
+                case "REAL":
+                    return FLOATING;
+                case "BOOLEAN":
+                case "BOOL":
+                    return BOOLEAN;
+                case "BINARY":
+                case "VARBINARY":
+                case "TINYBLOB":
+                case "BLOB":
+                case "MEDIUMBLOB":
+                case "LONGBLOB":
+                    return BINARY;
+                default:
+                    return OTHER;
+            }
+        }
+    }
+
+    private ConverterRegistry() {
+    }
+
+    /**
+     * 为输出批次的每一列选定转换器，schema 为投影后的输出 schema，与 fields 一一对应。
+     */
+    public static ValueConverter[] resolve(RowSchema schema, List<ExecutionPlan.OutputField> fields) {
+        ValueConverter[] converters = new ValueConverter[fields.size()];
+        for (int i = 0; i < converters.length; i++) {
+            converters[i] = resolve(schema.kind(i), TargetType.of(fields.get(i).getType()));
+        }
+        return converters;
+    }
+
+    public static ValueConverter resolve(RowSchema.ColumnKind source, TargetType target) {
+        switch (target) {
+            case INTEGER:
+                switch (source) {
+                    case LONG:
+                    case DOUBLE:
+                        // 浮点列的 getLong 按截断取整
+                        return LONG;
+                    case DECIMAL:
+                        return DECIMAL_TO_INTEGER;
+                    default:
+                        return OBJECT_TO_INTEGER;
+                }
+            case DECIMAL:
+                switch (source) {
+                    case LONG:
+                        return LONG;
+                    case DOUBLE:
+                        return DOUBLE;
+                    case DECIMAL:
+                        return DECIMAL;
+                    default:
+                        return OBJECT_TO_DECIMAL;
+                }
+            case FLOATING:
+                switch (source) {
+                    case LONG:
+                    case DOUBLE:
+                        return DOUBLE;
+                    case DECIMAL:
+                        return DECIMAL;
+                    default:
+                        return OBJECT_TO_DOUBLE;
+                }
+            case BOOLEAN:
+                return source == RowSchema.ColumnKind.LONG ? LONG_TO_BOOLEAN : OBJECT_TO_BOOLEAN;
+            default:
+                return passThrough(source);
+        }
+    }
+
+    /**
+     * 目标为布尔类型的转换器，LOAD DATA 编码时需要把值写成 0/1。
+     */
+    public static boolean isBoolean(ValueConverter converter) {
+        return converter == LONG_TO_BOOLEAN || converter == OBJECT_TO_BOOLEAN;
+    }
+
+    private static ValueConverter passThrough(RowSchema.ColumnKind source) {
+        switch (source) {
+            case LONG:
+                return LONG;
+            case DOUBLE:
+                return DOUBLE;
+            case DECIMAL:
+                return DECIMAL;
+            case BYTES:
+                return BYTES;
+            default:
+                return OBJECT;
+        }
+    }
+
+    static final ValueConverter OBJECT = (ps, idx, column, row) -> ps.setObject(idx, column.getObject(row));
+
+    static final ValueConverter LONG = (ps, idx, column, row) -> {
+        if (column.isNull(row)) {
+            ps.setNull(idx, Types.BIGINT);
+        } else {
+            ps.setLong(idx, column.getLong(row));
+        }
+    };
+
+    static final ValueConverter DOUBLE = (ps, idx, column, row) -> {
+        if (column.isNull(row)) {
+            ps.setNull(idx, Types.DOUBLE);
+        } else {
+            ps.setDouble(idx, column.getDouble(row));
+        }
+    };
+
+    static final ValueConverter DECIMAL = (ps, idx, column, row) ->
+            ps.setBigDecimal(idx, (BigDecimal) column.getObject(row));
+
+    static final ValueConverter BYTES = (ps, idx, column, row) -> ps.setBytes(idx, (byte[]) column.getObject(row));
+
+    static final ValueConverter DECIMAL_TO_INTEGER = (ps, idx, column, row) -> {
+        BigDecimal value = (BigDecimal) column.getObject(row);
+        if (value == null) {
+            ps.setNull(idx, Types.BIGINT);
+        } else if (value.scale() <= 0 && value.precision() - value.scale() < 19) {
+            ps.setLong(idx, value.longValueExact());
+        } else {
+            // 有小数或超出 long 范围时交给服务端按列类型处理
+            ps.setBigDecimal(idx, value);
+        }
+    };
+
+    static final ValueConverter OBJECT_TO_INTEGER = (ps, idx, column, row) -> {
+        Object value = column.getObject(row);
+        if (value == null) {
+            ps.setNull(idx, Types.BIGINT);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            ps.setLong(idx, ((Number) value).longValue());
+        } else if (value instanceof Number) {
+            // BIGINT UNSIGNED 等超出 long 范围的值原样绑定
+            ps.setObject(idx, value);
+        } else {
+            try {
+                ps.setLong(idx, Long.parseLong(value.toString().trim()));
+            } catch (NumberFormatException e) {
+                log.warn("Failed to convert value '{}' to integer: {}", value, e.getMessage());
+                ps.setObject(idx, value);
+            }
+        }
+    };
+
+    static final ValueConverter OBJECT_TO_DECIMAL = (ps, idx, column, row) -> {
+        Object value = column.getObject(row);
+        if (value == null) {
+            ps.setNull(idx, Types.DECIMAL);
+        } else if (value instanceof BigDecimal) {
+            ps.setBigDecimal(idx, (BigDecimal) value);
+        } else {
+            // 按十进制字符串解析，不经过 double
+            try {
+                ps.setBigDecimal(idx, new BigDecimal(value.toString().trim()));
+            } catch (NumberFormatException e) {
+                log.warn("Failed to convert value '{}' to decimal: {}", value, e.getMessage());
+                ps.setObject(idx, value);
+            }
+        }
+    };
+
+    static final ValueConverter OBJECT_TO_DOUBLE = (ps, idx, column, row) -> {
+        Object value = column.getObject(row);
+        if (value == null) {
+            ps.setNull(idx, Types.DOUBLE);
+        } else if (value instanceof Number) {
+            ps.setDouble(idx, ((Number) value).doubleValue());
+        } else {
+            try {
+                ps.setDouble(idx, Double.parseDouble(value.toString().trim()));
+            } catch (NumberFormatException e) {
+                log.warn("Failed to convert value '{}' to double: {}", value, e.getMessage());
+                ps.setObject(idx, value);
+            }
+        }
+    };
+
+    static final ValueConverter LONG_TO_BOOLEAN = (ps, idx, column, row) -> {
+        if (column.isNull(row)) {
+            ps.setNull(idx, Types.BOOLEAN);
+        } else {
+            ps.setBoolean(idx, column.getLong(row) != 0);
+        }
+    };
+
+    static final ValueConverter OBJECT_TO_BOOLEAN = (ps, idx, column, row) -> {
+        Object value = column.getObject(row);
+        if (value == null) {
+            ps.setNull(idx, Types.BOOLEAN);
+        } else if (value instanceof Boolean) {
+            ps.setBoolean(idx, (Boolean) value);
+        } else {
+            ps.setBoolean(idx, parseBoolean(value));
+        }
+    };
+
+    public static boolean parseBoolean(Object value) {
+        String s = value.toString().trim().toLowerCase(Locale.ROOT);
+        return "true".equals(s) || "1".equals(s) || "yes".equals(s);
+    }
+}
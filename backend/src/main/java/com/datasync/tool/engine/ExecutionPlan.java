@@ -0,0 +1,243 @@
+package com.datasync.tool.engine;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 由任务流程 JSON 编译得到的执行计划，按任务 id 和 updatedAt 缓存，执行时不再解析 JSON。
+ */
+@Getter
+@Setter(AccessLevel.PACKAGE)
+public class ExecutionPlan {
+    private Long taskId;
+    private LocalDateTime version;
+
+    // 输入节点
+    private String inputNodeId;
+    private Long sourceDataSourceId;
+    private String sourceSql;
+    private int batchSize;
+    // 自适应批次：按写入耗时和锁冲突在上下限内调整批次大小和并发写入数，batchSize 和 writerThreads 作为初始值
+    private boolean adaptiveBatch;
+    private int minBatchSize;
+    private int maxBatchSize;
+    private int minWriterThreads;
+    private long targetBatchMs;
+    // 进度总数：OFF 不统计；ESTIMATED 取优化器估算；EXACT_ASYNC 与读取并行执行 COUNT(*)
+    private String progressTotal = "EXACT_ASYNC";
+    // 分区并行读取，partitionCount <= 1 表示单连接读取
+    private String partitionColumn;
+    private int partitionCount;
+    private boolean consistentSnapshot;
+    // 开启快照时是否加全局读锁，让各分区快照的时间点完全一致；加锁期间源库写入被阻塞，需显式开启
+    private boolean snapshotGlobalLock;
+    // 增量同步，incrementalColumn 为空表示全量
+    private String incrementalColumn = "";
+    private long lookbackOverlap;
+    // 断点续传：按该列（源端唯一键）升序读取并记录检查点，为空表示不记录
+    private String checkpointColumn = "";
+    // 变更日志(CDC)模式：持续消费源端触发器写入的变更表 (seq, op, pk, changed_at)
+    private String changelogTable = "";
+    private String changelogKeyColumn;
+    private long changelogPollIntervalMs;
+    private String changelogAckMode;
+
+    // 处理节点
+    private List<MappingStep> mappingSteps = new ArrayList<>();
+    // 过滤节点：只引用源列的条件下推到源查询，其余按输出字段在转换阶段过滤
+    private List<FilterStep> filterSteps = new ArrayList<>();
+    // 表达式计算节点：计算列追加在源列之后，映射和输出字段可按名称引用
+    private List<ComputeStep> computeSteps = new ArrayList<>();
+    // 维表关联节点：按关联键从其它数据源的维表取列，在计算列之后追加
+    private List<LookupStep> lookupSteps = new ArrayList<>();
+
+    // 输出节点
+    private String outputNodeId;
+    private Long targetDataSourceId;
+    private String targetTable;
+    private String writeMode;
+    // 批次实际写入的表：OVERWRITE_SWAP 模式下为影子表，其余模式与 targetTable 相同
+    private String writeTable;
+    private boolean deferIndexes;
+    // STAGE_MERGE：每次合并的主键行数，以及是否删除目标表中源端已不存在的行
+    private int mergeChunkSize;
+    private boolean deleteMissing;
+    // INSERT: 批量 INSERT；BULK_LOAD: LOAD DATA LOCAL INFILE
+    private String writeMethod = "INSERT";
+    private String primaryKey;
+    private String conflictStrategy;
+    private boolean deleteAfterSync;
+    private String sourcePrimaryKey;
+    private String sourceTableName;
+    private int writerThreads;
+    private List<OutputField> outputFields = new ArrayList<>();
+    private InsertTemplate insertTemplate;
+    private String loadDataSql;
+    // BULK_LOAD 按主键更新直接写入目标表时，先载入同结构的临时表，再 INSERT ... SELECT ... ON DUPLICATE KEY UPDATE；其余情况为 null
+    private String loadStagingTable;
+    private String loadMergeSql;
+
+    public boolean isChangelogMode() {
+        return !changelogTable.isEmpty();
+    }
+
+    public boolean isSwapOverwrite() {
+        return "OVERWRITE_SWAP".equalsIgnoreCase(writeMode);
+    }
+
+    public boolean isStageMerge() {
+        return "STAGE_MERGE".equalsIgnoreCase(writeMode);
+    }
+
+    public boolean isCheckpointed() {
+        return !checkpointColumn.isEmpty();
+    }
+
+    public boolean isBulkLoad() {
+        return "BULK_LOAD".equalsIgnoreCase(writeMethod);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class MappingStep {
+        private final String nodeId;
+        private final String[] sourceNames;
+        private final String[] targetNames;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class FilterStep {
+        private final String nodeId;
+        private final Expression expression;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class ComputeStep {
+        private final String nodeId;
+        private final List<ComputedField> fields;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class ComputedField {
+        private final String name;
+        private final Expression expression;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class LookupStep {
+        private final String nodeId;
+        private final Long dataSourceId;
+        private final String tableName;
+        // 维表中的关联键
+        private final String keyColumn;
+        // 数据流中的关联列，可以是源列或计算列
+        private final String sourceKey;
+        private final String[] columns;
+        private final String[] aliases;
+        private final boolean preload;
+        private final int maxEntries;
+        private final long ttlSeconds;
+    }
+
+    /**
+     * 条件是否引用了计算列或维表列；这样的条件不能下推到源查询。
+     */
+    public boolean referencesDerived(Expression expression) {
+        Set<String> derived = new HashSet<>();
+        for (ComputeStep step : computeSteps) {
+            for (ComputedField field : step.getFields()) {
+                derived.add(field.getName().toLowerCase(Locale.ROOT));
+            }
+        }
+        for (LookupStep step : lookupSteps) {
+            for (String alias : step.getAliases()) {
+                derived.add(alias.toLowerCase(Locale.ROOT));
+            }
+        }
+        for (String column : expression.columns()) {
+            if (derived.contains(column.toLowerCase(Locale.ROOT))) return true;
+        }
+        return false;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class OutputField {
+        private final String name;
+        private final String sourceName;
+        private final String type;
+        private final String comment;
+        private final boolean pk;
+
+        /**
+         * 如果没有配置源字段名，按目标字段名寻找。
+         */
+        public String lookupName() {
+            return sourceName != null && !sourceName.isEmpty() ? sourceName : name;
+        }
+    }
+
+    /**
+     * 源列到输出列的下标映射及各输出列的转换器，每次运行根据源结果集的 schema 解析一次。
+     */
+    public record Projection(RowSchema schema, int[] indexes, ValueConverter[] converters) {
+        public RowBatch apply(RowBatch sourceBatch) {
+            return sourceBatch.project(schema, indexes);
+        }
+    }
+
+    public Projection resolveProjection(RowSchema sourceSchema) {
+        RowSchema schema = sourceSchema;
+        int[] toSource = new int[sourceSchema.size()];
+        for (int i = 0; i < toSource.length; i++) {
+            toSource[i] = i;
+        }
+
+        // 将各映射节点的列选择合并为一次投影
+        for (MappingStep step : mappingSteps) {
+            List<Integer> local = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < step.getSourceNames().length; i++) {
+                String source = step.getSourceNames()[i];
+                int idx = source.isEmpty() ? -1 : schema.indexOf(source);
+                if (idx >= 0) {
+                    local.add(idx);
+                    String target = step.getTargetNames()[i];
+                    names.add(target.isEmpty() ? source : target);
+                }
+            }
+            int[] localIdx = local.stream().mapToInt(Integer::intValue).toArray();
+            int[] composed = new int[localIdx.length];
+            for (int i = 0; i < localIdx.length; i++) {
+                composed[i] = toSource[localIdx[i]];
+            }
+            schema = schema.project(localIdx, names.toArray(new String[0]));
+            toSource = composed;
+        }
+
+        int[] localOut = new int[outputFields.size()];
+        int[] out = new int[outputFields.size()];
+        String[] outNames = new String[outputFields.size()];
+        for (int i = 0; i < outputFields.size(); i++) {
+            OutputField field = outputFields.get(i);
+            localOut[i] = schema.indexOf(field.lookupName());
+            out[i] = localOut[i] >= 0 ? toSource[localOut[i]] : -1;
+            outNames[i] = field.getName();
+        }
+        RowSchema outSchema = schema.project(localOut, outNames);
+        return new Projection(outSchema, out, ConverterRegistry.resolve(outSchema, outputFields));
+    }
+}
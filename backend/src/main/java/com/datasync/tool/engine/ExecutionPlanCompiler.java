@@ -0,0 +1,303 @@
+package com.datasync.tool.engine;
+
+import com.datasync.tool.entity.SyncTask;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 将任务流程 JSON 编译为 {@link ExecutionPlan}，并按任务 id + updatedAt 缓存。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ExecutionPlanCompiler {
+    private final ObjectMapper objectMapper;
+
+    public static final String SHADOW_SUFFIX = "__swap";
+    public static final String RETIRED_SUFFIX = "__old";
+    public static final String STAGING_SUFFIX = "__stage";
+
+    private final Map<Long, ExecutionPlan> planCache = new ConcurrentHashMap<>();
+
+    public ExecutionPlan getPlan(SyncTask task) throws Exception {
+        ExecutionPlan cached = planCache.get(task.getId());
+        if (cached != null && Objects.equals(cached.getVersion(), task.getUpdatedAt())) {
+            return cached;
+        }
+        ExecutionPlan plan = compile(task);
+        planCache.put(task.getId(), plan);
+        log.info("Compiled execution plan for task {} (version {})", task.getId(), task.getUpdatedAt());
+        return plan;
+    }
+
+    public void invalidate(Long taskId) {
+        planCache.remove(taskId);
+    }
+
+    private ExecutionPlan compile(SyncTask task) throws Exception {
+        JsonNode flow = objectMapper.readTree(task.getContent());
+        JsonNode nodes = flow.get("nodes");
+        if (nodes == null || !nodes.isArray()) {
+            throw new RuntimeException("Task must have at least one input and one output node");
+        }
+
+        JsonNode inputNode = null;
+        JsonNode outputNode = null;
+        List<JsonNode> mappingNodes = new ArrayList<>();
+        List<JsonNode> filterNodes = new ArrayList<>();
+        List<JsonNode> computeNodes = new ArrayList<>();
+        List<JsonNode> lookupNodes = new ArrayList<>();
+
+        for (JsonNode node : nodes) {
+            String type = node.path("type").asText();
+            String label = node.path("label").asText("");
+            if ("input".equals(type)) {
+                inputNode = node;
+            } else if ("output".equals(type)) {
+                outputNode = node;
+            } else if ("字段映射".equals(label) || "mapping".equals(type)) {
+                mappingNodes.add(node);
+            } else if ("数据过滤".equals(label) || "filter".equals(type)) {
+                filterNodes.add(node);
+            } else if ("表达式计算".equals(label) || "transform".equals(type)) {
+                computeNodes.add(node);
+            } else if ("维表关联".equals(label) || "lookup".equals(type)) {
+                lookupNodes.add(node);
+            }
+        }
+
+        if (inputNode == null || outputNode == null) {
+            throw new RuntimeException("Task must have at least one input and one output node");
+        }
+
+        JsonNode sourceData = inputNode.path("data");
+        JsonNode targetData = outputNode.path("data");
+        if (sourceData.isMissingNode() || targetData.isMissingNode()) {
+            throw new RuntimeException("Node data is missing");
+        }
+
+        ExecutionPlan plan = new ExecutionPlan();
+        plan.setTaskId(task.getId());
+        plan.setVersion(task.getUpdatedAt());
+
+        plan.setInputNodeId(inputNode.path("id").asText());
+        plan.setSourceDataSourceId(sourceData.path("dataSourceId").asLong(0L));
+        plan.setSourceSql(sourceData.path("sql").asText());
+        plan.setBatchSize(sourceData.path("batchSize").asInt(1000));
+        plan.setAdaptiveBatch(sourceData.path("adaptiveBatch").asBoolean(false));
+        if (plan.isAdaptiveBatch()) {
+            plan.setMinBatchSize(Math.max(1, sourceData.path("minBatchSize").asInt(100)));
+            plan.setMaxBatchSize(Math.max(plan.getMinBatchSize(), sourceData.path("maxBatchSize").asInt(10000)));
+            plan.setMinWriterThreads(Math.max(1, sourceData.path("minWriterThreads").asInt(1)));
+            plan.setTargetBatchMs(Math.max(1, sourceData.path("targetBatchMs").asLong(1000L)));
+        }
+        plan.setProgressTotal(sourceData.path("progressTotal").asText("EXACT_ASYNC").toUpperCase());
+        if ("PARTITIONED".equalsIgnoreCase(sourceData.path("readMode").asText("SINGLE"))) {
+            plan.setPartitionColumn(sourceData.path("partitionColumn").asText(""));
+            plan.setPartitionCount(sourceData.path("partitionCount").asInt(4));
+            plan.setConsistentSnapshot(sourceData.path("consistentSnapshot").asBoolean(false));
+            plan.setSnapshotGlobalLock(plan.isConsistentSnapshot() && sourceData.path("snapshotGlobalLock").asBoolean(false));
+            if (plan.getPartitionColumn().isEmpty()) {
+                throw new RuntimeException("Partition column is required for partitioned read");
+            }
+        } else {
+            plan.setPartitionCount(1);
+        }
+        plan.setCheckpointColumn(sourceData.path("checkpointColumn").asText("").trim());
+        String syncMode = sourceData.path("syncMode").asText("FULL");
+        if ("CHANGELOG".equalsIgnoreCase(syncMode)) {
+            plan.setChangelogTable(sourceData.path("changelogTable").asText(""));
+            plan.setChangelogKeyColumn(sourceData.path("changelogKeyColumn").asText("id"));
+            plan.setChangelogPollIntervalMs(sourceData.path("pollIntervalMs").asLong(1000L));
+            plan.setChangelogAckMode(sourceData.path("changelogAckMode").asText("PURGE"));
+            if (plan.getChangelogTable().isEmpty()) {
+                throw new RuntimeException("Changelog table is required for changelog sync");
+            }
+        }
+        if ("INCREMENTAL".equalsIgnoreCase(syncMode)) {
+            plan.setIncrementalColumn(sourceData.path("incrementalColumn").asText(""));
+            plan.setLookbackOverlap(sourceData.path("lookbackOverlap").asLong(0L));
+            if (plan.getIncrementalColumn().isEmpty()) {
+                throw new RuntimeException("Incremental column is required for incremental sync");
+            }
+        }
+
+        for (JsonNode mNode : mappingNodes) {
+            JsonNode mappings = mNode.path("data").path("mappings");
+            // 未配置映射的节点不改变列，与原先逐行映射时跳过空映射一致
+            if (!mappings.isArray() || mappings.isEmpty()) continue;
+            int count = mappings.size();
+            String[] sources = new String[count];
+            String[] targets = new String[count];
+            for (int i = 0; i < count; i++) {
+                sources[i] = mappings.get(i).path("source").asText();
+                targets[i] = mappings.get(i).path("target").asText();
+            }
+            plan.getMappingSteps().add(new ExecutionPlan.MappingStep(mNode.path("id").asText(), sources, targets));
+        }
+
+        for (JsonNode fNode : filterNodes) {
+            // 表达式只在编译执行计划时解析一次
+            Expression expression = Expression.parseCondition(fNode.path("data").path("expression").asText(""));
+            plan.getFilterSteps().add(new ExecutionPlan.FilterStep(fNode.path("id").asText(), expression));
+        }
+
+        for (JsonNode cNode : computeNodes) {
+            JsonNode expressions = cNode.path("data").path("expressions");
+            List<ExecutionPlan.ComputedField> fields = new ArrayList<>();
+            if (expressions.isArray()) {
+                for (JsonNode e : expressions) {
+                    String name = e.path("name").asText("").trim();
+                    if (name.isEmpty()) {
+                        throw new RuntimeException("Computed column name is required");
+                    }
+                    fields.add(new ExecutionPlan.ComputedField(name, Expression.parseValue(e.path("expression").asText(""))));
+                }
+            }
+            plan.getComputeSteps().add(new ExecutionPlan.ComputeStep(cNode.path("id").asText(), fields));
+        }
+
+        for (JsonNode lNode : lookupNodes) {
+            JsonNode data = lNode.path("data");
+            JsonNode columns = data.path("lookupColumns");
+            List<String> names = new ArrayList<>();
+            List<String> aliases = new ArrayList<>();
+            if (columns.isArray()) {
+                for (JsonNode c : columns) {
+                    String column = c.path("column").asText("").trim();
+                    if (column.isEmpty()) continue;
+                    String alias = c.path("alias").asText("").trim();
+                    names.add(column);
+                    aliases.add(alias.isEmpty() ? column : alias);
+                }
+            }
+            String tableName = data.path("tableName").asText("").trim();
+            String sourceKey = data.path("sourceKey").asText("").trim();
+            if (data.path("dataSourceId").asLong(0L) == 0 || tableName.isEmpty() || sourceKey.isEmpty() || names.isEmpty()) {
+                throw new RuntimeException("Lookup node requires a data source, table, join column and at least one column");
+            }
+            plan.getLookupSteps().add(new ExecutionPlan.LookupStep(lNode.path("id").asText(),
+                    data.path("dataSourceId").asLong(), tableName, data.path("keyColumn").asText("id").trim(), sourceKey,
+                    names.toArray(new String[0]), aliases.toArray(new String[0]),
+                    !"LAZY".equalsIgnoreCase(data.path("loadMode").asText("PRELOAD")),
+                    Math.max(1, data.path("cacheSize").asInt(100000)),
+                    Math.max(0L, data.path("ttlSeconds").asLong(600L))));
+        }
+
+        plan.setOutputNodeId(outputNode.path("id").asText());
+        plan.setTargetDataSourceId(targetData.path("dataSourceId").asLong(0L));
+        plan.setTargetTable(targetData.path("tableName").asText());
+        plan.setWriteMode(targetData.path("writeMode").asText("APPEND"));
+        plan.setWriteMethod(targetData.path("writeMethod").asText("INSERT"));
+        plan.setDeferIndexes(targetData.path("deferIndexes").asBoolean(false));
+        plan.setMergeChunkSize(Math.max(1, targetData.path("mergeChunkSize").asInt(5000)));
+        plan.setDeleteMissing(plan.isStageMerge() && targetData.path("deleteMissing").asBoolean(false));
+        plan.setPrimaryKey(targetData.path("primaryKey").asText(""));
+        plan.setConflictStrategy(targetData.path("conflictStrategy").asText("UPDATE"));
+        plan.setDeleteAfterSync(targetData.path("deleteAfterSync").asBoolean(false));
+        plan.setSourcePrimaryKey(targetData.path("sourcePrimaryKey").asText(""));
+        plan.setSourceTableName(targetData.path("sourceTableName").asText(""));
+        plan.setWriterThreads(targetData.path("writerThreads").asInt(0));
+
+        if (plan.getSourceDataSourceId() == 0 || plan.getTargetDataSourceId() == 0) {
+            throw new RuntimeException("DataSource ID is missing in configuration");
+        }
+        if (plan.getSourceSql().isEmpty() || plan.getTargetTable().isEmpty()) {
+            throw new RuntimeException("SQL or Target Table name is missing");
+        }
+        if (plan.isChangelogMode() && plan.getPrimaryKey().isEmpty()) {
+            throw new RuntimeException("Changelog sync requires a target primary key");
+        }
+        if (!plan.getIncrementalColumn().isEmpty()
+                && ("OVERWRITE".equalsIgnoreCase(plan.getWriteMode()) || plan.isSwapOverwrite())) {
+            throw new RuntimeException("Incremental sync cannot be combined with OVERWRITE write mode");
+        }
+        if (plan.isChangelogMode() && plan.isSwapOverwrite()) {
+            throw new RuntimeException("Changelog sync cannot be combined with OVERWRITE_SWAP write mode");
+        }
+        if (plan.isChangelogMode() && plan.isStageMerge()) {
+            throw new RuntimeException("Changelog sync cannot be combined with STAGE_MERGE write mode");
+        }
+        if (plan.isDeleteAfterSync() && (plan.isSwapOverwrite() || plan.isStageMerge())) {
+            // 删除源数据发生在批次提交时，替换或合并前失败会丢失这部分数据
+            throw new RuntimeException("Deleting source data is not supported with " + plan.getWriteMode() + " write mode");
+        }
+        if (plan.isStageMerge() && plan.getPrimaryKey().isEmpty()) {
+            throw new RuntimeException("STAGE_MERGE write mode requires a target primary key");
+        }
+        if (plan.isDeleteMissing() && !plan.getIncrementalColumn().isEmpty()) {
+            throw new RuntimeException("Deleting rows missing from source requires a full sync");
+        }
+        if (plan.isCheckpointed()) {
+            if (plan.isChangelogMode() || plan.isSwapOverwrite() || plan.isStageMerge()) {
+                // 影子表和暂存表在失败时删除，没有可以续传的数据
+                throw new RuntimeException("Checkpointing is not supported with " + (plan.isChangelogMode()
+                        ? "changelog sync" : plan.getWriteMode() + " write mode"));
+            }
+            // 续传会重新写入检查点之后已提交的少量行，写入必须是幂等的
+            if (plan.getPrimaryKey().isEmpty() || "ERROR".equalsIgnoreCase(plan.getConflictStrategy())) {
+                throw new RuntimeException("Checkpointing requires a target primary key with UPDATE or IGNORE conflict strategy");
+            }
+        }
+        if (plan.isSwapOverwrite()) {
+            plan.setWriteTable(swapTableName(plan.getTargetTable(), SHADOW_SUFFIX));
+        } else if (plan.isStageMerge()) {
+            plan.setWriteTable(swapTableName(plan.getTargetTable(), STAGING_SUFFIX));
+        } else {
+            plan.setWriteTable(plan.getTargetTable());
+        }
+
+        JsonNode fieldsNode = targetData.path("fields");
+        if (fieldsNode.isArray()) {
+            for (JsonNode field : fieldsNode) {
+                String type = field.path("type").asText("VARCHAR(255)");
+                plan.getOutputFields().add(new ExecutionPlan.OutputField(
+                        field.path("name").asText(),
+                        field.path("sourceName").asText(""),
+                        type,
+                        field.path("comment").asText(""),
+                        field.path("isPk").asBoolean()));
+            }
+        }
+        if (plan.getOutputFields().isEmpty()) {
+            throw new RuntimeException("No output fields configured");
+        }
+
+        // 变更日志模式下插入和更新事件都按主键覆盖写入；暂存表内同一主键以最后一行为准，冲突策略在合并时应用
+        String conflictStrategy = plan.isChangelogMode() || plan.isStageMerge() ? "UPDATE" : plan.getConflictStrategy();
+        plan.setInsertTemplate(InsertTemplate.build(plan.getWriteTable(), plan.getOutputFields(),
+                plan.getPrimaryKey(), conflictStrategy));
+        if (plan.isBulkLoad()) {
+            String loadTable = plan.getWriteTable();
+            if ("UPDATE".equalsIgnoreCase(conflictStrategy) && !plan.getPrimaryKey().isEmpty()
+                    && plan.getWriteTable().equals(plan.getTargetTable())) {
+                // REPLACE 会删除再插入已有行：未映射的列恢复默认值、自增值重新生成并触发删除触发器和级联，
+                // 不能直接用于目标表；影子表和暂存表由本工具创建，不受影响
+                loadTable = swapTableName(plan.getTargetTable(), "__load");
+                plan.setLoadStagingTable(loadTable);
+                plan.setLoadMergeSql(BulkLoadEncoder.buildMergeSql(plan.getTargetTable(), loadTable,
+                        plan.getOutputFields(), plan.getPrimaryKey()));
+            }
+            plan.setLoadDataSql(BulkLoadEncoder.buildLoadSql(loadTable, plan.getOutputFields(),
+                    plan.getPrimaryKey(), conflictStrategy));
+        }
+        return plan;
+    }
+
+    /**
+     * 影子表/旧表名：目标表名加后缀，超出 MySQL 64 字符限制时截断表名部分。
+     */
+    public static String swapTableName(String targetTable, String suffix) {
+        int max = 64 - suffix.length();
+        return (targetTable.length() > max ? targetTable.substring(0, max) : targetTable) + suffix;
+    }
+}
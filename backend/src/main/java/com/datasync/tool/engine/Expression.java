@@ -0,0 +1,1602 @@
+package com.datasync.tool.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 过滤节点和表达式计算节点共用的表达式：算术（+ - * / %）、比较（= != <> < <= > >=）、AND/OR/NOT、[NOT] IN、
+ * IS [NOT] NULL、CASE/IF，以及常用函数（见 {@link #FUNCTIONS}），语义与 MySQL 一致，函数名也与 MySQL 相同，可直接下推。
+ * 字符串比较和 IN 按默认的 _ci 规则忽略大小写和尾部空格（{@link Collation#CASE_INSENSITIVE}），
+ * 与 _bin、NO PAD 规则的列或重音不敏感的等价（'é' = 'e'）在内存中求值时结果可能与下推到源端不同。
+ * 编译执行计划时解析一次；运行时按 schema 编译：条件编译为逐行调用的判断函数，计算列编译为按类型特化的整批求值函数，
+ * 列下标和字面量类型转换都在编译时确定。判断按 SQL 的三值逻辑处理 NULL。
+ */
+public final class Expression {
+    private static final byte FALSE = 0;
+    private static final byte TRUE = 1;
+    private static final byte UNKNOWN = -1;
+
+    private static final DateTimeFormatter DATETIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * 支持的函数及参数个数（-1 表示至少一个）。
+     */
+    static final Map<String, int[]> FUNCTIONS = Map.ofEntries(
+            Map.entry("LOWER", new int[]{1, 1}),
+            Map.entry("UPPER", new int[]{1, 1}),
+            Map.entry("TRIM", new int[]{1, 1}),
+            Map.entry("LENGTH", new int[]{1, 1}),
+            Map.entry("CHAR_LENGTH", new int[]{1, 1}),
+            Map.entry("ABS", new int[]{1, 1}),
+            Map.entry("ROUND", new int[]{1, 2}),
+            Map.entry("COALESCE", new int[]{1, -1}),
+            Map.entry("IFNULL", new int[]{2, 2}),
+            Map.entry("CONCAT", new int[]{1, -1}),
+            Map.entry("SUBSTRING", new int[]{2, 3}),
+            Map.entry("REPLACE", new int[]{3, 3}),
+            Map.entry("DATE", new int[]{1, 1}),
+            Map.entry("DATE_FORMAT", new int[]{2, 2}),
+            Map.entry("MD5", new int[]{1, 1}),
+            Map.entry("SHA1", new int[]{1, 1}),
+            Map.entry("SHA2", new int[]{2, 2}));
+
+    private final String text;
+    private final Cond condition;
+    private final Value value;
+    private final Set<String> columns = new LinkedHashSet<>();
+
+    private Expression(String text, Cond condition, Value value) {
+        this.text = text;
+        this.condition = condition;
+        this.value = value;
+        if (condition != null) {
+            condition.collect(columns);
+        } else {
+            value.collect(columns);
+        }
+    }
+
+    /**
+     * 解析条件表达式（过滤节点）。
+     */
+    public static Expression parseCondition(String text) {
+        if (text == null || text.isBlank()) {
+            throw new RuntimeException("Filter expression is empty");
+        }
+        Parser parser = new Parser(text);
+        Cond root = parser.parseOr();
+        parser.expectEnd();
+        return new Expression(text.trim(), root, null);
+    }
+
+    /**
+     * 解析值表达式（计算列）。
+     */
+    public static Expression parseValue(String text) {
+        if (text == null || text.isBlank()) {
+            throw new RuntimeException("Expression is empty");
+        }
+        Parser parser = new Parser(text);
+        Value root = parser.parseValue();
+        parser.expectEnd();
+        return new Expression(text.trim(), null, root);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * 表达式引用的列名。
+     */
+    public Set<String> columns() {
+        return columns;
+    }
+
+    /**
+     * schema 中是否包含表达式引用的全部列。
+     */
+    public boolean resolvableIn(RowSchema schema) {
+        for (String column : columns) {
+            if (schema.indexOf(column) < 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 条件表达式追加为源查询的 WHERE 条件，字面量以参数绑定。
+     */
+    public SourceQuery pushDown(SourceQuery query) {
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        requireCondition().toSql(sql, params);
+        return query.where(sql.toString(), params.toArray());
+    }
+
+    public String toSql() {
+        StringBuilder sql = new StringBuilder();
+        if (condition != null) {
+            condition.toSql(sql, new ArrayList<>());
+        } else {
+            value.toSql(sql, new ArrayList<>());
+        }
+        return sql.toString();
+    }
+
+    public RowFilter compileFilter(String nodeId, RowSchema schema) {
+        RowPredicate predicate = requireCondition().compile(schema);
+        return new RowFilter(nodeId, text, (batch, row) -> predicate.test(batch, row) == TRUE);
+    }
+
+    /**
+     * 计算列的结果存储类型。
+     */
+    public RowSchema.ColumnKind kind(RowSchema schema) {
+        return requireValue().kind(schema);
+    }
+
+    /**
+     * 编译为整批求值的计算列。
+     */
+    public ColumnEvaluator compileColumn(RowSchema schema) {
+        return requireValue().compileVector(schema);
+    }
+
+    private Cond requireCondition() {
+        if (condition == null) throw new IllegalStateException("Not a condition: " + text);
+        return condition;
+    }
+
+    private Value requireValue() {
+        if (value == null) throw new IllegalStateException("Not a value expression: " + text);
+        return value;
+    }
+
+    /**
+     * 对整个批次求值，返回与批次行数相同的一列。
+     */
+    @FunctionalInterface
+    public interface ColumnEvaluator {
+        RowBatch.Column evaluate(RowBatch batch);
+    }
+
+    @FunctionalInterface
+    interface RowPredicate {
+        byte test(RowBatch batch, int row);
+    }
+
+    @FunctionalInterface
+    interface RowValue {
+        Object get(RowBatch batch, int row);
+    }
+
+    @FunctionalInterface
+    private interface LongOp {
+        long apply(long a, long b);
+    }
+
+    @FunctionalInterface
+    private interface DoubleOp {
+        double apply(double a, double b);
+    }
+
+    // ---------------- 语法树：条件 ----------------
+
+    private interface Cond {
+        void toSql(StringBuilder sql, List<Object> params);
+
+        void collect(Set<String> columns);
+
+        RowPredicate compile(RowSchema schema);
+    }
+
+    private record And(Cond left, Cond right) implements Cond {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            sql.append('(');
+            left.toSql(sql, params);
+            sql.append(" AND ");
+            right.toSql(sql, params);
+            sql.append(')');
+        }
+
+        public void collect(Set<String> columns) {
+            left.collect(columns);
+            right.collect(columns);
+        }
+
+        public RowPredicate compile(RowSchema schema) {
+            RowPredicate l = left.compile(schema);
+            RowPredicate r = right.compile(schema);
+            return (batch, row) -> {
+                byte a = l.test(batch, row);
+                if (a == FALSE) return FALSE;
+                byte b = r.test(batch, row);
+                if (b == FALSE) return FALSE;
+                return a == TRUE && b == TRUE ? TRUE : UNKNOWN;
+            };
+        }
+    }
+
+    private record Or(Cond left, Cond right) implements Cond {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            sql.append('(');
+            left.toSql(sql, params);
+            sql.append(" OR ");
+            right.toSql(sql, params);
+            sql.append(')');
+        }
+
+        public void collect(Set<String> columns) {
+            left.collect(columns);
+            right.collect(columns);
+        }
+
+        public RowPredicate compile(RowSchema schema) {
+            RowPredicate l = left.compile(schema);
+            RowPredicate r = right.compile(schema);
+            return (batch, row) -> {
+                byte a = l.test(batch, row);
+                if (a == TRUE) return TRUE;
+                byte b = r.test(batch, row);
+                if (b == TRUE) return TRUE;
+                return a == FALSE && b == FALSE ? FALSE : UNKNOWN;
+            };
+        }
+    }
+
+    private record Not(Cond inner) implements Cond {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            sql.append("NOT (");
+            inner.toSql(sql, params);
+            sql.append(')');
+        }
+
+        public void collect(Set<String> columns) {
+            inner.collect(columns);
+        }
+
+        public RowPredicate compile(RowSchema schema) {
+            RowPredicate p = inner.compile(schema);
+            return (batch, row) -> {
+                byte v = p.test(batch, row);
+                return v == UNKNOWN ? UNKNOWN : (v == TRUE ? FALSE : TRUE);
+            };
+        }
+    }
+
+    private record Compare(Value left, String op, Value right) implements Cond {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            left.toSql(sql, params);
+            sql.append(' ').append(op).append(' ');
+            right.toSql(sql, params);
+        }
+
+        public void collect(Set<String> columns) {
+            left.collect(columns);
+            right.collect(columns);
+        }
+
+        public RowPredicate compile(RowSchema schema) {
+            // 列与数值字面量比较时直接比较基本类型，不装箱
+            if (left instanceof Column c && right instanceof Literal lit) {
+                RowPredicate fast = compileColumnLiteral(schema, c, op, lit);
+                if (fast != null) return fast;
+            } else if (right instanceof Column c && left instanceof Literal lit) {
+                RowPredicate fast = compileColumnLiteral(schema, c, mirror(op), lit);
+                if (fast != null) return fast;
+            }
+            RowValue l = left instanceof Literal lit && right instanceof Column c
+                    ? coerceLiteral(schema, c, lit) : left.compile(schema);
+            RowValue r = right instanceof Literal lit && left instanceof Column c
+                    ? coerceLiteral(schema, c, lit) : right.compile(schema);
+            String o = op;
+            return (batch, row) -> {
+                Object a = l.get(batch, row);
+                Object b = r.get(batch, row);
+                if (a == null || b == null) return UNKNOWN;
+                return matches(o, compareValues(a, b)) ? TRUE : FALSE;
+            };
+        }
+    }
+
+    private record IsNull(Value value, boolean negated) implements Cond {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            value.toSql(sql, params);
+            sql.append(negated ? " IS NOT NULL" : " IS NULL");
+        }
+
+        public void collect(Set<String> columns) {
+            value.collect(columns);
+        }
+
+        public RowPredicate compile(RowSchema schema) {
+            if (value instanceof Column c) {
+                int index = c.index(schema);
+                return (batch, row) -> batch.column(index).isNull(row) != negated ? TRUE : FALSE;
+            }
+            RowValue v = value.compile(schema);
+            return (batch, row) -> (v.get(batch, row) == null) != negated ? TRUE : FALSE;
+        }
+    }
+
+    private record In(Value value, List<Object> values, boolean negated) implements Cond {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            value.toSql(sql, params);
+            sql.append(negated ? " NOT IN (" : " IN (");
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) sql.append(", ");
+                if (values.get(i) == null) {
+                    sql.append("NULL");
+                } else {
+                    sql.append('?');
+                    params.add(values.get(i));
+                }
+            }
+            sql.append(')');
+        }
+
+        public void collect(Set<String> columns) {
+            value.collect(columns);
+        }
+
+        public RowPredicate compile(RowSchema schema) {
+            boolean hasNull = values.contains(null);
+            byte noMatch = hasNull ? UNKNOWN : (negated ? TRUE : FALSE);
+            byte match = negated ? FALSE : TRUE;
+            // 整数列与整数列表：排序后二分查找
+            if (value instanceof Column c && schema.kind(c.index(schema)) == RowSchema.ColumnKind.LONG
+                    && values.stream().allMatch(v -> v == null || v instanceof Long)) {
+                int index = c.index(schema);
+                long[] sorted = values.stream().filter(v -> v != null).mapToLong(v -> (Long) v).sorted().toArray();
+                return (batch, row) -> {
+                    RowBatch.Column column = batch.column(index);
+                    if (column.isNull(row)) return UNKNOWN;
+                    return Arrays.binarySearch(sorted, column.getLong(row)) >= 0 ? match : noMatch;
+                };
+            }
+            RowValue v = value.compile(schema);
+            if (values.stream().allMatch(x -> x == null || x instanceof String)) {
+                // 按比较规则规范化后查找，与 compareValues 的字符串比较一致
+                Set<String> keys = new HashSet<>();
+                for (Object candidate : values) {
+                    if (candidate != null) keys.add(Collation.CASE_INSENSITIVE.key((String) candidate));
+                }
+                Object[] candidates = values.stream().filter(x -> x != null).toArray();
+                return (batch, row) -> {
+                    Object x = v.get(batch, row);
+                    if (x == null) return UNKNOWN;
+                    if (x instanceof String s) return keys.contains(Collation.CASE_INSENSITIVE.key(s)) ? match : noMatch;
+                    for (Object candidate : candidates) {
+                        if (compareValues(x, candidate) == 0) return match;
+                    }
+                    return noMatch;
+                };
+            }
+            Object[] candidates = values.stream().filter(x -> x != null).toArray();
+            return (batch, row) -> {
+                Object x = v.get(batch, row);
+                if (x == null) return UNKNOWN;
+                for (Object candidate : candidates) {
+                    if (compareValues(x, candidate) == 0) return match;
+                }
+                return noMatch;
+            };
+        }
+    }
+
+    /**
+     * 单独一个值作为条件（如布尔列）：非零、TRUE 为真。
+     */
+    private record Truthy(Value value) implements Cond {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            value.toSql(sql, params);
+        }
+
+        public void collect(Set<String> columns) {
+            value.collect(columns);
+        }
+
+        public RowPredicate compile(RowSchema schema) {
+            RowValue v = value.compile(schema);
+            return (batch, row) -> truth(v.get(batch, row));
+        }
+    }
+
+    // ---------------- 语法树：值 ----------------
+
+    private interface Value {
+        void toSql(StringBuilder sql, List<Object> params);
+
+        void collect(Set<String> columns);
+
+        RowSchema.ColumnKind kind(RowSchema schema);
+
+        /**
+         * 逐行求值，供条件判断使用。
+         */
+        RowValue compile(RowSchema schema);
+
+        /**
+         * 整批求值；默认逐行求值后按结果类型写入新列，算术、列和常量有特化实现。
+         */
+        default ColumnEvaluator compileVector(RowSchema schema) {
+            return fill(kind(schema), compile(schema));
+        }
+    }
+
+    private record Column(String name) implements Value {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            sql.append(SourceQuery.quote(name));
+        }
+
+        public void collect(Set<String> columns) {
+            columns.add(name);
+        }
+
+        int index(RowSchema schema) {
+            int index = schema.indexOf(name);
+            if (index < 0) {
+                throw new RuntimeException("Expression column not found: " + name);
+            }
+            return index;
+        }
+
+        public RowSchema.ColumnKind kind(RowSchema schema) {
+            return schema.kind(index(schema));
+        }
+
+        public RowValue compile(RowSchema schema) {
+            int index = index(schema);
+            return (batch, row) -> batch.column(index).getObject(row);
+        }
+
+        public ColumnEvaluator compileVector(RowSchema schema) {
+            // 直接引用原列，不复制
+            int index = index(schema);
+            return batch -> batch.column(index);
+        }
+    }
+
+    private record Literal(Object value) implements Value {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            if (value == null) {
+                sql.append("NULL");
+            } else {
+                sql.append('?');
+                params.add(value);
+            }
+        }
+
+        public void collect(Set<String> columns) {
+        }
+
+        public RowSchema.ColumnKind kind(RowSchema schema) {
+            if (value instanceof Long || value instanceof Boolean) return RowSchema.ColumnKind.LONG;
+            if (value instanceof BigDecimal) return RowSchema.ColumnKind.DECIMAL;
+            return RowSchema.ColumnKind.OBJECT;
+        }
+
+        public RowValue compile(RowSchema schema) {
+            Object v = value instanceof Boolean b ? (Long) (b ? 1L : 0L) : value;
+            return (batch, row) -> v;
+        }
+
+        public ColumnEvaluator compileVector(RowSchema schema) {
+            ConstantColumn column = new ConstantColumn(value instanceof Boolean b ? (Long) (b ? 1L : 0L) : value);
+            return batch -> column;
+        }
+    }
+
+    private record Arithmetic(Value left, char op, Value right) implements Value {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            sql.append('(');
+            left.toSql(sql, params);
+            sql.append(' ').append(op).append(' ');
+            right.toSql(sql, params);
+            sql.append(')');
+        }
+
+        public void collect(Set<String> columns) {
+            left.collect(columns);
+            right.collect(columns);
+        }
+
+        public RowSchema.ColumnKind kind(RowSchema schema) {
+            RowSchema.ColumnKind l = left.kind(schema);
+            RowSchema.ColumnKind r = right.kind(schema);
+            if (l == RowSchema.ColumnKind.DOUBLE || r == RowSchema.ColumnKind.DOUBLE) {
+                return RowSchema.ColumnKind.DOUBLE;
+            }
+            // MySQL 的 / 总是返回小数
+            if (op != '/' && l == RowSchema.ColumnKind.LONG && r == RowSchema.ColumnKind.LONG) {
+                return RowSchema.ColumnKind.LONG;
+            }
+            return RowSchema.ColumnKind.DECIMAL;
+        }
+
+        public RowValue compile(RowSchema schema) {
+            RowSchema.ColumnKind kind = kind(schema);
+            RowValue l = left.compile(schema);
+            RowValue r = right.compile(schema);
+            char o = op;
+            return (batch, row) -> {
+                Object a = l.get(batch, row);
+                Object b = r.get(batch, row);
+                if (a == null || b == null) return null;
+                return arithmetic(kind, o, a, b);
+            };
+        }
+
+        public ColumnEvaluator compileVector(RowSchema schema) {
+            RowSchema.ColumnKind kind = kind(schema);
+            ColumnEvaluator l = left.compileVector(schema);
+            ColumnEvaluator r = right.compileVector(schema);
+            if (kind == RowSchema.ColumnKind.LONG) {
+                LongOp f = switch (op) {
+                    case '+' -> Math::addExact;
+                    case '-' -> Math::subtractExact;
+                    case '*' -> Math::multiplyExact;
+                    default -> (a, b) -> a % b;
+                };
+                boolean modulo = op == '%';
+                return batch -> {
+                    RowBatch.Column a = l.evaluate(batch);
+                    RowBatch.Column b = r.evaluate(batch);
+                    int size = batch.size();
+                    RowBatch.LongColumn out = new RowBatch.LongColumn(size);
+                    for (int row = 0; row < size; row++) {
+                        if (a.isNull(row) || b.isNull(row) || (modulo && b.getLong(row) == 0)) {
+                            out.setNull(row);
+                        } else {
+                            out.set(row, f.apply(a.getLong(row), b.getLong(row)));
+                        }
+                    }
+                    return out;
+                };
+            }
+            if (kind == RowSchema.ColumnKind.DOUBLE && isPrimitive(left.kind(schema)) && isPrimitive(right.kind(schema))) {
+                DoubleOp f = switch (op) {
+                    case '+' -> Double::sum;
+                    case '-' -> (a, b) -> a - b;
+                    case '*' -> (a, b) -> a * b;
+                    case '/' -> (a, b) -> a / b;
+                    default -> (a, b) -> a % b;
+                };
+                boolean divides = op == '/' || op == '%';
+                return batch -> {
+                    RowBatch.Column a = l.evaluate(batch);
+                    RowBatch.Column b = r.evaluate(batch);
+                    int size = batch.size();
+                    RowBatch.DoubleColumn out = new RowBatch.DoubleColumn(size);
+                    for (int row = 0; row < size; row++) {
+                        // 除数为 0 时结果为 NULL
+                        if (a.isNull(row) || b.isNull(row) || (divides && b.getDouble(row) == 0)) {
+                            out.setNull(row);
+                        } else {
+                            out.set(row, f.apply(a.getDouble(row), b.getDouble(row)));
+                        }
+                    }
+                    return out;
+                };
+            }
+            return fill(kind, compile(schema));
+        }
+    }
+
+    private record Negate(Value inner) implements Value {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            sql.append("-(");
+            inner.toSql(sql, params);
+            sql.append(')');
+        }
+
+        public void collect(Set<String> columns) {
+            inner.collect(columns);
+        }
+
+        public RowSchema.ColumnKind kind(RowSchema schema) {
+            RowSchema.ColumnKind k = inner.kind(schema);
+            return k == RowSchema.ColumnKind.LONG || k == RowSchema.ColumnKind.DOUBLE ? k : RowSchema.ColumnKind.DECIMAL;
+        }
+
+        public RowValue compile(RowSchema schema) {
+            RowValue v = inner.compile(schema);
+            RowSchema.ColumnKind kind = kind(schema);
+            return (batch, row) -> {
+                Object x = v.get(batch, row);
+                if (x == null) return null;
+                return arithmetic(kind, '-', 0L, x);
+            };
+        }
+    }
+
+    /**
+     * CASE WHEN ... THEN ... [ELSE ...] END；CASE x WHEN v THEN ... 解析为 x = v 的条件。IF(c, a, b) 同样解析为 Case。
+     */
+    private record Case(List<Cond> whens, List<Value> thens, Value otherwise, boolean isIf) implements Value {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            if (isIf) {
+                sql.append("IF(");
+                whens.get(0).toSql(sql, params);
+                sql.append(", ");
+                thens.get(0).toSql(sql, params);
+                sql.append(", ");
+                otherwise.toSql(sql, params);
+                sql.append(')');
+                return;
+            }
+            sql.append("CASE");
+            for (int i = 0; i < whens.size(); i++) {
+                sql.append(" WHEN ");
+                whens.get(i).toSql(sql, params);
+                sql.append(" THEN ");
+                thens.get(i).toSql(sql, params);
+            }
+            if (otherwise != null) {
+                sql.append(" ELSE ");
+                otherwise.toSql(sql, params);
+            }
+            sql.append(" END");
+        }
+
+        public void collect(Set<String> columns) {
+            whens.forEach(w -> w.collect(columns));
+            thens.forEach(t -> t.collect(columns));
+            if (otherwise != null) otherwise.collect(columns);
+        }
+
+        public RowSchema.ColumnKind kind(RowSchema schema) {
+            List<Value> branches = new ArrayList<>(thens);
+            if (otherwise != null) branches.add(otherwise);
+            return commonKind(schema, branches);
+        }
+
+        public RowValue compile(RowSchema schema) {
+            RowPredicate[] conditions = whens.stream().map(w -> w.compile(schema)).toArray(RowPredicate[]::new);
+            RowValue[] results = thens.stream().map(t -> t.compile(schema)).toArray(RowValue[]::new);
+            RowValue fallback = otherwise != null ? otherwise.compile(schema) : (batch, row) -> null;
+            return (batch, row) -> {
+                for (int i = 0; i < conditions.length; i++) {
+                    if (conditions[i].test(batch, row) == TRUE) {
+                        return results[i].get(batch, row);
+                    }
+                }
+                return fallback.get(batch, row);
+            };
+        }
+    }
+
+    private record Call(String function, List<Value> args) implements Value {
+        public void toSql(StringBuilder sql, List<Object> params) {
+            sql.append(function).append('(');
+            for (int i = 0; i < args.size(); i++) {
+                if (i > 0) sql.append(", ");
+                args.get(i).toSql(sql, params);
+            }
+            sql.append(')');
+        }
+
+        public void collect(Set<String> columns) {
+            for (Value arg : args) {
+                arg.collect(columns);
+            }
+        }
+
+        public RowSchema.ColumnKind kind(RowSchema schema) {
+            switch (function) {
+                case "LENGTH":
+                case "CHAR_LENGTH":
+                    return RowSchema.ColumnKind.LONG;
+                case "ABS":
+                case "ROUND": {
+                    RowSchema.ColumnKind k = args.get(0).kind(schema);
+                    if (k == RowSchema.ColumnKind.LONG && "ROUND".equals(function) && args.size() > 1) {
+                        return RowSchema.ColumnKind.DECIMAL;
+                    }
+                    return k == RowSchema.ColumnKind.LONG || k == RowSchema.ColumnKind.DOUBLE
+                            ? k : RowSchema.ColumnKind.DECIMAL;
+                }
+                case "COALESCE":
+                case "IFNULL":
+                    return commonKind(schema, args);
+                default:
+                    return RowSchema.ColumnKind.OBJECT;
+            }
+        }
+
+        public RowValue compile(RowSchema schema) {
+            RowValue[] a = new RowValue[args.size()];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = args.get(i).compile(schema);
+            }
+            switch (function) {
+                case "COALESCE":
+                case "IFNULL":
+                    return (batch, row) -> {
+                        for (RowValue arg : a) {
+                            Object v = arg.get(batch, row);
+                            if (v != null) return v;
+                        }
+                        return null;
+                    };
+                case "CONCAT":
+                    return (batch, row) -> {
+                        StringBuilder sb = new StringBuilder();
+                        for (RowValue arg : a) {
+                            Object v = arg.get(batch, row);
+                            if (v == null) return null;
+                            sb.append(asString(v));
+                        }
+                        return sb.toString();
+                    };
+                case "SUBSTRING":
+                    return (batch, row) -> {
+                        Object s = a[0].get(batch, row);
+                        Object pos = a[1].get(batch, row);
+                        Object len = a.length > 2 ? a[2].get(batch, row) : Long.MAX_VALUE;
+                        if (s == null || pos == null || len == null) return null;
+                        return substring(asString(s), toLong(pos), toLong(len));
+                    };
+                case "REPLACE":
+                    return (batch, row) -> {
+                        Object s = a[0].get(batch, row);
+                        Object from = a[1].get(batch, row);
+                        Object to = a[2].get(batch, row);
+                        if (s == null || from == null || to == null) return null;
+                        String f = asString(from);
+                        return f.isEmpty() ? asString(s) : asString(s).replace(f, asString(to));
+                    };
+                case "ROUND": {
+                    RowSchema.ColumnKind kind = kind(schema);
+                    return (batch, row) -> {
+                        Object x = a[0].get(batch, row);
+                        Object d = a.length > 1 ? a[1].get(batch, row) : 0L;
+                        if (x == null || d == null) return null;
+                        return round(kind, x, (int) toLong(d));
+                    };
+                }
+                case "DATE_FORMAT": {
+                    DateTimeFormatter formatter = mysqlFormatter(literalArg(1));
+                    return unary(a[0], v -> {
+                        Object t = toTemporal(v);
+                        if (t instanceof LocalDate d) t = d.atStartOfDay();
+                        return t == null ? null : formatter.format((TemporalAccessor) t);
+                    });
+                }
+                case "SHA2": {
+                    int bits = (int) toLong(literalArg(1));
+                    String algorithm = switch (bits) {
+                        case 0, 256 -> "SHA-256";
+                        case 224 -> "SHA-224";
+                        case 384 -> "SHA-384";
+                        case 512 -> "SHA-512";
+                        default -> throw new RuntimeException("SHA2 hash length must be 224, 256, 384 or 512");
+                    };
+                    return unary(a[0], v -> digest(algorithm, v));
+                }
+                default:
+                    return unary(a[0], scalar(function, kind(schema)));
+            }
+        }
+
+        private Object literalArg(int index) {
+            if (!(args.get(index) instanceof Literal lit) || lit.value() == null) {
+                throw new RuntimeException(function + " argument " + (index + 1) + " must be a constant");
+            }
+            return lit.value();
+        }
+    }
+
+    // ---------------- 求值辅助 ----------------
+
+    private static RowValue unary(RowValue arg, Function<Object, Object> f) {
+        return (batch, row) -> {
+            Object v = arg.get(batch, row);
+            return v == null ? null : f.apply(v);
+        };
+    }
+
+    private static Function<Object, Object> scalar(String function, RowSchema.ColumnKind kind) {
+        switch (function) {
+            case "LOWER":
+                return v -> asString(v).toLowerCase(Locale.ROOT);
+            case "UPPER":
+                return v -> asString(v).toUpperCase(Locale.ROOT);
+            case "TRIM":
+                return v -> asString(v).strip();
+            case "CHAR_LENGTH":
+                return v -> {
+                    String s = asString(v);
+                    return (long) s.codePointCount(0, s.length());
+                };
+            case "LENGTH":
+                // MySQL 的 LENGTH 返回字节数
+                return v -> v instanceof byte[] b ? (long) b.length : (long) asString(v).getBytes(StandardCharsets.UTF_8).length;
+            case "ABS":
+                return v -> {
+                    if (kind == RowSchema.ColumnKind.LONG) return Math.abs(toLong(v));
+                    if (kind == RowSchema.ColumnKind.DOUBLE) return Math.abs(((Number) v).doubleValue());
+                    BigDecimal d = toDecimal(v);
+                    return d == null ? null : d.abs();
+                };
+            case "DATE":
+                return v -> {
+                    Object t = toTemporal(v);
+                    return t instanceof LocalDateTime dt ? dt.toLocalDate() : (t instanceof LocalDate ? t : null);
+                };
+            case "MD5":
+                return v -> digest("MD5", v);
+            case "SHA1":
+                return v -> digest("SHA-1", v);
+            default:
+                throw new RuntimeException("Unsupported function: " + function);
+        }
+    }
+
+    /**
+     * 逐行求值，按结果类型写入新列。
+     */
+    private static ColumnEvaluator fill(RowSchema.ColumnKind kind, RowValue value) {
+        return batch -> {
+            int size = batch.size();
+            RowBatch.Column out = RowBatch.Column.create(kind, size);
+            for (int row = 0; row < size; row++) {
+                Object v = value.get(batch, row);
+                if (v == null) {
+                    out.setValue(row, null);
+                    continue;
+                }
+                switch (kind) {
+                    case LONG -> ((RowBatch.LongColumn) out).set(row, toLong(v));
+                    case DOUBLE -> ((RowBatch.DoubleColumn) out).set(row, ((Number) v).doubleValue());
+                    case DECIMAL -> out.setValue(row, toDecimal(v));
+                    default -> out.setValue(row, v);
+                }
+            }
+            return out;
+        };
+    }
+
+    private static boolean isPrimitive(RowSchema.ColumnKind kind) {
+        return kind == RowSchema.ColumnKind.LONG || kind == RowSchema.ColumnKind.DOUBLE;
+    }
+
+    private static RowSchema.ColumnKind commonKind(RowSchema schema, List<Value> values) {
+        RowSchema.ColumnKind kind = null;
+        for (Value v : values) {
+            if (v instanceof Literal lit && lit.value() == null) continue;
+            RowSchema.ColumnKind k = v.kind(schema);
+            if (kind == null) {
+                kind = k;
+            } else if (kind != k) {
+                return RowSchema.ColumnKind.OBJECT;
+            }
+        }
+        return kind != null ? kind : RowSchema.ColumnKind.OBJECT;
+    }
+
+    private static Object arithmetic(RowSchema.ColumnKind kind, char op, Object a, Object b) {
+        if (kind == RowSchema.ColumnKind.LONG) {
+            long x = toLong(a);
+            long y = toLong(b);
+            return switch (op) {
+                case '+' -> Math.addExact(x, y);
+                case '-' -> Math.subtractExact(x, y);
+                case '*' -> Math.multiplyExact(x, y);
+                default -> y == 0 ? null : x % y;
+            };
+        }
+        if (kind == RowSchema.ColumnKind.DOUBLE) {
+            // 无法转换为数字的字符串结果为 NULL
+            Double x = toDouble(a);
+            Double y = toDouble(b);
+            if (x == null || y == null) return null;
+            return switch (op) {
+                case '+' -> x + y;
+                case '-' -> x - y;
+                case '*' -> x * y;
+                case '/' -> y == 0 ? null : x / y;
+                default -> y == 0 ? null : x % y;
+            };
+        }
+        BigDecimal x = toDecimal(a);
+        BigDecimal y = toDecimal(b);
+        if (x == null || y == null) return null;
+        return switch (op) {
+            case '+' -> x.add(y);
+            case '-' -> x.subtract(y);
+            case '*' -> x.multiply(y);
+            // 与 MySQL 一致：商的小数位数为被除数小数位数 + 4
+            case '/' -> y.signum() == 0 ? null : x.divide(y, Math.max(0, x.scale()) + 4, RoundingMode.HALF_UP);
+            default -> y.signum() == 0 ? null : x.remainder(y);
+        };
+    }
+
+    private static Object round(RowSchema.ColumnKind kind, Object value, int digits) {
+        if (kind == RowSchema.ColumnKind.LONG) {
+            return toLong(value);
+        }
+        if (kind == RowSchema.ColumnKind.DOUBLE) {
+            return BigDecimal.valueOf(((Number) value).doubleValue()).setScale(digits, RoundingMode.HALF_EVEN).doubleValue();
+        }
+        BigDecimal d = toDecimal(value);
+        return d == null ? null : d.setScale(digits, RoundingMode.HALF_UP);
+    }
+
+    private static String substring(String s, long pos, long len) {
+        int length = s.length();
+        long start;
+        if (pos > 0) {
+            start = pos - 1;
+        } else if (pos < 0) {
+            start = length + pos;
+        } else {
+            return "";
+        }
+        if (start < 0 || start >= length || len <= 0) return "";
+        return s.substring((int) start, len >= length - start ? length : (int) (start + len));
+    }
+
+    private static String digest(String algorithm, Object value) {
+        byte[] bytes = value instanceof byte[] b ? b : asString(value).getBytes(StandardCharsets.UTF_8);
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance(algorithm).digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 把 MySQL DATE_FORMAT 的格式串转换为 DateTimeFormatter，支持 %Y %y %m %c %d %e %H %k %h %i %s %f %p %T %%。
+     */
+    private static DateTimeFormatter mysqlFormatter(Object format) {
+        String f = format.toString();
+        StringBuilder pattern = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < f.length(); i++) {
+            char c = f.charAt(i);
+            if (c != '%' || i + 1 >= f.length()) {
+                literal.append(c);
+                continue;
+            }
+            char spec = f.charAt(++i);
+            String p = switch (spec) {
+                case 'Y' -> "yyyy";
+                case 'y' -> "yy";
+                case 'm' -> "MM";
+                case 'c' -> "M";
+                case 'd' -> "dd";
+                case 'e' -> "d";
+                case 'H' -> "HH";
+                case 'k' -> "H";
+                case 'h' -> "hh";
+                case 'i' -> "mm";
+                case 's', 'S' -> "ss";
+                case 'f' -> "SSSSSS";
+                case 'p' -> "a";
+                case 'T' -> "HH:mm:ss";
+                default -> null;
+            };
+            if (p == null) {
+                literal.append(spec);
+                continue;
+            }
+            if (literal.length() > 0) {
+                pattern.append('\'').append(literal.toString().replace("'", "''")).append('\'');
+                literal.setLength(0);
+            }
+            pattern.append(p);
+        }
+        if (literal.length() > 0) {
+            pattern.append('\'').append(literal.toString().replace("'", "''")).append('\'');
+        }
+        return DateTimeFormatter.ofPattern(pattern.toString(), Locale.ROOT);
+    }
+
+    private static Object toTemporal(Object value) {
+        Object v = normalize(value);
+        if (v instanceof LocalDateTime || v instanceof LocalDate) return v;
+        return v instanceof String s ? parseTemporal(s) : null;
+    }
+
+    private static String asString(Object value) {
+        Object v = normalize(value);
+        if (v instanceof BigDecimal d) return d.toPlainString();
+        if (v instanceof LocalDateTime dt) {
+            return dt.getNano() == 0 ? dt.format(DATETIME) : dt.toString().replace('T', ' ');
+        }
+        if (v instanceof byte[] b) return new String(b, StandardCharsets.UTF_8);
+        if (v instanceof Boolean b) return b ? "1" : "0";
+        return v.toString();
+    }
+
+    private static long toLong(Object value) {
+        if (value instanceof Number n) return n.longValue();
+        if (value instanceof Boolean b) return b ? 1 : 0;
+        BigDecimal d = toDecimal(value);
+        if (d == null) throw new RuntimeException("Cannot convert '" + value + "' to a number");
+        return d.longValue();
+    }
+
+    private static Double toDouble(Object value) {
+        if (value instanceof Number n) return n.doubleValue();
+        BigDecimal d = toDecimal(value);
+        return d == null ? null : d.doubleValue();
+    }
+
+    private static byte truth(Object x) {
+        if (x == null) return UNKNOWN;
+        if (x instanceof Boolean b) return b ? TRUE : FALSE;
+        BigDecimal n = toDecimal(x);
+        return n != null && n.signum() != 0 ? TRUE : FALSE;
+    }
+
+    // ---------------- 比较 ----------------
+
+    private static RowPredicate compileColumnLiteral(RowSchema schema, Column column, String op, Literal literal) {
+        int index = column.index(schema);
+        RowSchema.ColumnKind kind = schema.kind(index);
+        if (!(literal.value() instanceof Number)) return null;
+        if (kind == RowSchema.ColumnKind.LONG && literal.value() instanceof Long) {
+            long target = (Long) literal.value();
+            return (batch, row) -> {
+                RowBatch.Column c = batch.column(index);
+                if (c.isNull(row)) return UNKNOWN;
+                return matches(op, Long.compare(c.getLong(row), target)) ? TRUE : FALSE;
+            };
+        }
+        if (kind == RowSchema.ColumnKind.LONG || kind == RowSchema.ColumnKind.DOUBLE) {
+            double target = ((Number) literal.value()).doubleValue();
+            return (batch, row) -> {
+                RowBatch.Column c = batch.column(index);
+                if (c.isNull(row)) return UNKNOWN;
+                return matches(op, Double.compare(c.getDouble(row), target)) ? TRUE : FALSE;
+            };
+        }
+        return null;
+    }
+
+    /**
+     * 列与字符串字面量比较时按列的源类型预先转换字面量（如日期），避免逐行解析。
+     */
+    private static RowValue coerceLiteral(RowSchema schema, Column column, Literal literal) {
+        Object value = literal.value();
+        if (value instanceof String s) {
+            int jdbcType = schema.jdbcType(column.index(schema));
+            Object converted = switch (jdbcType) {
+                case Types.DATE -> parseTemporal(s);
+                case Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> {
+                    Object t = parseTemporal(s);
+                    yield t instanceof LocalDate d ? d.atStartOfDay() : t;
+                }
+                default -> s;
+            };
+            Object v = converted != null ? converted : s;
+            return (batch, row) -> v;
+        }
+        if (value instanceof Number && schema.kind(column.index(schema)) == RowSchema.ColumnKind.DECIMAL) {
+            BigDecimal d = toDecimal(value);
+            return (batch, row) -> d;
+        }
+        return literal.compile(schema);
+    }
+
+    private static boolean matches(String op, int cmp) {
+        switch (op) {
+            case "=":
+                return cmp == 0;
+            case "!=":
+            case "<>":
+                return cmp != 0;
+            case "<":
+                return cmp < 0;
+            case "<=":
+                return cmp <= 0;
+            case ">":
+                return cmp > 0;
+            default:
+                return cmp >= 0;
+        }
+    }
+
+    private static String mirror(String op) {
+        switch (op) {
+            case "<":
+                return ">";
+            case "<=":
+                return ">=";
+            case ">":
+                return "<";
+            case ">=":
+                return "<=";
+            default:
+                return op;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compareValues(Object a, Object b) {
+        a = normalize(a);
+        b = normalize(b);
+        if (a instanceof Boolean x) a = x ? 1L : 0L;
+        if (b instanceof Boolean x) b = x ? 1L : 0L;
+        if (a instanceof Long x && b instanceof Long y) {
+            return Long.compare(x, y);
+        }
+        if (a instanceof Number || b instanceof Number) {
+            BigDecimal x = toDecimal(a);
+            BigDecimal y = toDecimal(b);
+            if (x != null && y != null) return x.compareTo(y);
+        }
+        if (a instanceof String s && !(b instanceof String)) {
+            Object t = parseTemporal(s);
+            if (t != null) a = alignTemporal(t, b);
+        } else if (b instanceof String s && !(a instanceof String)) {
+            Object t = parseTemporal(s);
+            if (t != null) b = alignTemporal(t, a);
+        }
+        if (a instanceof LocalDate d && b instanceof LocalDateTime) a = d.atStartOfDay();
+        if (b instanceof LocalDate d && a instanceof LocalDateTime) b = d.atStartOfDay();
+        if (a instanceof String x && b instanceof String y) {
+            return Collation.CASE_INSENSITIVE.compare(x, y);
+        }
+        if (a.getClass() == b.getClass() && a instanceof Comparable) {
+            return ((Comparable) a).compareTo(b);
+        }
+        return Collation.CASE_INSENSITIVE.compare(a.toString(), b.toString());
+    }
+
+    private static Object normalize(Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Timestamp ts) return ts.toLocalDateTime();
+        if (value instanceof java.sql.Date d) return d.toLocalDate();
+        return value;
+    }
+
+    private static Object alignTemporal(Object parsed, Object other) {
+        if (other instanceof LocalDateTime && parsed instanceof LocalDate d) return d.atStartOfDay();
+        return parsed;
+    }
+
+    private static BigDecimal toDecimal(Object value) {
+        if (value instanceof BigDecimal d) return d;
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        }
+        if (value instanceof BigInteger i) return new BigDecimal(i);
+        if (value instanceof Number n) return BigDecimal.valueOf(n.doubleValue());
+        if (value instanceof Boolean b) return b ? BigDecimal.ONE : BigDecimal.ZERO;
+        try {
+            return new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 解析 yyyy-MM-dd 或 yyyy-MM-dd HH:mm:ss[.SSS]，不是日期格式时返回 null。
+     */
+    private static Object parseTemporal(String s) {
+        String t = s.trim();
+        try {
+            if (t.length() == 10) {
+                return LocalDate.parse(t);
+            }
+            if (t.length() > 10 && (t.charAt(10) == ' ' || t.charAt(10) == 'T')) {
+                return LocalDate.parse(t.substring(0, 10)).atTime(LocalTime.parse(t.substring(11)));
+            }
+        } catch (RuntimeException e) {
+            // 不是日期
+        }
+        return null;
+    }
+
+    /**
+     * 字面量在整批求值时表示为常量列。
+     */
+    private static final class ConstantColumn extends RowBatch.Column {
+        private final Object value;
+
+        ConstantColumn(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return value == null;
+        }
+
+        @Override
+        public RowSchema.ColumnKind kind() {
+            return value instanceof Long ? RowSchema.ColumnKind.LONG
+                    : value instanceof BigDecimal ? RowSchema.ColumnKind.DECIMAL : RowSchema.ColumnKind.OBJECT;
+        }
+
+        @Override
+        public long getLong(int row) {
+            return toLong(value);
+        }
+
+        @Override
+        public double getDouble(int row) {
+            Double d = toDouble(value);
+            return d == null ? 0 : d;
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return value;
+        }
+
+        @Override
+        void read(java.sql.ResultSet rs, int columnIndex, int row) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        RowBatch.Column select(int[] rows) {
+            return this;
+        }
+    }
+
+    // ---------------- 解析 ----------------
+
+    private static final class Parser {
+        private final String text;
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Cond parseOr() {
+            Cond left = parseAnd();
+            while (acceptKeyword("OR")) {
+                left = new Or(left, parseAnd());
+            }
+            return left;
+        }
+
+        Cond parseAnd() {
+            Cond left = parseNot();
+            while (acceptKeyword("AND")) {
+                left = new And(left, parseNot());
+            }
+            return left;
+        }
+
+        Cond parseNot() {
+            if (acceptKeyword("NOT")) {
+                return new Not(parseNot());
+            }
+            return parsePredicate();
+        }
+
+        Cond parsePredicate() {
+            skipSpaces();
+            if (peek() == '(') {
+                // 括号内可能是条件也可能是值（如 (a + b) > 1），先按条件解析，后面还跟着运算符时按值重新解析
+                int save = pos;
+                try {
+                    pos++;
+                    Cond inner = parseOr();
+                    expect(')');
+                    if (!followedByOperator()) {
+                        return inner;
+                    }
+                } catch (RuntimeException e) {
+                    // 按值重新解析
+                }
+                pos = save;
+            }
+            Value left = parseValue();
+            if (acceptKeyword("IS")) {
+                boolean negated = acceptKeyword("NOT");
+                if (!acceptKeyword("NULL")) throw error("NULL expected after IS");
+                return new IsNull(left, negated);
+            }
+            boolean negated = acceptKeyword("NOT");
+            if (acceptKeyword("IN")) {
+                expect('(');
+                List<Object> values = new ArrayList<>();
+                do {
+                    Value v = parseValue();
+                    if (!(v instanceof Literal lit)) throw error("IN list only accepts literals");
+                    values.add(lit.value());
+                } while (accept(','));
+                expect(')');
+                return new In(left, values, negated);
+            }
+            if (negated) throw error("IN expected after NOT");
+            String op = acceptComparison();
+            if (op == null) {
+                return new Truthy(left);
+            }
+            return new Compare(left, op, parseValue());
+        }
+
+        private boolean followedByOperator() {
+            skipSpaces();
+            char c = peek();
+            if ("=<>!+-*/%".indexOf(c) >= 0 && c != '\0') return true;
+            int save = pos;
+            boolean keyword = acceptKeyword("IS") || acceptKeyword("IN") || acceptKeyword("NOT");
+            pos = save;
+            return keyword;
+        }
+
+        Value parseValue() {
+            Value left = parseTerm();
+            while (true) {
+                skipSpaces();
+                char c = peek();
+                if (c == '+' || c == '-') {
+                    pos++;
+                    left = new Arithmetic(left, c, parseTerm());
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        Value parseTerm() {
+            Value left = parseUnary();
+            while (true) {
+                skipSpaces();
+                char c = peek();
+                if (c == '*' || c == '/' || c == '%') {
+                    pos++;
+                    left = new Arithmetic(left, c, parseUnary());
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        Value parseUnary() {
+            skipSpaces();
+            if (peek() == '-') {
+                pos++;
+                Value inner = parseUnary();
+                // 负数字面量保持为字面量，便于按参数绑定和基本类型比较
+                if (inner instanceof Literal lit && lit.value() instanceof Long l && l != Long.MIN_VALUE) {
+                    return new Literal(-l);
+                }
+                if (inner instanceof Literal lit && lit.value() instanceof BigDecimal d) {
+                    return new Literal(d.negate());
+                }
+                return new Negate(inner);
+            }
+            return parsePrimary();
+        }
+
+        Value parsePrimary() {
+            skipSpaces();
+            if (pos >= text.length()) throw error("Value expected");
+            char c = text.charAt(pos);
+            if (c == '(') {
+                pos++;
+                Value inner = parseValue();
+                expect(')');
+                return inner;
+            }
+            if (c == '\'') {
+                return new Literal(readString());
+            }
+            if (c == '`') {
+                return new Column(readQuoted());
+            }
+            if (Character.isDigit(c) || (c == '.' && pos + 1 < text.length() && Character.isDigit(text.charAt(pos + 1)))) {
+                return new Literal(readNumber());
+            }
+            if (Character.isLetter(c) || c == '_') {
+                int save = pos;
+                String word = readWord();
+                String upper = word.toUpperCase(Locale.ROOT);
+                switch (upper) {
+                    case "NULL":
+                        return new Literal(null);
+                    case "TRUE":
+                        return new Literal(Boolean.TRUE);
+                    case "FALSE":
+                        return new Literal(Boolean.FALSE);
+                    case "CASE":
+                        return parseCase();
+                    default:
+                        break;
+                }
+                skipSpaces();
+                if (peek() != '(') {
+                    return new Column(word);
+                }
+                pos++;
+                if ("IF".equals(upper)) {
+                    Cond condition = parseOr();
+                    expect(',');
+                    Value then = parseValue();
+                    expect(',');
+                    Value otherwise = parseValue();
+                    expect(')');
+                    return new Case(List.of(condition), List.of(then), otherwise, true);
+                }
+                int[] arity = FUNCTIONS.get(upper);
+                if (arity == null) {
+                    pos = save;
+                    throw error("Unsupported function " + word);
+                }
+                List<Value> args = new ArrayList<>();
+                do {
+                    args.add(parseValue());
+                } while (accept(','));
+                expect(')');
+                if (args.size() < arity[0] || (arity[1] >= 0 && args.size() > arity[1])) {
+                    throw error(upper + " takes " + (arity[0] == arity[1] ? String.valueOf(arity[0])
+                            : arity[0] + (arity[1] < 0 ? " or more" : "-" + arity[1])) + " argument(s)");
+                }
+                return new Call(upper, args);
+            }
+            throw error("Unexpected character '" + c + "'");
+        }
+
+        private Value parseCase() {
+            List<Cond> whens = new ArrayList<>();
+            List<Value> thens = new ArrayList<>();
+            Value subject = null;
+            if (!peekKeyword("WHEN")) {
+                subject = parseValue();
+            }
+            while (acceptKeyword("WHEN")) {
+                whens.add(subject != null ? new Compare(subject, "=", parseValue()) : parseOr());
+                if (!acceptKeyword("THEN")) throw error("THEN expected");
+                thens.add(parseValue());
+            }
+            if (whens.isEmpty()) throw error("WHEN expected");
+            Value otherwise = acceptKeyword("ELSE") ? parseValue() : null;
+            if (!acceptKeyword("END")) throw error("END expected");
+            return new Case(whens, thens, otherwise, false);
+        }
+
+        private String acceptComparison() {
+            skipSpaces();
+            for (String op : new String[]{"<=", ">=", "<>", "!=", "=", "<", ">"}) {
+                if (text.startsWith(op, pos)) {
+                    pos += op.length();
+                    return op;
+                }
+            }
+            return null;
+        }
+
+        private boolean peekKeyword(String keyword) {
+            int save = pos;
+            boolean found = acceptKeyword(keyword);
+            pos = save;
+            return found;
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            skipSpaces();
+            int end = pos + keyword.length();
+            if (end <= text.length() && text.regionMatches(true, pos, keyword, 0, keyword.length())
+                    && (end == text.length() || !isWordChar(text.charAt(end)))) {
+                pos = end;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean accept(char c) {
+            skipSpaces();
+            if (peek() == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!accept(c)) throw error("'" + c + "' expected");
+        }
+
+        void expectEnd() {
+            skipSpaces();
+            if (pos < text.length()) throw error("Unexpected '" + text.substring(pos) + "'");
+        }
+
+        private String readString() {
+            StringBuilder sb = new StringBuilder();
+            pos++;
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '\'') {
+                    if (peek() == '\'') {
+                        sb.append('\'');
+                        pos++;
+                    } else {
+                        return sb.toString();
+                    }
+                } else {
+                    sb.append(c);
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private String readQuoted() {
+            int end = text.indexOf('`', pos + 1);
+            if (end < 0) throw error("Unterminated identifier");
+            String name = text.substring(pos + 1, end);
+            pos = end + 1;
+            return name;
+        }
+
+        private Object readNumber() {
+            int start = pos;
+            while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+                pos++;
+            }
+            String s = text.substring(start, pos);
+            try {
+                if (s.indexOf('.') < 0) {
+                    return Long.parseLong(s);
+                }
+                return new BigDecimal(s);
+            } catch (NumberFormatException e) {
+                try {
+                    return new BigDecimal(s);
+                } catch (NumberFormatException ex) {
+                    throw error("Invalid number " + s);
+                }
+            }
+        }
+
+        private String readWord() {
+            int start = pos;
+            while (pos < text.length() && isWordChar(text.charAt(pos))) {
+                pos++;
+            }
+            return text.substring(start, pos);
+        }
+
+        private static boolean isWordChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_';
+        }
+
+        private char peek() {
+            return pos < text.length() ? text.charAt(pos) : '\0';
+        }
+
+        private void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private RuntimeException error(String message) {
+            return new RuntimeException("Invalid expression at position " + (pos + 1) + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.datasync.tool.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 多行 INSERT 语句模板：INSERT ... VALUES (?, ...), (?, ...) [ON DUPLICATE KEY UPDATE ...]。
+ * 随执行计划按列布局缓存，各行数对应的 SQL 只拼接一次。
+ */
+public final class InsertTemplate {
+    private final String prefix;
+    private final String rowTuple;
+    private final String suffix;
+    private final int columnCount;
+    private final Map<Integer, String> sqlByRows = new ConcurrentHashMap<>();
+
+    private InsertTemplate(String prefix, String rowTuple, String suffix, int columnCount) {
+        this.prefix = prefix;
+        this.rowTuple = rowTuple;
+        this.suffix = suffix;
+        this.columnCount = columnCount;
+    }
+
+    public static InsertTemplate build(String tableName, List<ExecutionPlan.OutputField> fields,
+                                       String primaryKey, String conflictStrategy) {
+        boolean useUpsert = !primaryKey.isEmpty() && "UPDATE".equalsIgnoreCase(conflictStrategy);
+        boolean useIgnore = !primaryKey.isEmpty() && "IGNORE".equalsIgnoreCase(conflictStrategy);
+
+        StringBuilder head = new StringBuilder(useIgnore ? "INSERT IGNORE INTO `" : "INSERT INTO `")
+                .append(tableName).append("` (");
+        StringBuilder tuple = new StringBuilder("(");
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                head.append(", ");
+                tuple.append(", ");
+            }
+            head.append("`").append(fields.get(i).getName()).append("`");
+            tuple.append("?");
+        }
+        head.append(") VALUES ");
+        tuple.append(")");
+
+        String tail = useUpsert ? updateClause(fields, primaryKey) : "";
+        return new InsertTemplate(head.toString(), tuple.toString(), tail, fields.size());
+    }
+
+    /**
+     * " ON DUPLICATE KEY UPDATE ..." 子句，除主键外的列都取新值；没有可更新的列时返回空串。
+     */
+    public static String updateClause(List<ExecutionPlan.OutputField> fields, String primaryKey) {
+        List<String> updateParts = new ArrayList<>();
+        for (ExecutionPlan.OutputField field : fields) {
+            String col = field.getName();
+            if (col.equalsIgnoreCase(primaryKey)) continue;
+            // Use VALUES(col) to ensure update with current values
+            updateParts.add("`" + col + "` = VALUES(`" + col + "`)");
+        }
+        return updateParts.isEmpty() ? "" : " ON DUPLICATE KEY UPDATE " + String.join(", ", updateParts);
+    }
+
+    public String sql(int rows) {
+        return sqlByRows.computeIfAbsent(rows, n -> {
+            StringBuilder sql = new StringBuilder(prefix.length() + (rowTuple.length() + 2) * n + suffix.length());
+            sql.append(prefix);
+            for (int i = 0; i < n; i++) {
+                if (i > 0) sql.append(", ");
+                sql.append(rowTuple);
+            }
+            return sql.append(suffix).toString();
+        });
+    }
+
+    public int columnCount() {
+        return columnCount;
+    }
+
+    /**
+     * 语句中与行数无关的部分加上每行占位符的字节数，用于估算语句大小。
+     */
+    public int fixedBytes() {
+        return prefix.length() + suffix.length();
+    }
+
+    public int rowTupleBytes() {
+        return rowTuple.length() + 2;
+    }
+}
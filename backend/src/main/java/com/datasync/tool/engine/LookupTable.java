@@ -0,0 +1,478 @@
+package com.datasync.tool.engine;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 维表缓存：按关联键缓存维表的取值列，由引用同一维表的任务共享。
+ * 整数键使用基本类型的开放寻址索引，其余键按维表关联键列的排序规则规范化后的字符串索引，与 IN 查询的匹配一致；条目超过上限时按 LRU 淘汰，超过 TTL 后重新加载。
+ * 预加载模式先读入整张表（最多上限行），读完整表时未命中即视为不存在；其余情况下每个批次的未命中键
+ * 合并为 WHERE key IN (...) 查询，查不到的键也会缓存，避免反复查询。
+ */
+public final class LookupTable {
+    // 每条 IN 查询最多携带的键
+    private static final int IN_CHUNK = 1000;
+    // 维表中不存在的键
+    private static final Object[] ABSENT = new Object[0];
+
+    /**
+     * 从维表读取数据，由服务层按数据源实现。
+     */
+    public interface Loader {
+        /**
+         * 读取整张表的前 limit 行，返回是否已读完整张表。
+         */
+        boolean loadAll(int limit, RowSink sink) throws SQLException;
+
+        void loadKeys(List<Object> keys, RowSink sink) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface RowSink {
+        void accept(Object key, Object[] values);
+    }
+
+    private final RowSchema valueSchema;
+    private final boolean numericKey;
+    private final Collation keyCollation;
+    private final int maxEntries;
+    private final long ttlMs;
+    private final boolean preload;
+    private final Loader loader;
+    private final ReentrantLock preloadLock = new ReentrantLock();
+
+    // 条目按槽位存储，prev/next 组成 LRU 链表，head 为最近使用
+    private final LongIndex longIndex;
+    private final Map<Object, Integer> objectIndex;
+    private long[] longKeys;
+    private Object[] objectKeys;
+    private Object[][] values;
+    private long[] loadedAt;
+    private int[] prev;
+    private int[] next;
+    private int allocated;
+    private int size;
+    private int head = -1;
+    private int tail = -1;
+    private int free = -1;
+
+    private volatile long preloadedAt;
+    private volatile boolean complete;
+    private volatile long lastUsed = System.currentTimeMillis();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong preloadedRows = new AtomicLong();
+
+    public LookupTable(RowSchema valueSchema, boolean numericKey, Collation keyCollation, int maxEntries, long ttlMs,
+                       boolean preload, Loader loader) {
+        this.valueSchema = valueSchema;
+        this.numericKey = numericKey;
+        this.keyCollation = keyCollation;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMs = ttlMs;
+        this.preload = preload;
+        this.loader = loader;
+        this.longIndex = numericKey ? new LongIndex() : null;
+        this.objectIndex = numericKey ? null : new HashMap<>();
+        allocate(Math.min(this.maxEntries, 1024));
+    }
+
+    public RowSchema valueSchema() {
+        return valueSchema;
+    }
+
+    public long lastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * 按批次中的关联键查找取值列，返回与批次行数相同的各列；键为空或维表中不存在时取值为空。
+     */
+    public RowBatch.Column[] lookup(RowBatch.Column keys, int rows, Stats stats) throws SQLException {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        lastUsed = now;
+        ensurePreloaded(stats);
+
+        Object[][] found = new Object[rows][];
+        Object[] pending = null;
+        List<Object> missKeys = new ArrayList<>();
+        Set<Object> seen = new HashSet<>();
+        long hits = 0;
+        synchronized (this) {
+            for (int row = 0; row < rows; row++) {
+                if (keys.isNull(row)) continue;
+                int slot;
+                Object key = null;
+                if (numericKey) {
+                    long k;
+                    if (keys.kind() == RowSchema.ColumnKind.LONG) {
+                        k = keys.getLong(row);
+                    } else {
+                        Long l = toLongKey(keys.getObject(row));
+                        if (l == null) continue;
+                        k = l;
+                    }
+                    slot = longIndex.get(k);
+                    if (slot < 0 || !isFresh(slot, now)) key = k;
+                } else {
+                    key = objectKey(keys.getObject(row));
+                    Integer s = objectIndex.get(key);
+                    slot = s != null ? s : -1;
+                    if (slot >= 0 && isFresh(slot, now)) key = null;
+                }
+                if (key == null) {
+                    touch(slot);
+                    found[row] = values[slot];
+                    hits++;
+                } else if (complete) {
+                    // 整张表都在缓存中
+                    found[row] = ABSENT;
+                    hits++;
+                } else {
+                    if (pending == null) pending = new Object[rows];
+                    pending[row] = key;
+                    if (seen.add(key)) missKeys.add(key);
+                }
+            }
+        }
+
+        if (!missKeys.isEmpty()) {
+            Map<Object, Object[]> loaded = new HashMap<>();
+            RowSink sink = (key, v) -> {
+                Object k = numericKey ? toLongKey(key) : objectKey(key);
+                if (k != null) loaded.put(k, v);
+            };
+            for (int from = 0; from < missKeys.size(); from += IN_CHUNK) {
+                loader.loadKeys(missKeys.subList(from, Math.min(missKeys.size(), from + IN_CHUNK)), sink);
+                stats.queries.incrementAndGet();
+            }
+            synchronized (this) {
+                for (Object key : missKeys) {
+                    put(key, loaded.getOrDefault(key, ABSENT), now);
+                }
+            }
+            for (int row = 0; row < rows; row++) {
+                if (pending[row] != null) {
+                    found[row] = loaded.getOrDefault(pending[row], ABSENT);
+                }
+            }
+            stats.missKeys.addAndGet(missKeys.size());
+            stats.loadedKeys.addAndGet(loaded.size());
+        }
+
+        RowBatch.Column[] out = new RowBatch.Column[valueSchema.size()];
+        for (int i = 0; i < out.length; i++) {
+            RowBatch.Column column = RowBatch.Column.create(valueSchema.kind(i), rows);
+            for (int row = 0; row < rows; row++) {
+                Object[] v = found[row];
+                column.setValue(row, v == null || v == ABSENT ? null : v[i]);
+            }
+            out[i] = column;
+        }
+        stats.rows.addAndGet(rows);
+        stats.hits.addAndGet(hits);
+        stats.nanos.addAndGet(System.nanoTime() - start);
+        return out;
+    }
+
+    /**
+     * 预加载模式下首次使用或过期时重新读取整张表；已有数据时由一个线程刷新，其它线程继续使用旧数据。
+     */
+    private void ensurePreloaded(Stats stats) throws SQLException {
+        if (!preload || !preloadExpired()) return;
+        if (preloadedAt > 0) {
+            if (!preloadLock.tryLock()) return;
+        } else {
+            preloadLock.lock();
+        }
+        try {
+            if (!preloadExpired()) return;
+            List<Object> loadedKeys = new ArrayList<>();
+            List<Object[]> loadedValues = new ArrayList<>();
+            boolean all = loader.loadAll(maxEntries, (key, v) -> {
+                Object k = numericKey ? toLongKey(key) : key != null ? objectKey(key) : null;
+                if (k != null) {
+                    loadedKeys.add(k);
+                    loadedValues.add(v);
+                }
+            });
+            stats.queries.incrementAndGet();
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                clear();
+                for (int i = 0; i < loadedKeys.size(); i++) {
+                    put(loadedKeys.get(i), loadedValues.get(i), now);
+                }
+                complete = all;
+            }
+            preloadedRows.set(loadedKeys.size());
+            preloadedAt = now;
+        } finally {
+            preloadLock.unlock();
+        }
+    }
+
+    private boolean preloadExpired() {
+        return preloadedAt == 0 || (ttlMs > 0 && System.currentTimeMillis() - preloadedAt >= ttlMs);
+    }
+
+    private boolean isFresh(int slot, long now) {
+        // 完整预加载的表整体按 TTL 刷新
+        return complete || ttlMs <= 0 || now - loadedAt[slot] < ttlMs;
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("cacheSize", size);
+        m.put("maxEntries", maxEntries);
+        m.put("evictions", evictions.get());
+        m.put("preload", preload);
+        if (preload) {
+            m.put("preloadedRows", preloadedRows.get());
+            m.put("preloadComplete", complete);
+        }
+        return m;
+    }
+
+    // ---------------- 槽位与 LRU ----------------
+
+    private void put(Object key, Object[] v, long now) {
+        int slot = numericKey ? longIndex.get((Long) key) : objectIndex.getOrDefault(key, -1);
+        if (slot >= 0) {
+            values[slot] = v;
+            loadedAt[slot] = now;
+            touch(slot);
+            return;
+        }
+        if (size >= maxEntries) {
+            evict(tail);
+        }
+        if (free >= 0) {
+            slot = free;
+            free = next[slot];
+        } else {
+            if (allocated == values.length) {
+                allocate(Math.min(maxEntries, values.length * 2));
+            }
+            slot = allocated++;
+        }
+        if (numericKey) {
+            longKeys[slot] = (Long) key;
+            longIndex.put((Long) key, slot);
+        } else {
+            objectKeys[slot] = key;
+            objectIndex.put(key, slot);
+        }
+        values[slot] = v;
+        loadedAt[slot] = now;
+        linkFirst(slot);
+        size++;
+    }
+
+    private void evict(int slot) {
+        unlink(slot);
+        if (numericKey) {
+            longIndex.remove(longKeys[slot]);
+        } else {
+            objectIndex.remove(objectKeys[slot]);
+            objectKeys[slot] = null;
+        }
+        values[slot] = null;
+        next[slot] = free;
+        free = slot;
+        size--;
+        evictions.incrementAndGet();
+    }
+
+    private void clear() {
+        if (numericKey) {
+            longIndex.clear();
+        } else {
+            objectIndex.clear();
+        }
+        Arrays.fill(values, null);
+        Arrays.fill(objectKeys, null);
+        allocated = 0;
+        size = 0;
+        head = tail = free = -1;
+        complete = false;
+    }
+
+    private void allocate(int capacity) {
+        if (values != null && capacity <= values.length) return;
+        longKeys = values == null ? new long[capacity] : Arrays.copyOf(longKeys, capacity);
+        objectKeys = values == null ? new Object[capacity] : Arrays.copyOf(objectKeys, capacity);
+        loadedAt = values == null ? new long[capacity] : Arrays.copyOf(loadedAt, capacity);
+        prev = values == null ? new int[capacity] : Arrays.copyOf(prev, capacity);
+        next = values == null ? new int[capacity] : Arrays.copyOf(next, capacity);
+        values = values == null ? new Object[capacity][] : Arrays.copyOf(values, capacity);
+    }
+
+    private void touch(int slot) {
+        if (head != slot) {
+            unlink(slot);
+            linkFirst(slot);
+        }
+    }
+
+    private void linkFirst(int slot) {
+        prev[slot] = -1;
+        next[slot] = head;
+        if (head >= 0) prev[head] = slot;
+        head = slot;
+        if (tail < 0) tail = slot;
+    }
+
+    private void unlink(int slot) {
+        int p = prev[slot];
+        int n = next[slot];
+        if (p >= 0) next[p] = n; else head = n;
+        if (n >= 0) prev[n] = p; else tail = p;
+    }
+
+    /**
+     * 非整数键的索引值：维表中按排序规则相等的键（如 _ci 下的 'abc' 与 'ABC '）、数值相等的 DECIMAL（1 与 1.0）得到同一个值。
+     */
+    private String objectKey(Object key) {
+        if (key instanceof BigDecimal d) {
+            return d.stripTrailingZeros().toPlainString();
+        }
+        return keyCollation.key(key.toString());
+    }
+
+    private static Long toLongKey(Object key) {
+        if (key instanceof Long l) return l;
+        if (key instanceof Number n) {
+            if (n instanceof BigDecimal d) {
+                try {
+                    return d.longValueExact();
+                } catch (ArithmeticException e) {
+                    return null;
+                }
+            }
+            return n.longValue();
+        }
+        if (key != null) {
+            try {
+                return Long.parseLong(key.toString().trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 单次运行中一个维表节点的查找统计。
+     */
+    public static final class Stats {
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong missKeys = new AtomicLong();
+        private final AtomicLong loadedKeys = new AtomicLong();
+        private final AtomicLong queries = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            long h = hits.get();
+            long lookups = h + missKeys.get();
+            m.put("rows", rows.get());
+            m.put("hits", h);
+            m.put("missKeys", missKeys.get());
+            m.put("loadedKeys", loadedKeys.get());
+            m.put("queries", queries.get());
+            m.put("hitRate", lookups > 0 ? Math.round(h * 1000.0 / lookups) / 10.0 : 0);
+            m.put("lookupMs", nanos.get() / 1_000_000);
+            return m;
+        }
+    }
+
+    /**
+     * long 到槽位的开放寻址索引（线性探测，删除时回移后续条目），避免整数键装箱。
+     */
+    private static final class LongIndex {
+        private long[] keys = new long[16];
+        // 槽位 + 1，0 表示空
+        private int[] slots = new int[16];
+        private int size;
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+                int s = slots[i];
+                if (s == 0) return -1;
+                if (keys[i] == key) return s - 1;
+            }
+        }
+
+        void put(long key, int slot) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (slots[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (slots[i] == 0) size++;
+            keys[i] = key;
+            slots[i] = slot + 1;
+        }
+
+        void remove(long key) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (slots[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (slots[i] == 0) return;
+            // 把后续同一探测链上的条目前移，保持查找不断链
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (slots[j] == 0) break;
+                int home = hash(keys[j]) & mask;
+                boolean between = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+                if (!between) {
+                    keys[i] = keys[j];
+                    slots[i] = slots[j];
+                    i = j;
+                }
+            }
+            slots[i] = 0;
+            size--;
+        }
+
+        void clear() {
+            Arrays.fill(slots, 0);
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldSlots = slots;
+            keys = new long[capacity];
+            slots = new int[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldSlots[i] != 0) put(oldKeys[i], oldSlots[i] - 1);
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package com.datasync.tool.engine;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 按列存储的一批数据。数值列使用基本类型数组加空值位图，其余列使用 Object 数组，
+ * 映射节点只需重排列引用，不再为每一行创建 Map。
+ */
+public final class RowBatch {
+
+    private final RowSchema schema;
+    private final Column[] columns;
+    private final int capacity;
+    private int size;
+    private long estimatedBytes = -1;
+
+    public RowBatch(RowSchema schema, int capacity) {
+        this.schema = schema;
+        this.capacity = capacity;
+        this.columns = new Column[schema.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Column.create(schema.kind(i), capacity);
+        }
+    }
+
+    private RowBatch(RowSchema schema, Column[] columns, int capacity, int size) {
+        this.schema = schema;
+        this.columns = columns;
+        this.capacity = capacity;
+        this.size = size;
+    }
+
+    public RowSchema schema() {
+        return schema;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size >= capacity;
+    }
+
+    public int columnCount() {
+        return columns.length;
+    }
+
+    public Column column(int index) {
+        return columns[index];
+    }
+
+    public Object getObject(int column, int row) {
+        return columns[column].getObject(row);
+    }
+
+    /**
+     * 从结果集当前行读取一行，按列下标取值，不再按列名查找。
+     */
+    public void appendFrom(ResultSet rs) throws SQLException {
+        int row = size++;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].read(rs, i + 1, row);
+        }
+    }
+
+    /**
+     * 估算批次占用的内存字节数，用于管道队列按字节限流；批次写满后只计算一次。
+     */
+    public long estimatedBytes() {
+        if (estimatedBytes < 0) {
+            long total = 0;
+            for (Column column : columns) {
+                total += column.estimateBytes(size);
+            }
+            estimatedBytes = total;
+        }
+        return estimatedBytes;
+    }
+
+    /**
+     * 按下标选取并重命名列，新批次与原批次共享列数据，下标为 -1 的列全部为空值。
+     */
+    public RowBatch project(RowSchema projectedSchema, int[] indexes) {
+        Column[] projected = new Column[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            projected[i] = indexes[i] >= 0 ? columns[indexes[i]] : NullColumn.INSTANCE;
+        }
+        return new RowBatch(projectedSchema, projected, capacity, size);
+    }
+
+    /**
+     * 在末尾追加列（如计算列），新批次与原批次共享已有列数据。
+     */
+    RowBatch append(RowSchema extendedSchema, Column[] extra) {
+        Column[] extended = new Column[columns.length + extra.length];
+        System.arraycopy(columns, 0, extended, 0, columns.length);
+        System.arraycopy(extra, 0, extended, columns.length, extra.length);
+        return new RowBatch(extendedSchema, extended, capacity, size);
+    }
+
+    /**
+     * 按行下标选取行（可重排），复制为独立的新批次。
+     */
+    public RowBatch select(int[] rows) {
+        Column[] selected = new Column[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            selected[i] = columns[i].select(rows);
+        }
+        return new RowBatch(schema, selected, rows.length, rows.length);
+    }
+
+    public abstract static class Column {
+
+        static Column create(RowSchema.ColumnKind kind, int capacity) {
+            switch (kind) {
+                case LONG:
+                    return new LongColumn(capacity);
+                case DOUBLE:
+                    return new DoubleColumn(capacity);
+                case DECIMAL:
+                    return new DecimalColumn(capacity);
+                case BYTES:
+                    return new BytesColumn(capacity);
+                default:
+                    return new ObjectColumn(capacity);
+            }
+        }
+
+        public abstract boolean isNull(int row);
+
+        public abstract RowSchema.ColumnKind kind();
+
+        public long getLong(int row) {
+            throw new UnsupportedOperationException("Not a numeric column");
+        }
+
+        public double getDouble(int row) {
+            throw new UnsupportedOperationException("Not a numeric column");
+        }
+
+        public abstract Object getObject(int row);
+
+        abstract void read(ResultSet rs, int columnIndex, int row) throws SQLException;
+
+        /**
+         * 写入一个值，null 表示空值；用于填充计算列。
+         */
+        void setValue(int row, Object value) {
+            throw new UnsupportedOperationException("Read-only column");
+        }
+
+        abstract Column select(int[] rows);
+
+        long estimateBytes(int rows) {
+            return 8L * rows + (rows >>> 3);
+        }
+    }
+
+    /**
+     * 基本类型列，空值记录在位图中。
+     */
+    abstract static class PrimitiveColumn extends Column {
+        private final long[] nulls;
+
+        PrimitiveColumn(int capacity) {
+            this.nulls = new long[(capacity + 63) >>> 6];
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return (nulls[row >>> 6] & (1L << row)) != 0;
+        }
+
+        void setNull(int row) {
+            nulls[row >>> 6] |= 1L << row;
+        }
+    }
+
+    static final class LongColumn extends PrimitiveColumn {
+        private final long[] values;
+
+        LongColumn(int capacity) {
+            super(capacity);
+            this.values = new long[capacity];
+        }
+
+        @Override
+        public RowSchema.ColumnKind kind() {
+            return RowSchema.ColumnKind.LONG;
+        }
+
+        @Override
+        public long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        void read(ResultSet rs, int columnIndex, int row) throws SQLException {
+            long v = rs.getLong(columnIndex);
+            if (rs.wasNull()) {
+                setNull(row);
+            } else {
+                values[row] = v;
+            }
+        }
+
+        void set(int row, long value) {
+            values[row] = value;
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            if (value == null) {
+                setNull(row);
+            } else {
+                values[row] = ((Number) value).longValue();
+            }
+        }
+
+        @Override
+        Column select(int[] rows) {
+            LongColumn copy = new LongColumn(rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                if (isNull(rows[i])) {
+                    copy.setNull(i);
+                } else {
+                    copy.values[i] = values[rows[i]];
+                }
+            }
+            return copy;
+        }
+    }
+
+    static final class DoubleColumn extends PrimitiveColumn {
+        private final double[] values;
+
+        DoubleColumn(int capacity) {
+            super(capacity);
+            this.values = new double[capacity];
+        }
+
+        @Override
+        public RowSchema.ColumnKind kind() {
+            return RowSchema.ColumnKind.DOUBLE;
+        }
+
+        @Override
+        public long getLong(int row) {
+            return (long) values[row];
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        void read(ResultSet rs, int columnIndex, int row) throws SQLException {
+            double v = rs.getDouble(columnIndex);
+            if (rs.wasNull()) {
+                setNull(row);
+            } else {
+                values[row] = v;
+            }
+        }
+
+        void set(int row, double value) {
+            values[row] = value;
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            if (value == null) {
+                setNull(row);
+            } else {
+                values[row] = ((Number) value).doubleValue();
+            }
+        }
+
+        @Override
+        Column select(int[] rows) {
+            DoubleColumn copy = new DoubleColumn(rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                if (isNull(rows[i])) {
+                    copy.setNull(i);
+                } else {
+                    copy.values[i] = values[rows[i]];
+                }
+            }
+            return copy;
+        }
+    }
+
+    static class ObjectColumn extends Column {
+        final Object[] values;
+
+        ObjectColumn(int capacity) {
+            this.values = new Object[capacity];
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return values[row] == null;
+        }
+
+        @Override
+        public RowSchema.ColumnKind kind() {
+            return RowSchema.ColumnKind.OBJECT;
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return values[row];
+        }
+
+        @Override
+        void read(ResultSet rs, int columnIndex, int row) throws SQLException {
+            values[row] = rs.getObject(columnIndex);
+        }
+
+        @Override
+        void setValue(int row, Object value) {
+            values[row] = value;
+        }
+
+        ObjectColumn newColumn(int capacity) {
+            return new ObjectColumn(capacity);
+        }
+
+        @Override
+        Column select(int[] rows) {
+            ObjectColumn copy = newColumn(rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                copy.values[i] = values[rows[i]];
+            }
+            return copy;
+        }
+
+        @Override
+        long estimateBytes(int rows) {
+            long total = 8L * rows;
+            for (int i = 0; i < rows; i++) {
+                Object v = values[i];
+                if (v instanceof CharSequence) {
+                    total += 40 + 2L * ((CharSequence) v).length();
+                } else if (v instanceof byte[]) {
+                    total += 16 + ((byte[]) v).length;
+                } else if (v != null) {
+                    total += 32;
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * DECIMAL/NUMERIC 列，以 BigDecimal 保存，不经过 double。
+     */
+    static final class DecimalColumn extends ObjectColumn {
+        DecimalColumn(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public RowSchema.ColumnKind kind() {
+            return RowSchema.ColumnKind.DECIMAL;
+        }
+
+        @Override
+        void read(ResultSet rs, int columnIndex, int row) throws SQLException {
+            values[row] = rs.getBigDecimal(columnIndex);
+        }
+
+        @Override
+        ObjectColumn newColumn(int capacity) {
+            return new DecimalColumn(capacity);
+        }
+    }
+
+    static final class BytesColumn extends ObjectColumn {
+        BytesColumn(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public RowSchema.ColumnKind kind() {
+            return RowSchema.ColumnKind.BYTES;
+        }
+
+        @Override
+        void read(ResultSet rs, int columnIndex, int row) throws SQLException {
+            values[row] = rs.getBytes(columnIndex);
+        }
+
+        @Override
+        ObjectColumn newColumn(int capacity) {
+            return new BytesColumn(capacity);
+        }
+    }
+
+    static final class NullColumn extends Column {
+        static final NullColumn INSTANCE = new NullColumn();
+
+        @Override
+        public boolean isNull(int row) {
+            return true;
+        }
+
+        @Override
+        public RowSchema.ColumnKind kind() {
+            return RowSchema.ColumnKind.OBJECT;
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return null;
+        }
+
+        @Override
+        void read(ResultSet rs, int columnIndex, int row) {
+        }
+
+        @Override
+        Column select(int[] rows) {
+            return this;
+        }
+
+        @Override
+        long estimateBytes(int rows) {
+            return 0;
+        }
+    }
+}
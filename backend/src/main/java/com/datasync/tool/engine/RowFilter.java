@@ -0,0 +1,66 @@
+package com.datasync.tool.engine;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 编译后的过滤节点：对批次逐行求值，只保留条件为真的行，并统计过滤前后的行数。
+ */
+public final class RowFilter {
+
+    @FunctionalInterface
+    public interface Predicate {
+        boolean test(RowBatch batch, int row);
+    }
+
+    private final String nodeId;
+    private final String expression;
+    private final Predicate predicate;
+    private final AtomicLong rowsIn = new AtomicLong();
+    private final AtomicLong rowsOut = new AtomicLong();
+
+    RowFilter(String nodeId, String expression, Predicate predicate) {
+        this.nodeId = nodeId;
+        this.expression = expression;
+        this.predicate = predicate;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public boolean test(RowBatch batch, int row) {
+        return predicate.test(batch, row);
+    }
+
+    /**
+     * 返回只含保留行的批次；全部保留时返回原批次，不复制。
+     */
+    public RowBatch apply(RowBatch batch) {
+        int size = batch.size();
+        int[] kept = new int[size];
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if (predicate.test(batch, row)) {
+                kept[count++] = row;
+            }
+        }
+        rowsIn.addAndGet(size);
+        rowsOut.addAndGet(count);
+        if (count == size) {
+            return batch;
+        }
+        return batch.select(count == kept.length ? kept : Arrays.copyOf(kept, count));
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("expression", expression);
+        m.put("rowsIn", rowsIn.get());
+        m.put("rowsOut", rowsOut.get());
+        m.put("filteredRows", rowsIn.get() - rowsOut.get());
+        return m;
+    }
+}
@@ -0,0 +1,138 @@
+package com.datasync.tool.engine;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * RowBatch 的列定义：列名、存储方式以及源 JDBC 类型，在读取结果集时只解析一次。
+ */
+public final class RowSchema {
+
+    /**
+     * 列的存储方式：LONG/DOUBLE 为基本类型数组；DECIMAL 以 getBigDecimal 读取，BYTES 以 getBytes 读取，其余按 getObject 读取。
+     */
+    public enum ColumnKind {
+        LONG, DOUBLE, DECIMAL, BYTES, OBJECT
+    }
+
+    private final String[] names;
+    private final ColumnKind[] kinds;
+    private final int[] jdbcTypes;
+    private final Map<String, Integer> exactIndex = new HashMap<>();
+    private final Map<String, Integer> lowerCaseIndex = new HashMap<>();
+
+    public RowSchema(String[] names, ColumnKind[] kinds, int[] jdbcTypes) {
+        this.names = names;
+        this.kinds = kinds;
+        this.jdbcTypes = jdbcTypes;
+        // 同名列以最后一列为准，与原先 Map 覆盖语义保持一致
+        for (int i = 0; i < names.length; i++) {
+            exactIndex.put(names[i], i);
+            lowerCaseIndex.put(names[i].toLowerCase(Locale.ROOT), i);
+        }
+    }
+
+    public static RowSchema fromMetaData(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        String[] names = new String[columnCount];
+        ColumnKind[] kinds = new ColumnKind[columnCount];
+        int[] jdbcTypes = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            names[i] = metaData.getColumnLabel(i + 1);
+            jdbcTypes[i] = metaData.getColumnType(i + 1);
+            kinds[i] = kindOf(jdbcTypes[i], metaData.isSigned(i + 1));
+        }
+        return new RowSchema(names, kinds, jdbcTypes);
+    }
+
+    private static ColumnKind kindOf(int jdbcType, boolean signed) {
+        switch (jdbcType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return ColumnKind.LONG;
+            case Types.BIGINT:
+                // BIGINT UNSIGNED 可能超出 long 范围
+                return signed ? ColumnKind.LONG : ColumnKind.OBJECT;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+                return ColumnKind.DOUBLE;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return ColumnKind.DECIMAL;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return ColumnKind.BYTES;
+            default:
+                return ColumnKind.OBJECT;
+        }
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String name(int index) {
+        return names[index];
+    }
+
+    public ColumnKind kind(int index) {
+        return kinds[index];
+    }
+
+    public int jdbcType(int index) {
+        return jdbcTypes[index];
+    }
+
+    /**
+     * 按列名查找下标，先精确匹配再忽略大小写，找不到返回 -1。
+     */
+    public int indexOf(String name) {
+        if (name == null) return -1;
+        Integer idx = exactIndex.get(name);
+        if (idx == null) {
+            idx = lowerCaseIndex.get(name.toLowerCase(Locale.ROOT));
+        }
+        return idx == null ? -1 : idx;
+    }
+
+    /**
+     * 在末尾追加一列（如计算列），JDBC 类型按存储方式取对应的通用类型。
+     */
+    public RowSchema append(String name, ColumnKind kind) {
+        int n = names.length;
+        String[] newNames = Arrays.copyOf(names, n + 1);
+        ColumnKind[] k = Arrays.copyOf(kinds, n + 1);
+        int[] t = Arrays.copyOf(jdbcTypes, n + 1);
+        newNames[n] = name;
+        k[n] = kind;
+        t[n] = switch (kind) {
+            case LONG -> Types.BIGINT;
+            case DOUBLE -> Types.DOUBLE;
+            case DECIMAL -> Types.DECIMAL;
+            case BYTES -> Types.VARBINARY;
+            default -> Types.JAVA_OBJECT;
+        };
+        return new RowSchema(newNames, k, t);
+    }
+
+    /**
+     * 按下标选取列并重命名，得到投影后的 schema。
+     */
+    public RowSchema project(int[] indexes, String[] newNames) {
+        ColumnKind[] k = new ColumnKind[indexes.length];
+        int[] t = new int[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            k[i] = indexes[i] >= 0 ? kinds[indexes[i]] : ColumnKind.OBJECT;
+            t[i] = indexes[i] >= 0 ? jdbcTypes[indexes[i]] : Types.NULL;
+        }
+        return new RowSchema(newNames, k, t);
+    }
+}
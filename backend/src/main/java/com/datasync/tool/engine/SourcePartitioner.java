@@ -0,0 +1,121 @@
+package com.datasync.tool.engine;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按切分列把源查询拆成若干个键范围，供多个连接并行读取。
+ * 数值列按 min/max 等宽切分；其它类型用 NTILE 采样得到分界值（需要 MySQL 8）。
+ * 第一个分区包含切分列为 NULL 的行，最后一个分区不设上界，分区的并集等于原查询。
+ */
+@Slf4j
+public final class SourcePartitioner {
+
+    private SourcePartitioner() {
+    }
+
+    public static List<SourceQuery> split(Connection conn, SourceQuery base, String column, int partitions)
+            throws SQLException {
+        if (partitions <= 1) {
+            return List.of(base);
+        }
+        return split(base, column, computeBoundaries(conn, base, column, partitions));
+    }
+
+    /**
+     * 按已计算好的分界值拆分查询，分界值为空时返回原查询。断点续传时用保存的分界值重建相同的分区。
+     */
+    public static List<SourceQuery> split(SourceQuery base, String column, List<Object> boundaries) {
+        if (boundaries.isEmpty()) {
+            return List.of(base);
+        }
+        String col = SourceQuery.quote(column);
+        List<SourceQuery> result = new ArrayList<>();
+        result.add(base.where(col + " < ? OR " + col + " IS NULL", boundaries.get(0)));
+        for (int i = 1; i < boundaries.size(); i++) {
+            result.add(base.where(col + " >= ? AND " + col + " < ?", boundaries.get(i - 1), boundaries.get(i)));
+        }
+        result.add(base.where(col + " >= ?", boundaries.get(boundaries.size() - 1)));
+        return result;
+    }
+
+    /**
+     * 计算 partitions - 1 个分界值（每个分区的起始值），去重后按升序返回。
+     */
+    public static List<Object> computeBoundaries(Connection conn, SourceQuery base, String column, int partitions)
+            throws SQLException {
+        String col = SourceQuery.quote(column);
+        Object min;
+        Object max;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT MIN(" + col + "), MAX(" + col + ") FROM (" + base.toSql() + ") _b")) {
+            base.bind(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                min = rs.getObject(1);
+                max = rs.getObject(2);
+            }
+        }
+        if (min == null || max == null) {
+            return List.of();
+        }
+
+        List<Object> boundaries = new ArrayList<>();
+        if (isNumeric(min) && isNumeric(max)) {
+            long lo = ((Number) min).longValue();
+            long hi = (long) Math.ceil(((Number) max).doubleValue());
+            long span = hi - lo + 1;
+            for (int i = 1; i < partitions; i++) {
+                long b = lo + span / partitions * i + Math.min(i, span % partitions);
+                if (b > lo && b <= hi && (boundaries.isEmpty() || (long) boundaries.get(boundaries.size() - 1) < b)) {
+                    boundaries.add(b);
+                }
+            }
+            return boundaries;
+        }
+
+        // 非数值列：取每个分位块的最小值作为分界
+        String sql = "SELECT MIN(" + col + ") FROM (SELECT " + col + ", NTILE(" + partitions + ") OVER (ORDER BY "
+                + col + ") AS _tile FROM (" + base.toSql() + ") _b WHERE " + col + " IS NOT NULL) _t "
+                + "GROUP BY _tile ORDER BY _tile";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            base.bind(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                boolean first = true;
+                Object previous = null;
+                while (rs.next()) {
+                    Object value = rs.getObject(1);
+                    // 第一个分位块从最小值开始，不作为分界
+                    if (first) {
+                        first = false;
+                        previous = value;
+                        continue;
+                    }
+                    if (value != null && !value.equals(previous)) {
+                        boundaries.add(value);
+                        previous = value;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("Failed to sample partition boundaries on column {}, reading as a single partition: {}",
+                    column, e.getMessage());
+            return List.of();
+        }
+        return boundaries;
+    }
+
+    private static boolean isNumeric(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof BigInteger || value instanceof BigDecimal
+                || value instanceof Double || value instanceof Float;
+    }
+}
@@ -0,0 +1,99 @@
+package com.datasync.tool.engine;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 源端查询：在用户 SQL 外层包装过滤条件（分区范围、增量水位等），条件值以参数绑定。
+ * 没有条件和排序时原样执行用户 SQL。
+ */
+public final class SourceQuery {
+    private final String baseSql;
+    private final List<String> predicates;
+    private final List<Object> params;
+    private final String orderBy;
+
+    private SourceQuery(String baseSql, List<String> predicates, List<Object> params, String orderBy) {
+        this.baseSql = baseSql;
+        this.predicates = predicates;
+        this.params = params;
+        this.orderBy = orderBy;
+    }
+
+    public static SourceQuery of(String sql) {
+        String trimmed = sql.trim();
+        // 作为子查询包装时不能带结尾分号
+        while (trimmed.endsWith(";")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+        }
+        return new SourceQuery(trimmed, List.of(), List.of(), null);
+    }
+
+    /**
+     * 返回追加了一个条件的新查询，条件中的 ? 按顺序绑定 values。
+     */
+    public SourceQuery where(String predicate, Object... values) {
+        List<String> p = new ArrayList<>(predicates);
+        p.add(predicate);
+        List<Object> v = new ArrayList<>(params);
+        Collections.addAll(v, values);
+        return new SourceQuery(baseSql, List.copyOf(p), Collections.unmodifiableList(v), orderBy);
+    }
+
+    /**
+     * 返回按指定列升序读取的新查询。
+     */
+    public SourceQuery orderBy(String column) {
+        return new SourceQuery(baseSql, predicates, params, quote(column));
+    }
+
+    public static String quote(String column) {
+        return "`" + column.replace("`", "``") + "`";
+    }
+
+    public String getBaseSql() {
+        return baseSql;
+    }
+
+    public List<Object> getParams() {
+        return params;
+    }
+
+    public String toSql() {
+        if (predicates.isEmpty() && orderBy == null) {
+            return baseSql;
+        }
+        StringBuilder sql = new StringBuilder("SELECT * FROM (").append(baseSql).append(") _src");
+        for (int i = 0; i < predicates.size(); i++) {
+            sql.append(i == 0 ? " WHERE " : " AND ");
+            sql.append('(').append(predicates.get(i)).append(')');
+        }
+        if (orderBy != null) {
+            sql.append(" ORDER BY ").append(orderBy);
+        }
+        return sql.toString();
+    }
+
+    public void bind(PreparedStatement ps) throws SQLException {
+        bind(ps, 1);
+    }
+
+    /**
+     * 从 startIndex 开始绑定参数，返回下一个可用的参数下标。
+     */
+    public int bind(PreparedStatement ps, int startIndex) throws SQLException {
+        int idx = startIndex;
+        for (Object param : params) {
+            ps.setObject(idx++, param);
+        }
+        return idx;
+    }
+
+    @Override
+    public String toString() {
+        return params.isEmpty() ? toSql() : toSql() + " " + params;
+    }
+}
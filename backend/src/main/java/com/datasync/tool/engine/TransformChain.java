@@ -0,0 +1,208 @@
+package com.datasync.tool.engine;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次运行的转换阶段：计算列 → 维表关联 → 过滤 → 投影 → 引用输出字段的过滤，按源结果集的 schema 编译一次。
+ * 计算列整批求值、维表列整批查找后追加在源列之后，映射和输出字段按名称引用；每个表达式和维表单独统计耗时。
+ */
+public final class TransformChain {
+
+    private final List<ComputedColumn> computed;
+    private final List<LookupColumns> lookups;
+    private final List<RowFilter> preFilters;
+    private final ExecutionPlan.Projection projection;
+    private final List<RowFilter> postFilters;
+
+    private TransformChain(List<ComputedColumn> computed, List<LookupColumns> lookups, List<RowFilter> preFilters,
+                           ExecutionPlan.Projection projection, List<RowFilter> postFilters) {
+        this.computed = computed;
+        this.lookups = lookups;
+        this.preFilters = preFilters;
+        this.projection = projection;
+        this.postFilters = postFilters;
+    }
+
+    /**
+     * filters 为未下推的过滤节点：能在源列、计算列和维表列上求值的在投影前执行，其余按输出字段在投影后执行。
+     * tables 与 plan 的维表关联节点一一对应。
+     */
+    public static TransformChain compile(ExecutionPlan plan, RowSchema sourceSchema, List<ExecutionPlan.FilterStep> filters,
+                                         List<LookupTable> tables) {
+        RowSchema schema = sourceSchema;
+        List<ComputedColumn> computed = new ArrayList<>();
+        for (ExecutionPlan.ComputeStep step : plan.getComputeSteps()) {
+            for (ExecutionPlan.ComputedField field : step.getFields()) {
+                // 后面的表达式可以引用前面的计算列
+                Expression expression = field.getExpression();
+                RowSchema.ColumnKind kind = expression.kind(schema);
+                Expression.ColumnEvaluator evaluator = expression.compileColumn(schema);
+                schema = schema.append(field.getName(), kind);
+                computed.add(new ComputedColumn(step.getNodeId(), field.getName(), expression, kind, evaluator, schema));
+            }
+        }
+        List<LookupColumns> lookups = new ArrayList<>();
+        for (int i = 0; i < plan.getLookupSteps().size(); i++) {
+            ExecutionPlan.LookupStep step = plan.getLookupSteps().get(i);
+            LookupTable table = tables.get(i);
+            int keyIndex = schema.indexOf(step.getSourceKey());
+            if (keyIndex < 0) {
+                throw new RuntimeException("Lookup join column not found: " + step.getSourceKey());
+            }
+            for (int c = 0; c < step.getAliases().length; c++) {
+                schema = schema.append(step.getAliases()[c], table.valueSchema().kind(c));
+            }
+            lookups.add(new LookupColumns(step, table, keyIndex, schema));
+        }
+        ExecutionPlan.Projection projection = plan.resolveProjection(schema);
+        List<RowFilter> preFilters = new ArrayList<>();
+        List<RowFilter> postFilters = new ArrayList<>();
+        for (ExecutionPlan.FilterStep step : filters) {
+            Expression expression = step.getExpression();
+            if (expression.resolvableIn(schema)) {
+                preFilters.add(expression.compileFilter(step.getNodeId(), schema));
+            } else {
+                postFilters.add(expression.compileFilter(step.getNodeId(), projection.schema()));
+            }
+        }
+        return new TransformChain(computed, lookups, preFilters, projection, postFilters);
+    }
+
+    public RowBatch apply(RowBatch batch) {
+        return project(prepare(batch));
+    }
+
+    /**
+     * 追加计算列并执行投影前的过滤，源列的下标保持不变。
+     */
+    public RowBatch prepare(RowBatch batch) {
+        RowBatch out = batch;
+        for (ComputedColumn column : computed) {
+            long start = System.nanoTime();
+            RowBatch.Column values = column.evaluator.evaluate(out);
+            column.record(batch.size(), System.nanoTime() - start);
+            // 后面的计算列按下标读取前面的结果
+            out = out.append(column.schema, new RowBatch.Column[]{values});
+        }
+        for (LookupColumns lookup : lookups) {
+            try {
+                out = out.append(lookup.schema, lookup.table.lookup(out.column(lookup.keyIndex), out.size(), lookup.stats));
+            } catch (SQLException e) {
+                throw new RuntimeException("Lookup on " + lookup.step.getTableName() + " failed: " + e.getMessage(), e);
+            }
+        }
+        for (RowFilter filter : preFilters) {
+            out = filter.apply(out);
+        }
+        return out;
+    }
+
+    public RowBatch project(RowBatch prepared) {
+        RowBatch out = projection.apply(prepared);
+        for (RowFilter filter : postFilters) {
+            out = filter.apply(out);
+        }
+        return out;
+    }
+
+    public ExecutionPlan.Projection projection() {
+        return projection;
+    }
+
+    public RowSchema outputSchema() {
+        return projection.schema();
+    }
+
+    public ValueConverter[] converters() {
+        return projection.converters();
+    }
+
+    /**
+     * 是否有只能在投影后执行的过滤条件。
+     */
+    public boolean hasOutputFilters() {
+        return !postFilters.isEmpty();
+    }
+
+    public List<RowFilter> filters() {
+        List<RowFilter> all = new ArrayList<>(preFilters);
+        all.addAll(postFilters);
+        return all;
+    }
+
+    /**
+     * 各表达式计算节点的求值统计，按节点 ID 分组。
+     */
+    public Map<String, List<Map<String, Object>>> expressionMetrics() {
+        Map<String, List<Map<String, Object>>> m = new LinkedHashMap<>();
+        for (ComputedColumn column : computed) {
+            m.computeIfAbsent(column.nodeId, k -> new ArrayList<>()).add(column.toMap());
+        }
+        return m;
+    }
+
+    /**
+     * 各维表关联节点本次运行的查找统计及共享缓存的状态，按节点 ID 分组。
+     */
+    public Map<String, Map<String, Object>> lookupMetrics() {
+        Map<String, Map<String, Object>> m = new LinkedHashMap<>();
+        for (LookupColumns lookup : lookups) {
+            Map<String, Object> metrics = lookup.stats.toMap();
+            metrics.putAll(lookup.table.toMap());
+            m.put(lookup.step.getNodeId(), metrics);
+        }
+        return m;
+    }
+
+    private record LookupColumns(ExecutionPlan.LookupStep step, LookupTable table, int keyIndex, RowSchema schema,
+                                 LookupTable.Stats stats) {
+        LookupColumns(ExecutionPlan.LookupStep step, LookupTable table, int keyIndex, RowSchema schema) {
+            this(step, table, keyIndex, schema, new LookupTable.Stats());
+        }
+    }
+
+    private static final class ComputedColumn {
+        private final String nodeId;
+        private final String name;
+        private final Expression expression;
+        private final RowSchema.ColumnKind kind;
+        private final Expression.ColumnEvaluator evaluator;
+        // 追加本列之后的 schema
+        private final RowSchema schema;
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+
+        ComputedColumn(String nodeId, String name, Expression expression, RowSchema.ColumnKind kind,
+                       Expression.ColumnEvaluator evaluator, RowSchema schema) {
+            this.nodeId = nodeId;
+            this.name = name;
+            this.expression = expression;
+            this.kind = kind;
+            this.evaluator = evaluator;
+            this.schema = schema;
+        }
+
+        void record(int batchRows, long elapsedNanos) {
+            rows.addAndGet(batchRows);
+            nanos.addAndGet(elapsedNanos);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            long r = rows.get();
+            long n = nanos.get();
+            m.put("name", name);
+            m.put("expression", expression.getText());
+            m.put("kind", kind.name());
+            m.put("rows", r);
+            m.put("evalMs", n / 1_000_000);
+            m.put("nsPerRow", r > 0 ? n / r : 0);
+            return m;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.datasync.tool.engine;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * 输出列的类型转换器，每次运行按（源列存储类型, 目标字段类型）由 {@link ConverterRegistry} 选定，
+ * 写入时直接从列的基本类型取值绑定到 PreparedStatement。
+ */
+@FunctionalInterface
+public interface ValueConverter {
+
+    void bind(PreparedStatement ps, int parameterIndex, RowBatch.Column column, int row) throws SQLException;
+}
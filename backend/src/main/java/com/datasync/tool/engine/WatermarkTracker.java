@@ -0,0 +1,129 @@
+package com.datasync.tool.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 增量同步的水位跟踪：记录已提交批次中增量字段的最大值，并负责水位值与持久化字符串之间的转换。
+ */
+public final class WatermarkTracker {
+    private final String columnName;
+    private Comparable<Object> max;
+
+    public WatermarkTracker(String columnName) {
+        this.columnName = columnName;
+    }
+
+    /**
+     * 批次提交后调用，可被多个写入线程并发调用。
+     */
+    @SuppressWarnings("unchecked")
+    public void observe(RowBatch batch) {
+        int index = batch.schema().indexOf(columnName);
+        if (index < 0) {
+            throw new RuntimeException("Incremental column not found in source query: " + columnName);
+        }
+        RowBatch.Column column = batch.column(index);
+        Comparable<Object> batchMax = null;
+        if (column.kind() == RowSchema.ColumnKind.LONG) {
+            boolean found = false;
+            long m = Long.MIN_VALUE;
+            for (int row = 0; row < batch.size(); row++) {
+                if (!column.isNull(row) && column.getLong(row) > m) {
+                    m = column.getLong(row);
+                    found = true;
+                }
+            }
+            if (found) batchMax = (Comparable<Object>) (Object) m;
+        } else {
+            for (int row = 0; row < batch.size(); row++) {
+                Comparable<Object> v = (Comparable<Object>) normalize(column.getObject(row));
+                if (v != null && (batchMax == null || v.compareTo(batchMax) > 0)) {
+                    batchMax = v;
+                }
+            }
+        }
+        if (batchMax != null) {
+            synchronized (this) {
+                if (max == null || batchMax.compareTo(max) > 0) {
+                    max = batchMax;
+                }
+            }
+        }
+    }
+
+    public synchronized Object max() {
+        return max;
+    }
+
+    /**
+     * 统一 JDBC 返回的值类型，便于比较和持久化。
+     */
+    static Object normalize(Object value) {
+        if (value == null) return null;
+        if (value instanceof Long || value instanceof BigDecimal || value instanceof LocalDateTime
+                || value instanceof LocalDate || value instanceof String) {
+            return value;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return BigDecimal.valueOf(((Number) value).doubleValue());
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime();
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        throw new RuntimeException("Unsupported incremental column type: " + value.getClass().getSimpleName());
+    }
+
+    public static String typeOf(Object value) {
+        if (value instanceof Long) return "LONG";
+        if (value instanceof BigDecimal) return "DECIMAL";
+        if (value instanceof LocalDateTime) return "DATETIME";
+        if (value instanceof LocalDate) return "DATE";
+        return "STRING";
+    }
+
+    public static Object parse(String type, String value) {
+        if (value == null) return null;
+        switch (type) {
+            case "LONG":
+                return Long.parseLong(value);
+            case "DECIMAL":
+                return new BigDecimal(value);
+            case "DATETIME":
+                return LocalDateTime.parse(value);
+            case "DATE":
+                return LocalDate.parse(value);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * 回退重叠窗口以覆盖迟到的数据：数值字段减去 overlap，时间字段减去 overlap 秒，字符串字段不回退。
+     */
+    public static Object applyLookback(Object value, long overlap) {
+        if (overlap <= 0) return value;
+        if (value instanceof Long) {
+            return (Long) value - overlap;
+        } else if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).subtract(BigDecimal.valueOf(overlap));
+        } else if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).minusSeconds(overlap);
+        } else if (value instanceof LocalDate) {
+            return ((LocalDate) value).minusDays((overlap + 86399) / 86400);
+        }
+        return value;
+    }
+}
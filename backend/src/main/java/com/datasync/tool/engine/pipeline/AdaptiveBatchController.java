@@ -0,0 +1,174 @@
+package com.datasync.tool.engine.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * 按写入反馈调整批次大小和并发写入数（AIMD）：每积累一个观察窗口的批次评估一次，
+ * 出现锁等待超时或死锁时批次减半、并发减一；平均耗时超过目标时批次按比例缩小；
+ * 耗时明显低于目标且没有锁冲突时批次按固定步长增大，批次到达上限后再增加并发。
+ * 所有调整都限制在用户设置的上下限内，并保留最近的决策记录写入 nodeDetails。
+ */
+@Slf4j
+public class AdaptiveBatchController {
+    private static final int MIN_WINDOW = 4;
+    private static final int MAX_DECISIONS = 50;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int minWriters;
+    private final int maxWriters;
+    private final long targetLatencyNanos;
+    private final int increaseStep;
+    private final long startNanos = System.nanoTime();
+
+    private volatile int batchSize;
+    private volatile IntConsumer writersListener;
+
+    // 以下字段只在持有该对象锁时访问
+    private int writers;
+    private int windowBatches;
+    private long windowRows;
+    private long windowWriteNanos;
+    private long windowCommitNanos;
+    private int windowLockConflicts;
+    private long decisionCount;
+    private final Deque<Map<String, Object>> decisions = new ArrayDeque<>();
+
+    public AdaptiveBatchController(int initialBatchSize, int minBatchSize, int maxBatchSize,
+                                   int initialWriters, int minWriters, int maxWriters, long targetLatencyMs) {
+        this.minBatchSize = Math.max(1, minBatchSize);
+        this.maxBatchSize = Math.max(this.minBatchSize, maxBatchSize);
+        this.minWriters = Math.max(1, minWriters);
+        this.maxWriters = Math.max(this.minWriters, maxWriters);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, targetLatencyMs));
+        this.batchSize = clamp(initialBatchSize, this.minBatchSize, this.maxBatchSize);
+        this.writers = clamp(initialWriters, this.minWriters, this.maxWriters);
+        this.increaseStep = Math.max(1, (this.maxBatchSize - this.minBatchSize) / 10);
+    }
+
+    /**
+     * 读取线程创建新批次时取当前批次大小。
+     */
+    public int batchSize() {
+        return batchSize;
+    }
+
+    public synchronized int writers() {
+        return writers;
+    }
+
+    /**
+     * 并发写入数变化时回调，注册时立即以当前值回调一次。
+     */
+    public void onWritersChanged(IntConsumer listener) {
+        this.writersListener = listener;
+        listener.accept(writers());
+    }
+
+    /**
+     * 写入线程在批次提交后调用：writeNanos 为写入语句耗时，commitNanos 为提交耗时，
+     * lockConflicts 为写入该批次时因锁等待超时或死锁重试的次数。
+     */
+    public void observe(int rows, long writeNanos, long commitNanos, int lockConflicts) {
+        int changedWriters = -1;
+        synchronized (this) {
+            windowBatches++;
+            windowRows += rows;
+            windowWriteNanos += writeNanos;
+            windowCommitNanos += commitNanos;
+            windowLockConflicts += lockConflicts;
+            // 窗口至少覆盖每个写入线程的一个批次，避免单个慢批次引起抖动
+            if (windowBatches < Math.max(MIN_WINDOW, writers)) return;
+
+            long avgLatency = (windowWriteNanos + windowCommitNanos) / windowBatches;
+            int newBatchSize = batchSize;
+            int newWriters = writers;
+            String reason;
+            if (windowLockConflicts > 0) {
+                newBatchSize = batchSize / 2;
+                newWriters = writers - 1;
+                reason = "LOCK_CONFLICT";
+            } else if (avgLatency > targetLatencyNanos * 3 / 2) {
+                newBatchSize = (int) (batchSize * 0.7);
+                reason = "SLOW";
+            } else if (avgLatency < targetLatencyNanos / 2) {
+                if (batchSize < maxBatchSize) {
+                    newBatchSize = batchSize + increaseStep;
+                } else {
+                    newWriters = writers + 1;
+                }
+                reason = "HEADROOM";
+            } else {
+                reason = "STEADY";
+            }
+            newBatchSize = clamp(newBatchSize, minBatchSize, maxBatchSize);
+            newWriters = clamp(newWriters, minWriters, maxWriters);
+
+            if (newBatchSize != batchSize || newWriters != writers) {
+                record(reason, avgLatency, newBatchSize, newWriters);
+                batchSize = newBatchSize;
+                if (newWriters != writers) {
+                    writers = newWriters;
+                    changedWriters = newWriters;
+                }
+            }
+            resetWindow();
+        }
+        IntConsumer listener = writersListener;
+        if (changedWriters > 0 && listener != null) {
+            listener.accept(changedWriters);
+        }
+    }
+
+    private void record(String reason, long avgLatencyNanos, int newBatchSize, int newWriters) {
+        Map<String, Object> d = new LinkedHashMap<>();
+        d.put("atMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        d.put("reason", reason);
+        d.put("avgBatchMs", TimeUnit.NANOSECONDS.toMillis(avgLatencyNanos));
+        d.put("avgCommitMs", TimeUnit.NANOSECONDS.toMillis(windowCommitNanos / windowBatches));
+        d.put("avgRows", windowRows / windowBatches);
+        d.put("lockConflicts", windowLockConflicts);
+        d.put("batchSize", batchSize + " -> " + newBatchSize);
+        d.put("writers", writers + " -> " + newWriters);
+        decisionCount++;
+        decisions.addLast(d);
+        if (decisions.size() > MAX_DECISIONS) {
+            decisions.removeFirst();
+        }
+        log.debug("Adaptive batch decision: {}", d);
+    }
+
+    private void resetWindow() {
+        windowBatches = 0;
+        windowRows = 0;
+        windowWriteNanos = 0;
+        windowCommitNanos = 0;
+        windowLockConflicts = 0;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("batchSize", batchSize);
+        m.put("writers", writers);
+        m.put("batchSizeRange", minBatchSize + "-" + maxBatchSize);
+        m.put("writersRange", minWriters + "-" + maxWriters);
+        m.put("targetBatchMs", TimeUnit.NANOSECONDS.toMillis(targetLatencyNanos));
+        m.put("decisionCount", decisionCount);
+        List<Map<String, Object>> recent = new ArrayList<>(decisions);
+        m.put("decisions", recent);
+        return m;
+    }
+}
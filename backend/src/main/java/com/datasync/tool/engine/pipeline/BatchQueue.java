@@ -0,0 +1,260 @@
+package com.datasync.tool.engine.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * 同时按行数和字节数限制容量的阻塞队列，并记录生产者/消费者的阻塞时间。
+ * 队列为空时总是允许放入一个批次，避免单个大批次永远无法入队。
+ */
+public class BatchQueue {
+    private final String name;
+    private final long maxRows;
+    private final long maxBytes;
+
+    private final ArrayDeque<PipelineBatch> items = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+
+    private long rows;
+    private long bytes;
+    private boolean closed;
+    private boolean aborted;
+    // 状态变化（放入、关闭、中止）后在锁外回调，供调度器唤醒工作线程
+    private volatile Runnable listener;
+
+    // 统计
+    private long putCount;
+    private long putWaitNanos;
+    private long takeWaitNanos;
+    private long peakRows;
+    private long peakBytes;
+
+    public BatchQueue(String name, long maxRows, long maxBytes) {
+        this.name = name;
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 放入批次，队列满时阻塞；队列已中止时返回 false。
+     */
+    public boolean put(PipelineBatch batch) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+            while (!aborted && !items.isEmpty()
+                    && (rows + batch.getRows() > maxRows || bytes + batch.getBytes() > maxBytes)) {
+                if (waitStart == 0) waitStart = System.nanoTime();
+                notFull.await();
+            }
+            if (waitStart != 0) putWaitNanos += System.nanoTime() - waitStart;
+            if (aborted) return false;
+
+            items.addLast(batch);
+            rows += batch.getRows();
+            bytes += batch.getBytes();
+            putCount++;
+            peakRows = Math.max(peakRows, rows);
+            peakBytes = Math.max(peakBytes, bytes);
+            batch.markEnqueued();
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        fireListener();
+        return true;
+    }
+
+    /**
+     * 取出批次，队列为空时阻塞；队列关闭且取完或已中止时返回 null。
+     */
+    public PipelineBatch take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long waitStart = 0;
+            while (!aborted && !closed && items.isEmpty()) {
+                if (waitStart == 0) waitStart = System.nanoTime();
+                notEmpty.await();
+            }
+            if (waitStart != 0) takeWaitNanos += System.nanoTime() - waitStart;
+            if (aborted || items.isEmpty()) return null;
+
+            PipelineBatch batch = items.pollFirst();
+            rows -= batch.getRows();
+            bytes -= batch.getBytes();
+            notFull.signalAll();
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 非阻塞取出，队列为空或已中止时返回 null，由调度器的工作线程使用。
+     */
+    public PipelineBatch poll() {
+        lock.lock();
+        try {
+            if (aborted || items.isEmpty()) return null;
+            PipelineBatch batch = items.pollFirst();
+            rows -= batch.getRows();
+            bytes -= batch.getBytes();
+            notFull.signalAll();
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 非阻塞取出第一个满足条件的批次，跳过的批次保持原有顺序；没有可取的批次时返回 null。
+     */
+    public PipelineBatch poll(Predicate<PipelineBatch> eligible) {
+        lock.lock();
+        try {
+            if (aborted) return null;
+            Iterator<PipelineBatch> it = items.iterator();
+            while (it.hasNext()) {
+                PipelineBatch batch = it.next();
+                if (eligible.test(batch)) {
+                    it.remove();
+                    rows -= batch.getRows();
+                    bytes -= batch.getBytes();
+                    notFull.signalAll();
+                    return batch;
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean hasItems() {
+        lock.lock();
+        try {
+            return !aborted && !items.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean hasItems(Predicate<PipelineBatch> eligible) {
+        lock.lock();
+        try {
+            if (aborted) return false;
+            for (PipelineBatch batch : items) {
+                if (eligible.test(batch)) return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return items.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 已关闭且取空，或已中止。
+     */
+    public boolean isFinished() {
+        lock.lock();
+        try {
+            return aborted || (closed && items.isEmpty());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    private void fireListener() {
+        Runnable l = listener;
+        if (l != null) l.run();
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        fireListener();
+    }
+
+    /**
+     * 中止队列：丢弃未处理的批次并唤醒所有等待线程。
+     */
+    public void abort() {
+        lock.lock();
+        try {
+            aborted = true;
+            items.clear();
+            rows = 0;
+            bytes = 0;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        fireListener();
+    }
+
+    public long putWaitMillis() {
+        lock.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(putWaitNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long takeWaitMillis() {
+        lock.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(takeWaitNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> metrics() {
+        lock.lock();
+        try {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("queue", name);
+            m.put("maxRows", maxRows);
+            m.put("maxBytes", maxBytes);
+            m.put("depthBatches", items.size());
+            m.put("depthRows", rows);
+            m.put("depthBytes", bytes);
+            m.put("peakRows", peakRows);
+            m.put("peakBytes", peakBytes);
+            m.put("batches", putCount);
+            m.put("producerStallMs", TimeUnit.NANOSECONDS.toMillis(putWaitNanos));
+            m.put("consumerStallMs", TimeUnit.NANOSECONDS.toMillis(takeWaitNanos));
+            return m;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.datasync.tool.engine.pipeline;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 所有运行中任务共享的写入调度器。每个管道注册一个 {@link Lane}，固定数量的工作线程按加权公平队列
+ * 从各 Lane 的写入队列取批次：按写入行数/权重推进虚拟时间，总是调度虚拟时间最小的 Lane，
+ * 因此新启动的小任务不会排在大任务积压的批次之后。同时限制单任务和单个目标数据源的并发写入数。
+ * 按主键分片的批次在同一 Lane 内同一分片同时只派发一个，并按入队顺序派发。
+ */
+@Slf4j
+@Component
+public class BatchScheduler {
+
+    public interface BatchHandler {
+        void handle(PipelineBatch batch);
+    }
+
+    @Value("${datasync.scheduler.worker-threads:8}")
+    private int workerThreads;
+
+    @Value("${datasync.scheduler.max-writers-per-datasource:6}")
+    private int maxWritersPerDataSource;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final List<Lane> lanes = new ArrayList<>();
+    private final Map<Long, Integer> dataSourceInFlight = new HashMap<>();
+    private double systemVirtualTime;
+
+    // 最近一次运行结束后的统计，按任务 id 保留，供监控接口查询
+    private final Map<Long, Map<String, Object>> finishedStats = new ConcurrentHashMap<>();
+
+    private ExecutorService workers;
+
+    @PostConstruct
+    public void init() {
+        // 写入以阻塞的 JDBC 调用为主，工作线程使用虚拟线程
+        workers = Executors.newFixedThreadPool(workerThreads, Thread.ofVirtual().name("sync-writer-", 1).factory());
+        for (int i = 0; i < workerThreads; i++) {
+            workers.submit(this::workerLoop);
+        }
+        log.info("Batch scheduler started with {} workers, {} writers per datasource",
+                workerThreads, maxWritersPerDataSource);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * 注册一个写入队列。priority 作为公平队列的权重，maxConcurrency 为该任务同时写入的批次上限。
+     */
+    public Lane register(Long taskId, String taskName, int priority, int maxConcurrency, Long targetDataSourceId,
+                         BatchQueue queue, BatchHandler handler) {
+        Lane lane = new Lane(taskId, taskName, Math.max(1, priority), Math.max(1, maxConcurrency),
+                targetDataSourceId, queue, handler);
+        lock.lock();
+        try {
+            lane.virtualTime = systemVirtualTime;
+            lanes.add(lane);
+        } finally {
+            lock.unlock();
+        }
+        queue.setListener(() -> onQueueChanged(lane));
+        onQueueChanged(lane);
+        return lane;
+    }
+
+    private void onQueueChanged(Lane lane) {
+        lock.lock();
+        try {
+            checkCompletion(lane);
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void workerLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Lane lane;
+            PipelineBatch batch;
+            lock.lock();
+            try {
+                Lane next;
+                while ((next = pickLane()) == null) {
+                    workAvailable.await();
+                }
+                lane = next;
+                batch = lane.queue.poll(lane::isEligible);
+                if (batch == null) continue;
+                dispatch(lane, batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                lane.handler.handle(batch);
+            } catch (Throwable e) {
+                log.error("Unexpected error in batch handler for task {}", lane.taskId, e);
+            } finally {
+                lock.lock();
+                try {
+                    lane.inFlight--;
+                    if (batch.getShard() >= 0) {
+                        lane.activeShards.remove(batch.getShard());
+                    }
+                    dataSourceInFlight.merge(lane.targetDataSourceId, -1, Integer::sum);
+                    checkCompletion(lane);
+                    workAvailable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * 在有待写批次且未超出配额的 Lane 中选择虚拟时间最小的一个。
+     */
+    private Lane pickLane() {
+        Lane best = null;
+        double bestTime = 0;
+        for (Lane lane : lanes) {
+            if (lane.inFlight >= lane.maxConcurrency) continue;
+            if (dataSourceInFlight.getOrDefault(lane.targetDataSourceId, 0) >= maxWritersPerDataSource) continue;
+            if (!lane.queue.hasItems(lane::isEligible)) continue;
+            // 空闲过的 Lane 不累积"欠账"，从当前系统虚拟时间开始计算
+            double start = Math.max(lane.virtualTime, systemVirtualTime);
+            if (best == null || start < bestTime) {
+                best = lane;
+                bestTime = start;
+            }
+        }
+        return best;
+    }
+
+    private void dispatch(Lane lane, PipelineBatch batch) {
+        double start = Math.max(lane.virtualTime, systemVirtualTime);
+        systemVirtualTime = start;
+        lane.virtualTime = start + (double) Math.max(1, batch.getRows()) / lane.weight;
+        lane.inFlight++;
+        if (batch.getShard() >= 0) {
+            lane.activeShards.add(batch.getShard());
+        }
+        dataSourceInFlight.merge(lane.targetDataSourceId, 1, Integer::sum);
+
+        long waitNanos = System.nanoTime() - batch.getEnqueuedNanos();
+        lane.dispatched++;
+        lane.waitNanos += waitNanos;
+        lane.maxWaitNanos = Math.max(lane.maxWaitNanos, waitNanos);
+    }
+
+    private void checkCompletion(Lane lane) {
+        if (lane.inFlight == 0 && lane.queue.isFinished() && !lane.done.isDone()) {
+            lanes.remove(lane);
+            finishedStats.put(lane.taskId, lane.stats());
+            lane.done.complete(null);
+        }
+    }
+
+    /**
+     * 各任务的排队等待统计：运行中的任务取实时值，其余任务取最近一次运行的值。
+     */
+    public Map<Long, Map<String, Object>> getTaskStats() {
+        Map<Long, Map<String, Object>> result = new HashMap<>(finishedStats);
+        lock.lock();
+        try {
+            for (Lane lane : lanes) {
+                result.put(lane.taskId, lane.stats());
+            }
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            m.put("workerThreads", workerThreads);
+            m.put("maxWritersPerDataSource", maxWritersPerDataSource);
+            m.put("activeLanes", lanes.size());
+            m.put("dataSourceInFlight", new HashMap<>(dataSourceInFlight));
+            List<Map<String, Object>> laneStats = new ArrayList<>();
+            for (Lane lane : lanes) {
+                laneStats.add(lane.stats());
+            }
+            m.put("lanes", laneStats);
+        } finally {
+            lock.unlock();
+        }
+        return m;
+    }
+
+    @Getter
+    public class Lane {
+        private final Long taskId;
+        private final String taskName;
+        private final int weight;
+        private final Long targetDataSourceId;
+        private final BatchQueue queue;
+        private final BatchHandler handler;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        // 以下字段由调度器的锁保护
+        private int maxConcurrency;
+        private int inFlight;
+        private double virtualTime;
+        private long dispatched;
+        private long waitNanos;
+        private long maxWaitNanos;
+        // 正在写入的主键分片
+        private final Set<Integer> activeShards = new HashSet<>();
+
+        Lane(Long taskId, String taskName, int weight, int maxConcurrency, Long targetDataSourceId,
+             BatchQueue queue, BatchHandler handler) {
+            this.taskId = taskId;
+            this.taskName = taskName;
+            this.weight = weight;
+            this.maxConcurrency = maxConcurrency;
+            this.targetDataSourceId = targetDataSourceId;
+            this.queue = queue;
+            this.handler = handler;
+        }
+
+        /**
+         * 运行中调整该任务的并发写入上限，调小时已派发的批次照常完成。
+         */
+        public void setMaxConcurrency(int maxConcurrency) {
+            lock.lock();
+            try {
+                this.maxConcurrency = Math.max(1, maxConcurrency);
+                workAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 未分片的批次总是可派发；分片批次只在该分片没有正在写入的批次时可派发。调用方持有调度器的锁。
+         */
+        boolean isEligible(PipelineBatch batch) {
+            return batch.getShard() < 0 || !activeShards.contains(batch.getShard());
+        }
+
+        /**
+         * 等待队列关闭（或中止）且所有已派发的批次处理完毕。
+         */
+        public void awaitCompletion() throws InterruptedException {
+            try {
+                done.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        public Map<String, Object> snapshot() {
+            lock.lock();
+            try {
+                return stats();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("taskId", taskId);
+            m.put("taskName", taskName);
+            m.put("weight", weight);
+            m.put("maxConcurrency", maxConcurrency);
+            m.put("targetDataSourceId", targetDataSourceId);
+            m.put("inFlight", inFlight);
+            m.put("queuedBatches", queue.size());
+            m.put("dispatchedBatches", dispatched);
+            m.put("queueWaitMs", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            m.put("avgQueueWaitMs", dispatched == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos / dispatched));
+            m.put("maxQueueWaitMs", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos));
+            return m;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.datasync.tool.engine.pipeline;
+
+import com.datasync.tool.engine.Collation;
+import com.datasync.tool.engine.RowBatch;
+import com.datasync.tool.engine.RowSchema;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按目标主键的哈希把输出批次拆成固定数量的分片，分片内按主键排序。
+ * 调度器保证同一分片同时只有一个写入者、按入队顺序写入，因此同一主键总是串行写入，
+ * 不同写入者之间没有重叠的主键，语句内按主键升序加锁，避免 upsert 之间的死锁。
+ */
+public final class KeyRouter {
+    private final int keyIndex;
+    private final int shards;
+
+    public KeyRouter(int keyIndex, int shards) {
+        this.keyIndex = keyIndex;
+        this.shards = Math.max(1, shards);
+    }
+
+    public int shards() {
+        return shards;
+    }
+
+    public List<PipelineBatch> split(PipelineBatch batch) {
+        RowBatch output = batch.getOutput();
+        int size = output.size();
+        if (size == 0) {
+            return List.of(batch);
+        }
+        RowBatch.Column key = output.column(keyIndex);
+
+        int[] counts = new int[shards];
+        int[] shardOf = new int[size];
+        for (int row = 0; row < size; row++) {
+            int shard = shardOf(key, row);
+            shardOf[row] = shard;
+            counts[shard]++;
+        }
+        int[][] rowsByShard = new int[shards][];
+        for (int s = 0; s < shards; s++) {
+            rowsByShard[s] = new int[counts[s]];
+            counts[s] = 0;
+        }
+        for (int row = 0; row < size; row++) {
+            int s = shardOf[row];
+            rowsByShard[s][counts[s]++] = row;
+        }
+
+        List<int[]> nonEmpty = new ArrayList<>();
+        List<Integer> shardIds = new ArrayList<>();
+        for (int s = 0; s < shards; s++) {
+            if (rowsByShard[s].length > 0) {
+                nonEmpty.add(sortByKey(key, rowsByShard[s]));
+                shardIds.add(s);
+            }
+        }
+        AtomicInteger pending = new AtomicInteger(nonEmpty.size());
+        List<PipelineBatch> parts = new ArrayList<>(nonEmpty.size());
+        for (int i = 0; i < nonEmpty.size(); i++) {
+            parts.add(new PipelineBatch(batch, output.select(nonEmpty.get(i)), shardIds.get(i), pending));
+        }
+        return parts;
+    }
+
+    private int shardOf(RowBatch.Column key, int row) {
+        if (key.isNull(row)) {
+            return 0;
+        }
+        long h = key.kind() == RowSchema.ColumnKind.LONG ? key.getLong(row) : normalizedHash(key.getObject(row));
+        // 混合高低位，连续主键也能均匀分布
+        h *= 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(h ^ (h >>> 32), (long) shards);
+    }
+
+    private static long normalizedHash(Object value) {
+        // 整数类型统一按 long 取哈希，同一主键无论 JDBC 返回哪种类型都落到同一分片
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Long l) {
+            return l;
+        }
+        // 目标端按比较规则判断主键是否相同：_ci 下 'abc'、'ABC'、'abc ' 是同一主键，DECIMAL 的 1 与 1.0 也是，
+        // 按规范化后的值取哈希，保证它们落到同一分片、不会被不同写入者并发写入
+        if (value instanceof String s) {
+            return Collation.CASE_INSENSITIVE.key(s).hashCode();
+        }
+        if (value instanceof BigDecimal d) {
+            return d.stripTrailingZeros().hashCode();
+        }
+        if (value instanceof byte[] bytes) {
+            return Arrays.hashCode(bytes);
+        }
+        return value.hashCode();
+    }
+
+    private static int[] sortByKey(RowBatch.Column key, int[] rows) {
+        Integer[] boxed = new Integer[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            boxed[i] = rows[i];
+        }
+        // 空值排在最前；Arrays.sort 对对象稳定，同一主键的多行保持原有顺序
+        if (key.kind() == RowSchema.ColumnKind.LONG) {
+            Arrays.sort(boxed, Comparator.comparing((Integer r) -> !key.isNull(r))
+                    .thenComparingLong(r -> key.isNull(r) ? 0 : key.getLong(r)));
+        } else {
+            Arrays.sort(boxed, (a, b) -> compareKeys(key.getObject(a), key.getObject(b)));
+        }
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = boxed[i];
+        }
+        return rows;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareKeys(Object x, Object y) {
+        if (x == null || y == null) {
+            return x == null ? (y == null ? 0 : -1) : 1;
+        }
+        // 与目标端索引的顺序一致，同一主键的不同写法相邻
+        if (x instanceof String a && y instanceof String b) {
+            return Collation.CASE_INSENSITIVE.key(a).compareTo(Collation.CASE_INSENSITIVE.key(b));
+        }
+        if (x instanceof Comparable && x.getClass() == y.getClass()) {
+            return ((Comparable) x).compareTo(y);
+        }
+        return x.toString().compareTo(y.toString());
+    }
+}
@@ -0,0 +1,60 @@
+package com.datasync.tool.engine.pipeline;
+
+import com.datasync.tool.engine.RowBatch;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 在管道各阶段之间传递的批次：保留源批次（用于删除源数据等）和转换后的输出批次。
+ * 按主键分片写入时，一个读取批次被拆成若干分片批次，它们共享同一个源批次。
+ */
+@Getter
+public class PipelineBatch {
+    private final int sequence;
+    private final RowBatch source;
+    private final int rows;
+    private final long bytes;
+    // 主键分片编号，-1 表示未分片
+    private final int shard;
+    // 同一读取批次中尚未提交的分片数，未分片时为 null
+    private final AtomicInteger pendingParts;
+
+    @Setter
+    private RowBatch output;
+
+    // 进入写入队列的时间，用于统计调度等待
+    private long enqueuedNanos;
+
+    public PipelineBatch(int sequence, RowBatch source) {
+        this.sequence = sequence;
+        this.source = source;
+        this.rows = source.size();
+        this.bytes = source.estimatedBytes();
+        this.shard = -1;
+        this.pendingParts = null;
+    }
+
+    PipelineBatch(PipelineBatch parent, RowBatch output, int shard, AtomicInteger pendingParts) {
+        this.sequence = parent.sequence;
+        this.source = parent.source;
+        this.output = output;
+        this.rows = output.size();
+        this.bytes = output.estimatedBytes();
+        this.shard = shard;
+        this.pendingParts = pendingParts;
+    }
+
+    /**
+     * 分片提交后调用：同一读取批次的所有分片都已提交时返回 true，未分片的批次总是返回 true。
+     * 源批次级别的后续处理（水位、检查点、删除源数据）只在返回 true 时执行一次。
+     */
+    public boolean completePart() {
+        return pendingParts == null || pendingParts.decrementAndGet() == 0;
+    }
+
+    void markEnqueued() {
+        this.enqueuedNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,220 @@
+package com.datasync.tool.engine.pipeline;
+
+import com.datasync.tool.engine.RowBatch;
+import com.datasync.tool.engine.runner.RunScope;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * 读取 → 转换 → 写入的分阶段管道，阶段之间用按行数和字节数限流的队列连接。
+ * 读取阶段运行在调用线程上，通过 {@link #submit(RowBatch)} 投递批次；下游处理慢时 submit 阻塞，
+ * 从而对流式结果集形成真正的背压，而不是由读取线程代为写入。
+ * 转换阶段作为运行的子任务执行；写入阶段不再独占线程，写入队列注册到共享的 {@link BatchScheduler}，与其它任务公平地分享写入线程。
+ */
+@Slf4j
+public class SyncPipeline {
+
+    public interface BatchWriter {
+        void write(PipelineBatch batch) throws Exception;
+    }
+
+    private final String name;
+    private final BatchQueue transformQueue;
+    private final BatchQueue writeQueue;
+    private final UnaryOperator<RowBatch> transformer;
+    private final BatchWriter writer;
+    private final RunScope scope;
+    private BatchScheduler.Lane lane;
+    private KeyRouter router;
+    private final AtomicLong splitParts = new AtomicLong();
+
+    private final List<Future<?>> stageFutures = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private long startNanos;
+
+    private final StageStats readStats = new StageStats();
+    private final StageStats transformStats = new StageStats();
+    private final StageStats writeStats = new StageStats();
+
+    public SyncPipeline(String name, UnaryOperator<RowBatch> transformer, BatchWriter writer,
+                        long queueMaxRows, long queueMaxBytes, RunScope scope) {
+        this.name = name;
+        this.transformer = transformer;
+        this.writer = writer;
+        this.scope = scope;
+        this.transformQueue = new BatchQueue("transform", queueMaxRows, queueMaxBytes);
+        this.writeQueue = new BatchQueue("write", queueMaxRows, queueMaxBytes);
+    }
+
+    /**
+     * 启动转换阶段，并把写入队列注册到调度器；priority 为公平调度权重，maxWriters 为本任务的并发写入上限。
+     */
+    public void start(BatchScheduler scheduler, Long taskId, int priority, int maxWriters, Long targetDataSourceId) {
+        startNanos = System.nanoTime();
+        lane = scheduler.register(taskId, name, priority, maxWriters, targetDataSourceId, writeQueue, this::writeBatch);
+        stageFutures.add(scope.fork(this::runTransformStage));
+    }
+
+    /**
+     * 由读取线程调用（分区读取时可多个线程同时调用），队列满时阻塞。管道已失败时返回 false，读取方应停止读取。
+     */
+    public boolean submit(RowBatch batch) throws InterruptedException {
+        readStats.record(batch.size());
+        return transformQueue.put(new PipelineBatch(sequence.incrementAndGet(), batch));
+    }
+
+    /**
+     * 按目标主键分片写入，需在 start 之前设置。
+     */
+    public void setRouter(KeyRouter router) {
+        this.router = router;
+    }
+
+    /**
+     * 调整本管道的并发写入上限。
+     */
+    public void setMaxWriters(int maxWriters) {
+        if (lane != null) {
+            lane.setMaxConcurrency(maxWriters);
+        }
+    }
+
+    public boolean isFailed() {
+        return failure.get() != null;
+    }
+
+    public void abort(Throwable cause) {
+        if (failure.compareAndSet(null, cause)) {
+            log.warn("Pipeline {} aborted: {}", name, cause.getMessage());
+        }
+        transformQueue.abort();
+        writeQueue.abort();
+    }
+
+    /**
+     * 读取结束后调用：等待剩余批次写完，任一阶段失败时抛出首个异常。
+     */
+    public void finish() throws Exception {
+        transformQueue.close();
+        for (Future<?> future : stageFutures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                abort(e.getCause());
+            }
+        }
+        lane.awaitCompletion();
+        Throwable cause = failure.get();
+        if (cause instanceof Exception) {
+            throw (Exception) cause;
+        } else if (cause != null) {
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private void runTransformStage() {
+        try {
+            PipelineBatch batch;
+            while ((batch = transformQueue.take()) != null) {
+                long start = System.nanoTime();
+                batch.setOutput(transformer.apply(batch.getSource()));
+                if (router == null) {
+                    transformStats.record(batch.getRows(), System.nanoTime() - start);
+                    if (!writeQueue.put(batch)) break;
+                    continue;
+                }
+                List<PipelineBatch> parts = router.split(batch);
+                transformStats.record(batch.getRows(), System.nanoTime() - start);
+                splitParts.addAndGet(parts.size());
+                boolean accepted = true;
+                for (PipelineBatch part : parts) {
+                    if (!(accepted = writeQueue.put(part))) break;
+                }
+                if (!accepted) break;
+            }
+        } catch (Throwable e) {
+            abort(e);
+        } finally {
+            writeQueue.close();
+        }
+    }
+
+    private void writeBatch(PipelineBatch batch) {
+        if (isFailed()) return;
+        try {
+            long start = System.nanoTime();
+            writer.write(batch);
+            // 写完即释放，不再持有已完成批次的引用
+            writeStats.record(batch.getRows(), System.nanoTime() - start);
+        } catch (Throwable e) {
+            abort(e);
+        }
+    }
+
+    public Map<String, Object> metrics() {
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        long readerStallMs = transformQueue.putWaitMillis();
+        long transformStarvedMs = transformQueue.takeWaitMillis();
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("elapsedMs", elapsedMs);
+
+        Map<String, Object> reader = readStats.toMap();
+        reader.put("stallMs", readerStallMs);
+        Map<String, Object> transform = transformStats.toMap();
+        transform.put("starvedMs", transformStarvedMs);
+        transform.put("stallMs", writeQueue.putWaitMillis());
+        Map<String, Object> writers = writeStats.toMap();
+        if (router != null) {
+            writers.put("keyShards", router.shards());
+            writers.put("shardBatches", splitParts.get());
+        }
+        if (lane != null) {
+            writers.put("scheduler", lane.snapshot());
+        }
+
+        m.put("reader", reader);
+        m.put("transform", transform);
+        m.put("writers", writers);
+        m.put("queues", List.of(transformQueue.metrics(), writeQueue.metrics()));
+        // 读取线程长时间被阻塞说明写入（目标端或调度排队）是瓶颈，转换阶段长时间空等说明源端是瓶颈
+        m.put("bottleneck", readerStallMs >= transformStarvedMs ? "TARGET" : "SOURCE");
+        return m;
+    }
+
+    private static class StageStats {
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        void record(int batchRows) {
+            batches.incrementAndGet();
+            rows.addAndGet(batchRows);
+        }
+
+        void record(int batchRows, long nanos) {
+            record(batchRows);
+            busyNanos.addAndGet(nanos);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("batches", batches.get());
+            m.put("rows", rows.get());
+            m.put("busyMs", TimeUnit.NANOSECONDS.toMillis(busyNanos.get()));
+            return m;
+        }
+    }
+}
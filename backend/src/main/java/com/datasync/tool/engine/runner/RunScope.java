@@ -0,0 +1,80 @@
+package com.datasync.tool.engine.runner;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 一次运行的子任务作用域：子任务在虚拟线程上执行，生命周期不超过所属的运行。
+ * 关闭作用域时取消仍在执行的子任务并等待其线程退出，运行被取消时子任务随之中断。
+ * （JDK 21 的 StructuredTaskScope 仍是预览特性，这里只实现需要的部分。）
+ */
+public class RunScope implements AutoCloseable {
+    private final ThreadFactory threadFactory;
+    private final Map<Future<?>, Thread> subtasks = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    RunScope(String name) {
+        this.threadFactory = Thread.ofVirtual().name(name + "-sub-", 1).factory();
+    }
+
+    public <T> Future<T> fork(Callable<T> task) {
+        if (closed) {
+            throw new IllegalStateException("Run scope is already closed");
+        }
+        FutureTask<T> future = new FutureTask<>(task) {
+            @Override
+            protected void done() {
+                subtasks.remove(this);
+            }
+        };
+        Thread thread = threadFactory.newThread(future);
+        subtasks.put(future, thread);
+        thread.start();
+        return future;
+    }
+
+    public Future<?> fork(Runnable task) {
+        return fork(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * 中断所有未完成的子任务。
+     */
+    public void cancelAll() {
+        for (Future<?> future : subtasks.keySet()) {
+            future.cancel(true);
+        }
+    }
+
+    public int activeSubtasks() {
+        return subtasks.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // cancel 会立即把 Future 标记为完成，这里先记下线程再等待它们真正退出
+        Thread[] threads = subtasks.values().toArray(new Thread[0]);
+        cancelAll();
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.datasync.tool.engine.runner;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 任务运行器：每次运行占用一个虚拟线程，阻塞的 JDBC 调用不再占用平台线程。
+ * 同时运行的任务数受全局上限控制，超出时在虚拟线程上排队等待；常驻的消费循环不会结束，单独计数，不占用普通运行的名额。提交即登记，排队中的运行也可按任务取消；
+ * 保存 SyncLog 后再按 SyncLog id 登记，可按 id 查找。
+ */
+@Slf4j
+@Component
+public class TaskRunner {
+
+    public interface RunBody {
+        void run(Run run) throws Exception;
+    }
+
+    @Value("${datasync.runner.max-concurrent-runs:64}")
+    private int maxConcurrentRuns;
+
+    @Value("${datasync.runner.max-consumer-runs:16}")
+    private int maxConsumerRuns;
+
+    private Semaphore runSlots;
+    private Semaphore consumerSlots;
+    private ExecutorService executor;
+    private final AtomicInteger waiting = new AtomicInteger(0);
+    private final Map<Long, Run> runs = new ConcurrentHashMap<>();
+    // 已提交且尚未结束的运行，包括排队中的
+    private final Set<Run> active = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        runSlots = new Semaphore(maxConcurrentRuns, true);
+        consumerSlots = new Semaphore(maxConsumerRuns, true);
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sync-run-", 1).factory());
+        log.info("Task runner started, max concurrent runs: {}, max consumer runs: {}", maxConcurrentRuns, maxConsumerRuns);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public void submit(Long taskId, String taskName, RunBody body) {
+        submit(taskId, taskName, body, null);
+    }
+
+    /**
+     * onSkipped 在运行排队期间被取消、不再执行 body 时调用，用于释放提交前占用的资源。
+     */
+    public void submit(Long taskId, String taskName, RunBody body, Runnable onSkipped) {
+        submit(taskId, taskName, body, onSkipped, runSlots);
+    }
+
+    /**
+     * 提交常驻的消费循环，占用单独的名额，超出 max-consumer-runs 时排队。onSkipped 同 {@link #submit(Long, String, RunBody, Runnable)}。
+     */
+    public void submitConsumer(Long taskId, String taskName, RunBody body, Runnable onSkipped) {
+        submit(taskId, taskName, body, onSkipped, consumerSlots);
+    }
+
+    private void submit(Long taskId, String taskName, RunBody body, Runnable onSkipped, Semaphore slots) {
+        executor.submit(() -> {
+            Run run = new Run(taskId, taskName);
+            active.add(run);
+            try {
+                waiting.incrementAndGet();
+                try {
+                    slots.acquire();
+                } catch (InterruptedException e) {
+                    // 排队时被取消会中断等待；关闭时的中断保留中断状态
+                    if (!run.cancelled) Thread.currentThread().interrupt();
+                    if (onSkipped != null) onSkipped.run();
+                    return;
+                } finally {
+                    waiting.decrementAndGet();
+                }
+                try {
+                    // 在等待期间被取消的运行不再执行
+                    if (!run.start()) {
+                        log.info("Task {} was cancelled while queued", taskId);
+                        if (onSkipped != null) onSkipped.run();
+                        return;
+                    }
+                    body.run(run);
+                } catch (Throwable e) {
+                    log.error("Task {} run failed", taskId, e);
+                } finally {
+                    slots.release();
+                }
+            } finally {
+                run.scope.close();
+                active.remove(run);
+                if (run.syncLogId != null) {
+                    runs.remove(run.syncLogId);
+                }
+            }
+        });
+    }
+
+    public Optional<Run> find(Long syncLogId) {
+        return Optional.ofNullable(runs.get(syncLogId));
+    }
+
+    /**
+     * 该任务已提交且尚未结束的运行，包括排队中的。
+     */
+    public List<Run> findByTask(Long taskId) {
+        return active.stream().filter(r -> r.taskId.equals(taskId)).toList();
+    }
+
+    /**
+     * 取消该任务所有运行中和排队中的执行，返回被取消的运行数。
+     */
+    public int cancelTask(Long taskId) {
+        List<Run> targets = findByTask(taskId);
+        targets.forEach(Run::cancel);
+        return targets.size();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("maxConcurrentRuns", maxConcurrentRuns);
+        m.put("running", maxConcurrentRuns - runSlots.availablePermits());
+        m.put("maxConsumerRuns", maxConsumerRuns);
+        m.put("consumers", maxConsumerRuns - consumerSlots.availablePermits());
+        m.put("waiting", waiting.get());
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Run run : active) {
+            list.add(run.toMap());
+        }
+        m.put("runs", list);
+        return m;
+    }
+
+    /**
+     * 一次运行。提交时创建，SyncLog 保存后通过 {@link #bindLog(Long)} 按 id 登记。
+     */
+    @Getter
+    public class Run {
+        private final Long taskId;
+        private final String taskName;
+        private final Thread thread;
+        private final LocalDateTime startTime = LocalDateTime.now();
+        private final RunScope scope;
+        private volatile Long syncLogId;
+        private volatile boolean cancelled;
+        // 取得运行名额后才置为 true
+        private volatile boolean started;
+        private final List<Runnable> cancelHooks = new CopyOnWriteArrayList<>();
+
+        Run(Long taskId, String taskName) {
+            this.taskId = taskId;
+            this.taskName = taskName;
+            this.thread = Thread.currentThread();
+            this.scope = new RunScope("sync-run-" + taskId);
+        }
+
+        public void bindLog(Long logId) {
+            this.syncLogId = logId;
+            runs.put(logId, this);
+        }
+
+        /**
+         * 注册取消时执行的动作（如 Statement.cancel、中止管道），已取消时立即执行。
+         */
+        public void onCancel(Runnable hook) {
+            cancelHooks.add(hook);
+            if (cancelled) {
+                runHook(hook);
+            }
+        }
+
+        synchronized boolean start() {
+            if (cancelled) return false;
+            started = true;
+            return true;
+        }
+
+        public void cancel() {
+            boolean queued;
+            synchronized (this) {
+                if (cancelled) return;
+                cancelled = true;
+                queued = !started;
+            }
+            log.info("Cancelling run of task {} (log {})", taskId, syncLogId);
+            for (Runnable hook : cancelHooks) {
+                runHook(hook);
+            }
+            scope.cancelAll();
+            if (queued) {
+                // 唤醒排队等待名额的线程
+                thread.interrupt();
+            }
+        }
+
+        private void runHook(Runnable hook) {
+            try {
+                hook.run();
+            } catch (Exception e) {
+                log.warn("Cancel hook failed for task {}: {}", taskId, e.getMessage());
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("syncLogId", syncLogId);
+            m.put("taskId", taskId);
+            m.put("taskName", taskName);
+            m.put("startTime", startTime.toString());
+            m.put("thread", thread.getName());
+            m.put("subtasks", scope.activeSubtasks());
+            m.put("queued", !started);
+            m.put("cancelled", cancelled);
+            return m;
+        }
+    }
+}
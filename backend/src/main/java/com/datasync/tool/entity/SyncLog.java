@@ -35,12 +35,18 @@ public class SyncLog {
     @Column(name = "total_count")
     private Integer totalCount; // Total number of records to be synchronized
 
+    @Column(name = "total_estimated")
+    private Boolean totalEstimated; // totalCount is an optimizer estimate
+
     @Column(name = "processed_count")
     private Integer processedCount; // Number of records processed so far
 
     @Column(name = "duration_ms")
     private Long durationMs; // Duration in milliseconds
 
+    @Column(columnDefinition = "TEXT")
+    private String checkpoint; // JSON: highest contiguously committed key per partition, used to resume
+
     @Column(columnDefinition = "LONGTEXT")
     private String nodeDetails; // JSON detailing each node's execution (SQL, count, time, etc.)
 
@@ -30,6 +30,8 @@ public class SyncTask {
 
     private String status; // ENABLED, DISABLED
 
+    private Integer priority = 5; // 1-10，并发运行时按此权重分配写入线程
+
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
@@ -0,0 +1,34 @@
+package com.datasync.tool.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "sync_watermark")
+public class SyncWatermark {
+    @Id
+    @Column(name = "task_id")
+    private Long taskId;
+
+    @Column(name = "column_name", nullable = false)
+    private String columnName; // 增量字段
+
+    @Column(name = "value_type", nullable = false)
+    private String valueType; // LONG, DECIMAL, DATETIME, DATE, STRING
+
+    @Column(name = "watermark_value", length = 512)
+    private String watermarkValue; // 已提交数据中增量字段的最大值
+
+    @Column(name = "sync_log_id")
+    private Long syncLogId; // 最后一次推进水位的执行记录
+
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
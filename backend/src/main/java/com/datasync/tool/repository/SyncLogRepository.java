@@ -37,6 +37,16 @@ public interface SyncLogRepository extends JpaRepository<SyncLog, Long> {
     @Query("UPDATE SyncLog s SET s.processedCount = :count WHERE s.id = :id")
     void updateProcessedCount(@Param("id") Long id, @Param("count") Integer count);
 
+    @Modifying
+    @Transactional
+    @Query("UPDATE SyncLog s SET s.totalCount = :count WHERE s.id = :id")
+    void updateTotalCount(@Param("id") Long id, @Param("count") Integer count);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE SyncLog s SET s.checkpoint = :checkpoint WHERE s.id = :id")
+    void updateCheckpoint(@Param("id") Long id, @Param("checkpoint") String checkpoint);
+
     @Query(value = "SELECT DATE(start_time) as date, COUNT(*) as count FROM sync_log " +
             "WHERE start_time >= :startTime " +
             "GROUP BY DATE(start_time) ORDER BY DATE(start_time) ASC", nativeQuery = true)
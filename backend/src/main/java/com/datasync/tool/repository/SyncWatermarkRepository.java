@@ -0,0 +1,9 @@
+package com.datasync.tool.repository;
+
+import com.datasync.tool.entity.SyncWatermark;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SyncWatermarkRepository extends JpaRepository<SyncWatermark, Long> {
+}
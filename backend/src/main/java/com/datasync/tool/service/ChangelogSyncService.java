@@ -0,0 +1,440 @@
+package com.datasync.tool.service;
+
+import com.datasync.tool.engine.ExecutionPlan;
+import com.datasync.tool.engine.RowBatch;
+import com.datasync.tool.engine.RowSchema;
+import com.datasync.tool.engine.SourceQuery;
+import com.datasync.tool.engine.TransformChain;
+import com.datasync.tool.engine.runner.TaskRunner;
+import com.datasync.tool.entity.DataSource;
+import com.datasync.tool.entity.SyncLog;
+import com.datasync.tool.entity.SyncTask;
+import com.datasync.tool.entity.SyncWatermark;
+import com.datasync.tool.repository.SyncLogRepository;
+import com.datasync.tool.repository.SyncWatermarkRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.sql.*;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 变更日志(CDC)同步：持续轮询源端由触发器写入的变更表 (seq, op, pk, changed_at)，
+ * 按 seq 顺序把插入、更新、删除应用到目标表，提交后批量清理（或记录位点）已消费的变更。
+ * 以常驻循环运行，不再由 cron 触发，一次消费会话对应一条执行日志。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChangelogSyncService {
+    private static final int FETCH_LIMIT = 5000;
+    private static final int KEY_CHUNK_SIZE = 1000;
+    private static final long MAX_BACKOFF_MS = 60_000;
+    // seq 在插入时分配、按提交顺序可见，较小的 seq 可能晚于较大的提交；出现空洞时位点停在空洞前，
+    // 超过该时长仍未补齐的视为事务已回滚（或自增步长跳过）的空号
+    private static final long SEQ_GAP_GRACE_MS = 5 * 60_000;
+
+    private final DataSourceService dataSourceService;
+    private final DataSourcePoolRegistry poolRegistry;
+    private final TableWriter tableWriter;
+    private final LookupRegistry lookupRegistry;
+    private final SyncLogRepository syncLogRepository;
+    private final RunProgressRegistry progressRegistry;
+    private final SyncWatermarkRepository watermarkRepository;
+    private final ObjectMapper objectMapper;
+
+    private final Set<Long> activeTasks = ConcurrentHashMap.newKeySet();
+    private final Map<Long, ConsumerStats> statsByTask = new ConcurrentHashMap<>();
+
+    private record Change(long seq, String op, Object pk, Timestamp changedAt) {
+        boolean isDelete() {
+            return op != null && op.toUpperCase(Locale.ROOT).startsWith("D");
+        }
+    }
+
+    /**
+     * 同一任务只允许一个消费循环，已在运行时返回 false。
+     */
+    public boolean tryAcquire(Long taskId) {
+        return activeTasks.add(taskId);
+    }
+
+    /**
+     * 释放 {@link #tryAcquire(Long)} 占用的任务，用于消费循环未能启动的情况。
+     */
+    public void release(Long taskId) {
+        synchronized (activeTasks) {
+            activeTasks.remove(taskId);
+            activeTasks.notifyAll();
+        }
+    }
+
+    public boolean isActive(Long taskId) {
+        return activeTasks.contains(taskId);
+    }
+
+    /**
+     * 等待任务的消费循环退出并释放占用，超时返回 false。
+     */
+    public boolean awaitReleased(Long taskId, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (activeTasks) {
+            while (activeTasks.contains(taskId)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                activeTasks.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    public Map<Long, Map<String, Object>> getStats() {
+        Map<Long, Map<String, Object>> result = new HashMap<>();
+        statsByTask.forEach((taskId, stats) -> result.put(taskId, stats.toMap()));
+        return result;
+    }
+
+    /**
+     * 消费循环，直到任务被停止。调用前需通过 {@link #tryAcquire(Long)} 占用该任务。
+     */
+    public void run(SyncTask task, ExecutionPlan plan, TaskRunner.Run run) {
+        SyncLog syncLog = new SyncLog();
+        syncLog.setTaskId(task.getId());
+        syncLog.setTaskName(task.getName());
+        syncLog.setStartTime(LocalDateTime.now());
+        syncLog.setResult("RUNNING");
+        syncLog.setMessage("Changelog consumer running");
+        syncLog.setTotalCount(-1);
+        syncLog.setProcessedCount(0);
+        syncLog = syncLogRepository.save(syncLog);
+        run.bindLog(syncLog.getId());
+        RunProgressRegistry.RunProgress progress = progressRegistry.start(syncLog);
+        progress.setStage("CONSUMING");
+
+        ConsumerStats stats = new ConsumerStats(plan.getChangelogTable());
+        statsByTask.put(task.getId(), stats);
+        progress.setStageMetrics(stats::toMap);
+        CountDownLatch stopSignal = new CountDownLatch(1);
+        run.onCancel(stopSignal::countDown);
+
+        try {
+            DataSource sourceDs = dataSourceService.findById(plan.getSourceDataSourceId());
+            DataSource targetDs = dataSourceService.findById(plan.getTargetDataSourceId());
+            tableWriter.ensureTargetTable(targetDs, plan.getTargetTable(), plan.getOutputFields(), plan.getPrimaryKey());
+
+            long lastSeq = loadPosition(task.getId(), plan);
+            long backoffMs = plan.getChangelogPollIntervalMs();
+            while (!run.isCancelled()) {
+                long waitMs;
+                try {
+                    int consumed = pollOnce(plan, sourceDs, targetDs, lastSeq, stats, progress);
+                    // 清理模式下已消费的变更被删除，每次从头读取剩余的，不依赖位点
+                    if (consumed > 0 && !"PURGE".equalsIgnoreCase(plan.getChangelogAckMode())
+                            && stats.lastSeq > lastSeq) {
+                        lastSeq = stats.lastSeq;
+                        savePosition(task.getId(), lastSeq, syncLog.getId());
+                    }
+                    backoffMs = plan.getChangelogPollIntervalMs();
+                    // 读满一批说明还有积压，立即继续；位点停在未补齐的空洞前时按间隔等待，避免反复重读同一批
+                    waitMs = consumed >= FETCH_LIMIT && stats.openGaps.isEmpty() ? 0 : plan.getChangelogPollIntervalMs();
+                } catch (Exception e) {
+                    if (run.isCancelled()) break;
+                    stats.errors.incrementAndGet();
+                    stats.lastError = e.getMessage();
+                    log.warn("Changelog poll failed for task {}, retrying in {}ms: {}", task.getId(), backoffMs, e.getMessage());
+                    waitMs = backoffMs;
+                    backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+                }
+                if (waitMs > 0 && stopSignal.await(waitMs, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            }
+            syncLog.setResult("CANCELLED");
+            syncLog.setMessage("Changelog consumer stopped after applying " + stats.applied.get() + " changes.");
+        } catch (Exception e) {
+            log.error("Changelog consumer for task {} failed", task.getId(), e);
+            syncLog.setResult("FAILURE");
+            syncLog.setMessage(e.getMessage());
+        } finally {
+            release(task.getId());
+            syncLog.setEndTime(LocalDateTime.now());
+            syncLog.setProcessedCount(RunProgressRegistry.clampCount(stats.applied.get()));
+            syncLog.setSyncCount(RunProgressRegistry.clampCount(stats.applied.get()));
+            syncLog.setDurationMs(Duration.between(syncLog.getStartTime(), syncLog.getEndTime()).toMillis());
+            try {
+                Map<String, Object> cLog = new HashMap<>(stats.toMap());
+                cLog.put("nodeId", plan.getInputNodeId());
+                cLog.put("nodeType", "CHANGELOG");
+                cLog.put("nodeName", "变更日志输入");
+                syncLog.setNodeDetails(objectMapper.writeValueAsString(List.of(cLog)));
+            } catch (Exception e) {
+                log.warn("Failed to serialize node details", e);
+            }
+            progressRegistry.finish(syncLog.getId());
+            syncLogRepository.save(syncLog);
+        }
+    }
+
+    /**
+     * 消费一批变更，返回读取到的变更条数。
+     */
+    private int pollOnce(ExecutionPlan plan, DataSource sourceDs, DataSource targetDs, long lastSeq,
+                         ConsumerStats stats, RunProgressRegistry.RunProgress progress) throws Exception {
+        String changelog = SourceQuery.quote(plan.getChangelogTable());
+        List<Change> changes = new ArrayList<>();
+        try (Connection conn = poolRegistry.getConnection(sourceDs);
+             PreparedStatement ps = conn.prepareStatement("SELECT `seq`, `op`, `pk`, `changed_at` FROM " + changelog
+                     + " WHERE `seq` > ? ORDER BY `seq` LIMIT " + FETCH_LIMIT)) {
+            ps.setLong(1, lastSeq);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    changes.add(new Change(rs.getLong(1), rs.getString(2), rs.getObject(3), rs.getTimestamp(4)));
+                }
+            }
+        }
+        stats.lastPollAt = LocalDateTime.now();
+        if (changes.isEmpty()) {
+            // 没有待消费的变更，目标端已追平
+            stats.backlog = 0;
+            stats.lagMs = 0;
+            return 0;
+        }
+
+        // 按 seq 顺序折叠：同一主键只保留最后一次操作，等价于依次应用
+        Map<Object, Change> latest = new LinkedHashMap<>();
+        for (Change change : changes) {
+            if (change.pk() != null) {
+                latest.put(change.pk(), change);
+            }
+        }
+        List<Object> upsertKeys = new ArrayList<>();
+        Set<Object> deleteKeys = new LinkedHashSet<>();
+        for (Change change : latest.values()) {
+            if (change.isDelete()) {
+                deleteKeys.add(change.pk());
+            } else {
+                upsertKeys.add(change.pk());
+            }
+        }
+
+        int upserted = 0;
+        try (Connection sourceConn = poolRegistry.getConnection(sourceDs);
+             Connection targetConn = poolRegistry.getConnection(targetDs)) {
+            targetConn.setAutoCommit(false);
+            try {
+                for (int from = 0; from < upsertKeys.size(); from += KEY_CHUNK_SIZE) {
+                    List<Object> chunk = upsertKeys.subList(from, Math.min(upsertKeys.size(), from + KEY_CHUNK_SIZE));
+                    // 变更表与源表的主键类型可能不同（如 VARCHAR 与 BIGINT），按字符串匹配
+                    Map<String, Object> missing = new LinkedHashMap<>();
+                    chunk.forEach(k -> missing.put(k.toString(), k));
+                    upserted += upsertCurrentRows(sourceConn, targetConn, plan, chunk, missing);
+                    // 源表中已不存在的行（之后被删除）按删除处理，对应的删除事件会在后续批次中再次到达
+                    deleteKeys.addAll(missing.values());
+                }
+                int deleted = tableWriter.deleteByKeysInTransaction(targetConn, plan.getTargetTable(),
+                        plan.getPrimaryKey(), new ArrayList<>(deleteKeys));
+                targetConn.commit();
+                stats.deletes.addAndGet(deleted);
+            } catch (Exception e) {
+                // 本批的写入在同一事务中，锁冲突时不重试单条语句，回滚后由消费循环退避并从原位点重读整批
+                targetConn.rollback();
+                if (e instanceof SQLException se && (se.getErrorCode() == 1205 || se.getErrorCode() == 1213)) {
+                    throw new RuntimeException("Lock conflict while applying changes (code: " + se.getErrorCode()
+                            + "), batch rolled back", se);
+                }
+                throw e;
+            }
+
+            long maxSeq = changes.get(changes.size() - 1).seq();
+            if ("PURGE".equalsIgnoreCase(plan.getChangelogAckMode())) {
+                // 只删除本批读到的 seq，读取之后才提交的较小 seq 留待下一批
+                for (int from = 0; from < changes.size(); from += KEY_CHUNK_SIZE) {
+                    List<Change> chunk = changes.subList(from, Math.min(changes.size(), from + KEY_CHUNK_SIZE));
+                    StringBuilder sql = new StringBuilder("DELETE FROM ").append(changelog).append(" WHERE `seq` IN (");
+                    for (int i = 0; i < chunk.size(); i++) {
+                        sql.append(i == 0 ? "?" : ", ?");
+                    }
+                    try (PreparedStatement ps = sourceConn.prepareStatement(sql.append(")").toString())) {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            ps.setLong(i + 1, chunk.get(i).seq());
+                        }
+                        ps.executeUpdate();
+                    }
+                }
+                stats.lastSeq = maxSeq;
+            } else {
+                stats.lastSeq = advancePosition(lastSeq, changes, stats);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        Timestamp oldest = changes.get(0).changedAt();
+        Timestamp newest = changes.get(changes.size() - 1).changedAt();
+        stats.upserts.addAndGet(upserted);
+        stats.applied.addAndGet(changes.size());
+        stats.batches.incrementAndGet();
+        stats.backlog = changes.size() >= FETCH_LIMIT ? -1 : 0;
+        if (oldest != null) {
+            // 端到端延迟：变更写入变更表到目标端提交之间的时间
+            stats.lagMs = now - oldest.getTime();
+            stats.maxLagMs = Math.max(stats.maxLagMs, stats.lagMs);
+        }
+        if (newest != null) {
+            stats.lastChangeAt = newest.toLocalDateTime();
+        }
+        progress.setProcessed(stats.applied.get());
+        log.debug("Applied {} changes (upsert {}, delete {}) up to seq {}",
+                changes.size(), upserted, deleteKeys.size(), stats.lastSeq);
+        return changes.size();
+    }
+
+    /**
+     * 确认模式下返回可以保存的位点：本批中第一个未过宽限期的 seq 空洞之前的最大 seq。
+     * 空洞之后的变更已经应用，位点未越过时会被重读，按主键读取当前数据写入是幂等的。
+     */
+    private static long advancePosition(long lastSeq, List<Change> changes, ConsumerStats stats) {
+        long now = System.currentTimeMillis();
+        long position = lastSeq;
+        long prev = lastSeq;
+        boolean blocked = false;
+        for (Change change : changes) {
+            if (!blocked && change.seq() > prev + 1) {
+                // 以空洞之后的 seq 记录首次发现的时间，空洞部分补齐时不重新计时
+                long seenAt = stats.openGaps.computeIfAbsent(change.seq(), k -> now);
+                if (now - seenAt < SEQ_GAP_GRACE_MS) {
+                    blocked = true;
+                } else {
+                    log.warn("Changelog {}: seq {}..{} never committed within {}s, skipped", stats.changelogTable,
+                            prev + 1, change.seq() - 1, SEQ_GAP_GRACE_MS / 1000);
+                }
+            }
+            if (!blocked) {
+                position = change.seq();
+            }
+            prev = change.seq();
+        }
+        long confirmed = position;
+        stats.openGaps.keySet().removeIf(seq -> seq <= confirmed);
+        return position;
+    }
+
+    /**
+     * 按主键读取源端当前数据写入目标，写入成功的主键从 missing 中移除。
+     */
+    private int upsertCurrentRows(Connection sourceConn, Connection targetConn, ExecutionPlan plan,
+                                  List<Object> keys, Map<String, Object> missing) throws Exception {
+        StringBuilder in = new StringBuilder(SourceQuery.quote(plan.getChangelogKeyColumn())).append(" IN (");
+        for (int i = 0; i < keys.size(); i++) {
+            in.append(i == 0 ? "?" : ", ?");
+        }
+        in.append(")");
+        SourceQuery query = SourceQuery.of(plan.getSourceSql()).where(in.toString(), keys.toArray());
+
+        try (PreparedStatement ps = sourceConn.prepareStatement(query.toSql())) {
+            query.bind(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                RowSchema schema = RowSchema.fromMetaData(rs.getMetaData());
+                int keyIndex = schema.indexOf(plan.getChangelogKeyColumn());
+                if (keyIndex < 0) {
+                    throw new RuntimeException("Changelog key column not found in source query: "
+                            + plan.getChangelogKeyColumn());
+                }
+                RowBatch batch = new RowBatch(schema, keys.size());
+                while (rs.next()) {
+                    batch.appendFrom(rs);
+                }
+                if (batch.isEmpty()) {
+                    return 0;
+                }
+                // 计算列、维表关联和过滤节点在投影前执行；不再满足条件的行视为源端已不存在，随后从目标删除
+                TransformChain chain = TransformChain.compile(plan, schema, plan.getFilterSteps(),
+                        lookupRegistry.open(plan));
+                if (chain.hasOutputFilters()) {
+                    throw new RuntimeException("Filters in changelog sync must only reference source, computed or lookup columns");
+                }
+                batch = chain.prepare(batch);
+                for (int row = 0; row < batch.size(); row++) {
+                    Object key = batch.getObject(keyIndex, row);
+                    if (key != null) {
+                        missing.remove(key.toString());
+                    }
+                }
+                tableWriter.insertBatchInTransaction(targetConn, plan, chain.converters(), chain.project(batch));
+                return batch.size();
+            }
+        }
+    }
+
+    private long loadPosition(Long taskId, ExecutionPlan plan) {
+        if ("PURGE".equalsIgnoreCase(plan.getChangelogAckMode())) {
+            // 已消费的变更已被删除，从头读取剩余的即可
+            return 0L;
+        }
+        return watermarkRepository.findById(taskId)
+                .filter(wm -> "seq".equals(wm.getColumnName()) && wm.getWatermarkValue() != null)
+                .map(wm -> Long.parseLong(wm.getWatermarkValue()))
+                .orElse(0L);
+    }
+
+    private void savePosition(Long taskId, long seq, Long syncLogId) {
+        SyncWatermark wm = watermarkRepository.findById(taskId).orElseGet(SyncWatermark::new);
+        wm.setTaskId(taskId);
+        wm.setColumnName("seq");
+        wm.setValueType("LONG");
+        wm.setWatermarkValue(Long.toString(seq));
+        wm.setSyncLogId(syncLogId);
+        watermarkRepository.save(wm);
+    }
+
+    private static class ConsumerStats {
+        private final String changelogTable;
+        private final AtomicLong applied = new AtomicLong();
+        private final AtomicLong upserts = new AtomicLong();
+        private final AtomicLong deletes = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private volatile long lastSeq;
+        private volatile long lagMs;
+        private volatile long maxLagMs;
+        private volatile long backlog;
+        private volatile LocalDateTime lastPollAt;
+        private volatile LocalDateTime lastChangeAt;
+        private volatile String lastError;
+        // 位点之后尚未补齐的 seq 空洞：空洞之后的 seq -> 首次发现的时间
+        private final Map<Long, Long> openGaps = new ConcurrentHashMap<>();
+
+        ConsumerStats(String changelogTable) {
+            this.changelogTable = changelogTable;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("changelogTable", changelogTable);
+            m.put("appliedChanges", applied.get());
+            m.put("upsertedRows", upserts.get());
+            m.put("deletedRows", deletes.get());
+            m.put("batches", batches.get());
+            m.put("lastSeq", lastSeq);
+            m.put("openSeqGaps", openGaps.size());
+            m.put("lagMs", lagMs);
+            m.put("maxLagMs", maxLagMs);
+            // -1 表示上一批读满，仍有积压
+            m.put("backlog", backlog);
+            m.put("lastPollAt", lastPollAt != null ? lastPollAt.toString() : null);
+            m.put("lastChangeAt", lastChangeAt != null ? lastChangeAt.toString() : null);
+            m.put("errors", errors.get());
+            m.put("lastError", lastError);
+            return m;
+        }
+    }
+}
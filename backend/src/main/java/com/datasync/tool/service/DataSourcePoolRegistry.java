@@ -0,0 +1,248 @@
+package com.datasync.tool.service;
+
+import com.datasync.tool.entity.DataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * 按 DataSource 维护 HikariCP 连接池，数据源被修改(updatedAt 变化)后自动重建。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DataSourcePoolRegistry {
+    private final MeterRegistry meterRegistry;
+
+    @Value("${datasync.pool.maximum-pool-size:10}")
+    private int maximumPoolSize;
+
+    @Value("${datasync.pool.minimum-idle:1}")
+    private int minimumIdle;
+
+    @Value("${datasync.pool.connection-timeout-ms:30000}")
+    private long connectionTimeoutMs;
+
+    @Value("${datasync.pool.idle-timeout-ms:600000}")
+    private long idleTimeoutMs;
+
+    @Value("${datasync.pool.connection-init-sql:SET SESSION innodb_lock_wait_timeout = 120, lock_wait_timeout = 60}")
+    private String connectionInitSql;
+
+    // 每个数据源不分给分区读取的连接：各运行的主连接、进度计数、源数据清理和维表查询
+    @Value("${datasync.pool.reserved-connections:4}")
+    private int reservedConnections;
+
+    // 开启后 BULK_LOAD 写入使用单独的目标端连接池，只有这些连接在握手时声明支持 LOCAL INFILE
+    @Value("${datasync.pool.allow-load-local-infile:false}")
+    private boolean allowLoadLocalInfile;
+
+    private final Map<Long, PoolEntry> pools = new ConcurrentHashMap<>();
+    private final Map<Long, PoolEntry> bulkLoadPools = new ConcurrentHashMap<>();
+    private final Map<Long, Semaphore> readerSlots = new ConcurrentHashMap<>();
+    private final List<HikariDataSource> retiredPools = new CopyOnWriteArrayList<>();
+    private final AtomicInteger poolGeneration = new AtomicInteger(0);
+
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ds-pool-reaper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private record PoolEntry(LocalDateTime updatedAt, HikariDataSource pool) {
+    }
+
+    /**
+     * 预留的分区读取连接名额，关闭时归还。
+     */
+    public record ReaderLease(Semaphore slots, int count) implements AutoCloseable {
+        @Override
+        public void close() {
+            if (count > 0) slots.release(count);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        reaper.scheduleWithFixedDelay(this::closeIdleRetiredPools, 10, 10, TimeUnit.SECONDS);
+    }
+
+    public static String buildJdbcUrl(DataSource ds) {
+        return String.format("jdbc:mysql://%s:%d/%s?useSSL=false&serverTimezone=UTC&allowPublicKeyRetrieval=true",
+                ds.getHost(), ds.getPort(), ds.getDatabaseName());
+    }
+
+    public Connection getConnection(DataSource ds) throws SQLException {
+        return getPool(ds).getConnection();
+    }
+
+    /**
+     * BULK_LOAD 写入使用的目标端连接。声明支持 LOCAL INFILE 的连接可被服务端要求读取本机任意文件，
+     * 只用于写入受信任的目标库，其它查询一律使用 {@link #getConnection(DataSource)}。
+     */
+    public Connection getBulkLoadConnection(DataSource ds) throws SQLException {
+        if (!allowLoadLocalInfile) {
+            throw new SQLException("LOAD DATA LOCAL INFILE is disabled (datasync.pool.allow-load-local-infile)");
+        }
+        return getPool(bulkLoadPools, ds, true).getConnection();
+    }
+
+    public boolean isLoadLocalInfileAllowed() {
+        return allowLoadLocalInfile;
+    }
+
+    public HikariDataSource getPool(DataSource ds) {
+        return getPool(pools, ds, false);
+    }
+
+    private HikariDataSource getPool(Map<Long, PoolEntry> registry, DataSource ds, boolean localInfile) {
+        PoolEntry entry = registry.compute(ds.getId(), (id, existing) -> {
+            if (existing != null && !isNewer(ds.getUpdatedAt(), existing.updatedAt())) {
+                return existing;
+            }
+            if (existing != null) {
+                log.info("DataSource {} was modified, rebuilding connection pool", id);
+                retire(existing.pool());
+            }
+            return new PoolEntry(ds.getUpdatedAt(), createPool(ds, localInfile));
+        });
+        return entry.pool();
+    }
+
+    /**
+     * 为分区读取预留最多 wanted 个连接名额，不等待，返回实际预留到的个数（可能为 0）。
+     * 同一数据源上所有运行的分区读取连接合计不超过连接池上限减去 reserved-connections，
+     * 并行运行的分区任务不会占满连接池、让彼此或其它查询等到 connectionTimeout。
+     */
+    public ReaderLease reserveReaders(DataSource ds, int wanted) {
+        Semaphore slots = readerSlots.computeIfAbsent(ds.getId(),
+                id -> new Semaphore(Math.max(0, maximumPoolSize - reservedConnections)));
+        int granted = Math.min(wanted, slots.availablePermits());
+        while (granted > 0 && !slots.tryAcquire(granted)) {
+            granted--;
+        }
+        return new ReaderLease(slots, Math.max(0, granted));
+    }
+
+    public void evict(Long dataSourceId) {
+        for (Map<Long, PoolEntry> m : List.of(pools, bulkLoadPools)) {
+            PoolEntry entry = m.remove(dataSourceId);
+            if (entry != null) {
+                retire(entry.pool());
+            }
+        }
+    }
+
+    public List<Map<String, Object>> getPoolStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        BiConsumer<Long, PoolEntry> collect = (id, entry) -> {
+            HikariDataSource pool = entry.pool();
+            HikariPoolMXBean mx = pool.getHikariPoolMXBean();
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("dataSourceId", id);
+            s.put("poolName", pool.getPoolName());
+            s.put("maximumPoolSize", pool.getMaximumPoolSize());
+            if (mx != null) {
+                s.put("active", mx.getActiveConnections());
+                s.put("idle", mx.getIdleConnections());
+                s.put("total", mx.getTotalConnections());
+                s.put("waiting", mx.getThreadsAwaitingConnection());
+            }
+            Timer acquire = meterRegistry.find("hikaricp.connections.acquire").tag("pool", pool.getPoolName()).timer();
+            if (acquire != null) {
+                s.put("acquireCount", acquire.count());
+                s.put("acquireMeanMs", acquire.mean(TimeUnit.MILLISECONDS));
+                s.put("acquireMaxMs", acquire.max(TimeUnit.MILLISECONDS));
+            }
+            stats.add(s);
+        };
+        pools.forEach(collect);
+        bulkLoadPools.forEach(collect);
+        return stats;
+    }
+
+    private HikariDataSource createPool(DataSource ds, boolean localInfile) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("ds-" + ds.getId() + (localInfile ? "-bulk" : "") + "-v" + poolGeneration.incrementAndGet());
+        config.setJdbcUrl(buildJdbcUrl(ds));
+        config.setUsername(ds.getUsername());
+        config.setPassword(ds.getPassword());
+        config.setMaximumPoolSize(maximumPoolSize);
+        config.setMinimumIdle(Math.min(minimumIdle, maximumPoolSize));
+        config.setConnectionTimeout(connectionTimeoutMs);
+        config.setIdleTimeout(idleTimeoutMs);
+        // 每个物理连接只执行一次会话初始化
+        if (connectionInitSql != null && !connectionInitSql.isBlank()) {
+            config.setConnectionInitSql(connectionInitSql);
+        }
+        // 写入使用服务端预编译的多行 INSERT，语句在池化连接上缓存复用
+        config.addDataSourceProperty("useServerPrepStmts", "true");
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", "128");
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "1048576");
+        // 只有 BULK_LOAD 写入连接声明支持 LOCAL INFILE，数据总是来自内存流；
+        // Connector/J 只在 allowLoadLocalInfile 开启时读取 setLocalInfileInputStream 设置的流
+        config.addDataSourceProperty("allowLoadLocalInfile", String.valueOf(localInfile));
+        // 不在创建时阻塞建连，连接错误在 getConnection 时抛出
+        config.setInitializationFailTimeout(-1);
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        log.info("Creating connection pool {} for data source {}", config.getPoolName(), ds.getName());
+        return new HikariDataSource(config);
+    }
+
+    private boolean isNewer(LocalDateTime candidate, LocalDateTime current) {
+        return candidate != null && (current == null || candidate.isAfter(current));
+    }
+
+    private void retire(HikariDataSource pool) {
+        // 旧连接池可能仍有运行中的批次在使用，等活跃连接归还后再关闭
+        HikariPoolMXBean mx = pool.getHikariPoolMXBean();
+        if (mx != null) {
+            mx.softEvictConnections();
+        }
+        retiredPools.add(pool);
+    }
+
+    private void closeIdleRetiredPools() {
+        for (HikariDataSource pool : retiredPools) {
+            try {
+                HikariPoolMXBean mx = pool.getHikariPoolMXBean();
+                if (mx == null || mx.getActiveConnections() == 0) {
+                    pool.close();
+                    retiredPools.remove(pool);
+                    log.info("Closed retired connection pool {}", pool.getPoolName());
+                }
+            } catch (Exception e) {
+                log.warn("Failed to close retired pool {}: {}", pool.getPoolName(), e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reaper.shutdownNow();
+        pools.values().forEach(entry -> entry.pool().close());
+        pools.clear();
+        bulkLoadPools.values().forEach(entry -> entry.pool().close());
+        bulkLoadPools.clear();
+        retiredPools.forEach(HikariDataSource::close);
+        retiredPools.clear();
+    }
+}
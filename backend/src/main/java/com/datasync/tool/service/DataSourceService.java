@@ -10,11 +10,16 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 public class DataSourceService {
     private final DataSourceRepository dataSourceRepository;
+    private final DataSourcePoolRegistry poolRegistry;
+    private final TableWriter tableWriter;
+    private final SchemaCatalog schemaCatalog;
+    private final LookupRegistry lookupRegistry;
 
     public List<DataSource> findAll() {
         return dataSourceRepository.findAll();
@@ -25,20 +30,27 @@ public class DataSourceService {
     }
 
     public DataSource save(DataSource dataSource) {
-        return dataSourceRepository.save(dataSource);
+        DataSource saved = dataSourceRepository.save(dataSource);
+        poolRegistry.evict(saved.getId());
+        tableWriter.evict(saved.getId());
+        schemaCatalog.invalidate(saved.getId());
+        lookupRegistry.invalidate(saved.getId());
+        return saved;
     }
 
     public void deleteById(Long id) {
         dataSourceRepository.deleteById(id);
+        poolRegistry.evict(id);
+        tableWriter.evict(id);
+        schemaCatalog.invalidate(id);
+        lookupRegistry.invalidate(id);
     }
 
     public List<Map<String, Object>> previewSql(Long dataSourceId, String sql) {
         DataSource ds = findById(dataSourceId);
-        String url = String.format("jdbc:mysql://%s:%d/%s?useSSL=false&serverTimezone=UTC",
-                ds.getHost(), ds.getPort(), ds.getDatabaseName());
         
         List<Map<String, Object>> results = new ArrayList<>();
-        try (Connection conn = DriverManager.getConnection(url, ds.getUsername(), ds.getPassword());
+        try (Connection conn = poolRegistry.getConnection(ds);
              Statement stmt = conn.createStatement()) {
             
             // Limit to 10 rows for preview
@@ -67,11 +79,9 @@ public class DataSourceService {
 
     public List<String> getColumns(Long dataSourceId, String sql) {
         DataSource ds = findById(dataSourceId);
-        String url = String.format("jdbc:mysql://%s:%d/%s?useSSL=false&serverTimezone=UTC",
-                ds.getHost(), ds.getPort(), ds.getDatabaseName());
         
         List<String> columns = new ArrayList<>();
-        try (Connection conn = DriverManager.getConnection(url, ds.getUsername(), ds.getPassword());
+        try (Connection conn = poolRegistry.getConnection(ds);
              Statement stmt = conn.createStatement()) {
             
             String schemaSql = sql.trim();
@@ -108,37 +118,25 @@ public class DataSourceService {
 
     public List<Map<String, Object>> getTableColumns(Long dataSourceId, String tableName) {
         DataSource ds = findById(dataSourceId);
-        String url = String.format("jdbc:mysql://%s:%d/%s?useSSL=false&serverTimezone=UTC&allowPublicKeyRetrieval=true",
-                ds.getHost(), ds.getPort(), ds.getDatabaseName());
         
         List<Map<String, Object>> columns = new ArrayList<>();
-        try (Connection conn = DriverManager.getConnection(url, ds.getUsername(), ds.getPassword())) {
-            DatabaseMetaData metaData = conn.getMetaData();
-            
-            // Get Primary Keys
-            Map<String, Boolean> primaryKeys = new HashMap<>();
-            try (ResultSet pks = metaData.getPrimaryKeys(null, null, tableName)) {
-                while (pks.next()) {
-                    primaryKeys.put(pks.getString("COLUMN_NAME"), true);
-                }
+        try {
+            Optional<SchemaCatalog.TableInfo> table = schemaCatalog.getTable(ds, tableName);
+            if (table.isEmpty()) {
+                return columns;
             }
-            
-            // Get Columns
-            try (ResultSet rs = metaData.getColumns(null, null, tableName, null)) {
-                while (rs.next()) {
-                    Map<String, Object> column = new HashMap<>();
-                    String name = rs.getString("COLUMN_NAME");
-                    column.put("name", name);
-                    String type = rs.getString("TYPE_NAME");
-                    int size = rs.getInt("COLUMN_SIZE");
-                    if (type.equalsIgnoreCase("VARCHAR") || type.equalsIgnoreCase("CHAR")) {
-                        type = type + "(" + size + ")";
-                    }
-                    column.put("type", type);
-                    column.put("comment", rs.getString("REMARKS"));
-                    column.put("isPk", primaryKeys.getOrDefault(name, false));
-                    columns.add(column);
+            List<String> primaryKeys = table.get().getPrimaryKey();
+            for (SchemaCatalog.ColumnInfo info : table.get().getColumns()) {
+                Map<String, Object> column = new HashMap<>();
+                column.put("name", info.getName());
+                String type = info.getDataType();
+                if ((type.equals("VARCHAR") || type.equals("CHAR")) && info.getMaxLength() != null) {
+                    type = type + "(" + info.getMaxLength() + ")";
                 }
+                column.put("type", type);
+                column.put("comment", info.getComment());
+                column.put("isPk", primaryKeys.contains(info.getName()));
+                columns.add(column);
             }
         } catch (Exception e) {
             throw new RuntimeException("Failed to get table columns: " + e.getMessage(), e);
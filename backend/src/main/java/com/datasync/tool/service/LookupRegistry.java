@@ -0,0 +1,198 @@
+package com.datasync.tool.service;
+
+import com.datasync.tool.engine.Collation;
+import com.datasync.tool.engine.ExecutionPlan;
+import com.datasync.tool.engine.LookupTable;
+import com.datasync.tool.engine.RowBatch;
+import com.datasync.tool.engine.RowSchema;
+import com.datasync.tool.engine.SourceQuery;
+import com.datasync.tool.entity.DataSource;
+import com.datasync.tool.repository.DataSourceRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 维表缓存注册表：数据源、表、关联键、取值列和缓存配置都相同的维表关联节点共用一份缓存，跨任务、跨运行保留。
+ * 长时间未使用的缓存在打开其它维表时清理，数据源修改或删除后失效。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LookupRegistry {
+    // 读取维表时每批的行数
+    private static final int READ_CHUNK = 1024;
+
+    private final DataSourcePoolRegistry poolRegistry;
+    private final DataSourceRepository dataSourceRepository;
+
+    @Value("${datasync.lookup-cache.idle-seconds:1800}")
+    private long idleSeconds;
+
+    private final Map<String, Entry> tables = new ConcurrentHashMap<>();
+
+    private record Entry(Long dataSourceId, LookupTable table) {
+    }
+
+    /**
+     * 返回与执行计划的维表关联节点一一对应的缓存。
+     */
+    public List<LookupTable> open(ExecutionPlan plan) throws SQLException {
+        List<LookupTable> opened = new ArrayList<>();
+        if (plan.getLookupSteps().isEmpty()) {
+            return opened;
+        }
+        evictIdle();
+        for (ExecutionPlan.LookupStep step : plan.getLookupSteps()) {
+            Entry entry = tables.get(cacheKey(step));
+            if (entry == null) {
+                // 并发打开同一维表时只保留先放入的一份
+                Entry created = new Entry(step.getDataSourceId(), create(step));
+                entry = tables.putIfAbsent(cacheKey(step), created);
+                if (entry == null) entry = created;
+            }
+            opened.add(entry.table());
+        }
+        return opened;
+    }
+
+    public void invalidate(Long dataSourceId) {
+        tables.values().removeIf(e -> e.dataSourceId().equals(dataSourceId));
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(idleSeconds);
+        tables.entrySet().removeIf(e -> {
+            if (e.getValue().table().lastUsed() < cutoff) {
+                log.info("Drop idle lookup cache {}", e.getKey());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static String cacheKey(ExecutionPlan.LookupStep step) {
+        return (step.getDataSourceId() + "|" + step.getTableName() + "|" + step.getKeyColumn() + "|"
+                + String.join(",", step.getColumns()) + "|" + step.isPreload() + "|" + step.getMaxEntries() + "|"
+                + step.getTtlSeconds()).toLowerCase(Locale.ROOT);
+    }
+
+    private LookupTable create(ExecutionPlan.LookupStep step) throws SQLException {
+        DataSource ds = dataSourceRepository.findById(step.getDataSourceId())
+                .orElseThrow(() -> new RuntimeException("Data source not found"));
+        StringBuilder select = new StringBuilder("SELECT ").append(SourceQuery.quote(step.getKeyColumn()));
+        for (String column : step.getColumns()) {
+            select.append(", ").append(SourceQuery.quote(column));
+        }
+        select.append(" FROM ").append(SourceQuery.quote(step.getTableName()));
+        String baseSql = select.toString();
+
+        // 只取列定义，决定关联键是否按整数索引以及取值列的存储方式
+        RowSchema schema;
+        try (Connection conn = poolRegistry.getConnection(ds);
+             PreparedStatement ps = conn.prepareStatement(baseSql + " WHERE 1 = 0");
+             ResultSet rs = ps.executeQuery()) {
+            schema = RowSchema.fromMetaData(rs.getMetaData());
+        }
+        int[] valueIndexes = new int[step.getColumns().length];
+        for (int i = 0; i < valueIndexes.length; i++) {
+            valueIndexes[i] = i + 1;
+        }
+        RowSchema valueSchema = schema.project(valueIndexes, step.getColumns());
+        boolean numericKey = schema.kind(0) == RowSchema.ColumnKind.LONG;
+        Collation keyCollation = numericKey ? Collation.BINARY : keyCollation(ds, step);
+
+        LookupTable.Loader loader = new LookupTable.Loader() {
+            @Override
+            public boolean loadAll(int limit, LookupTable.RowSink sink) throws SQLException {
+                try (Connection conn = poolRegistry.getConnection(ds);
+                     PreparedStatement ps = conn.prepareStatement(baseSql,
+                             ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    // 多读一行用于判断是否已读完整张表
+                    ps.setMaxRows(limit + 1);
+                    ps.setFetchSize(Integer.MIN_VALUE);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        return read(rs, schema, limit, sink) <= limit;
+                    }
+                }
+            }
+
+            @Override
+            public void loadKeys(List<Object> keys, LookupTable.RowSink sink) throws SQLException {
+                StringBuilder in = new StringBuilder(SourceQuery.quote(step.getKeyColumn())).append(" IN (");
+                for (int i = 0; i < keys.size(); i++) {
+                    in.append(i == 0 ? "?" : ", ?");
+                }
+                SourceQuery query = SourceQuery.of(baseSql).where(in.append(")").toString(), keys.toArray());
+                try (Connection conn = poolRegistry.getConnection(ds);
+                     PreparedStatement ps = conn.prepareStatement(query.toSql())) {
+                    query.bind(ps);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        read(rs, schema, Integer.MAX_VALUE, sink);
+                    }
+                }
+            }
+        };
+        log.info("Open lookup cache on {}.{} by {} ({} mode, max {} entries, ttl {}s)", ds.getName(),
+                step.getTableName(), step.getKeyColumn(), step.isPreload() ? "preload" : "lazy",
+                step.getMaxEntries(), step.getTtlSeconds());
+        return new LookupTable(valueSchema, numericKey, keyCollation, step.getMaxEntries(),
+                TimeUnit.SECONDS.toMillis(step.getTtlSeconds()), step.isPreload(), loader);
+    }
+
+    /**
+     * 关联键列的排序规则，IN 查询按它匹配键，缓存按它规范化键。
+     */
+    private Collation keyCollation(DataSource ds, ExecutionPlan.LookupStep step) throws SQLException {
+        try (Connection conn = poolRegistry.getConnection(ds);
+             PreparedStatement ps = conn.prepareStatement("SELECT COLLATION_NAME FROM information_schema.COLUMNS "
+                     + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?")) {
+            ps.setString(1, step.getTableName());
+            ps.setString(2, step.getKeyColumn());
+            try (ResultSet rs = ps.executeQuery()) {
+                return Collation.of(rs.next() ? rs.getString(1) : null);
+            }
+        }
+    }
+
+    /**
+     * 按列定义读取结果集，最多交给 sink limit 行，返回读到的行数（可能多出一行）。
+     */
+    private static long read(ResultSet rs, RowSchema schema, int limit, LookupTable.RowSink sink) throws SQLException {
+        long rows = 0;
+        RowBatch batch = new RowBatch(schema, READ_CHUNK);
+        while (rs.next()) {
+            if (++rows > limit) break;
+            batch.appendFrom(rs);
+            if (batch.isFull()) {
+                emit(batch, sink);
+                batch = new RowBatch(schema, READ_CHUNK);
+            }
+        }
+        emit(batch, sink);
+        return rows;
+    }
+
+    private static void emit(RowBatch batch, LookupTable.RowSink sink) {
+        int width = batch.columnCount() - 1;
+        for (int row = 0; row < batch.size(); row++) {
+            Object[] values = new Object[width];
+            for (int i = 0; i < width; i++) {
+                values[i] = batch.getObject(i + 1, row);
+            }
+            sink.accept(batch.getObject(0, row), values);
+        }
+    }
+}
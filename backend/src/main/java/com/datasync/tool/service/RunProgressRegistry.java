@@ -0,0 +1,255 @@
+package com.datasync.tool.service;
+
+import com.datasync.tool.entity.SyncLog;
+import com.datasync.tool.repository.SyncLogRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 运行中任务的实时进度，按 SyncLog id 保存在内存中。写入线程只更新内存计数，
+ * 由后台线程按固定间隔把有变化的计数和检查点合并写回 sync_log，运行结束时随 SyncLog 一起保存。
+ * 监控接口直接读取这里的实时值。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RunProgressRegistry {
+    // 速率的指数平滑系数
+    private static final double RATE_SMOOTHING = 0.5;
+
+    private final SyncLogRepository syncLogRepository;
+
+    @Value("${datasync.progress.flush-interval-ms:2000}")
+    private long flushIntervalMs;
+
+    private final Map<Long, RunProgress> runs = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "run-progress-flusher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    public void init() {
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+        flush();
+    }
+
+    public RunProgress start(SyncLog syncLog) {
+        RunProgress progress = new RunProgress(syncLog.getId(), syncLog.getTaskId(), syncLog.getStartTime());
+        runs.put(syncLog.getId(), progress);
+        return progress;
+    }
+
+    /**
+     * 运行结束、保存最终 SyncLog 之前调用：移除内存中的记录并等待进行中的刷新完成，
+     * 之后不会再有旧的计数覆盖最终结果。
+     */
+    public void finish(Long syncLogId) {
+        RunProgress progress = runs.remove(syncLogId);
+        if (progress != null) {
+            synchronized (progress) {
+                progress.closed = true;
+            }
+        }
+    }
+
+    public Optional<RunProgress> find(Long syncLogId) {
+        return Optional.ofNullable(runs.get(syncLogId));
+    }
+
+    /**
+     * 该任务最近开始的一次运行。
+     */
+    public Optional<RunProgress> findLatestByTask(Long taskId) {
+        return runs.values().stream()
+                .filter(p -> p.taskId.equals(taskId))
+                .max((a, b) -> Long.compare(a.syncLogId, b.syncLogId));
+    }
+
+    /**
+     * 用内存中的实时计数覆盖运行中 SyncLog 的进度字段（不保存）。
+     */
+    public SyncLog overlay(SyncLog syncLog) {
+        if (syncLog != null && "RUNNING".equals(syncLog.getResult())) {
+            find(syncLog.getId()).ifPresent(p -> {
+                syncLog.setProcessedCount(clampCount(p.getProcessed()));
+                if (p.total != null) {
+                    syncLog.setTotalCount(p.total);
+                    syncLog.setTotalEstimated(p.totalEstimated);
+                }
+            });
+        }
+        return syncLog;
+    }
+
+    /**
+     * sync_log 的计数列为 INT，超出范围的行数截断为 Integer.MAX_VALUE，不回绕成负数。
+     */
+    public static int clampCount(long count) {
+        return (int) Math.min(Integer.MAX_VALUE, count);
+    }
+
+    public List<Map<String, Object>> snapshot() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (RunProgress progress : runs.values()) {
+            list.add(progress.toMap());
+        }
+        return list;
+    }
+
+    private void flush() {
+        long now = System.nanoTime();
+        for (RunProgress progress : runs.values()) {
+            synchronized (progress) {
+                if (!progress.closed) {
+                    flush(progress, now);
+                }
+            }
+        }
+    }
+
+    private void flush(RunProgress progress, long now) {
+        try {
+            progress.sampleRate(now);
+            long processed = progress.getProcessed();
+            if (processed != progress.flushedProcessed) {
+                syncLogRepository.updateProcessedCount(progress.syncLogId, clampCount(processed));
+                progress.flushedProcessed = processed;
+            }
+            Integer total = progress.total;
+            if (total != null && !total.equals(progress.flushedTotal)) {
+                syncLogRepository.updateTotalCount(progress.syncLogId, total);
+                progress.flushedTotal = total;
+            }
+            Supplier<String> checkpoint = progress.checkpoint;
+            if (checkpoint != null) {
+                String value = checkpoint.get();
+                if (value != null && !value.equals(progress.flushedCheckpoint)) {
+                    syncLogRepository.updateCheckpoint(progress.syncLogId, value);
+                    progress.flushedCheckpoint = value;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to flush progress of log {}: {}", progress.syncLogId, e.getMessage());
+        }
+    }
+
+    @Getter
+    public static class RunProgress {
+        private final Long syncLogId;
+        private final Long taskId;
+        private final LocalDateTime startTime;
+        private final AtomicLong processedCounter = new AtomicLong();
+        private volatile Integer total;
+        private volatile Boolean totalEstimated;
+        private volatile String stage = "PREPARING";
+        private volatile Supplier<Map<String, Object>> stageMetrics;
+        private volatile double rowsPerSecond;
+        private volatile Supplier<String> checkpoint;
+
+        // 以下字段只在持有该对象锁时访问
+        private boolean closed;
+        private long flushedProcessed;
+        private Integer flushedTotal;
+        private String flushedCheckpoint;
+        private long lastSampleNanos = System.nanoTime();
+        private long lastSampleProcessed;
+
+        RunProgress(Long syncLogId, Long taskId, LocalDateTime startTime) {
+            this.syncLogId = syncLogId;
+            this.taskId = taskId;
+            this.startTime = startTime;
+        }
+
+        public long getProcessed() {
+            return processedCounter.get();
+        }
+
+        public void addProcessed(long rows) {
+            processedCounter.addAndGet(rows);
+        }
+
+        public void setProcessed(long rows) {
+            processedCounter.set(rows);
+        }
+
+        public void setTotal(Integer total, boolean estimated) {
+            this.totalEstimated = estimated;
+            this.total = total;
+        }
+
+        public void setStage(String stage) {
+            this.stage = stage;
+        }
+
+        /**
+         * 运行阶段的实时指标（如管道各阶段的队列和耗时），查询时才计算。
+         */
+        public void setStageMetrics(Supplier<Map<String, Object>> stageMetrics) {
+            this.stageMetrics = stageMetrics;
+        }
+
+        /**
+         * 断点续传的检查点（JSON），随进度一起定时写库。
+         */
+        public void setCheckpoint(Supplier<String> checkpoint) {
+            this.checkpoint = checkpoint;
+        }
+
+        private void sampleRate(long now) {
+            long processed = getProcessed();
+            double seconds = (now - lastSampleNanos) / 1e9;
+            if (seconds <= 0) return;
+            double current = (processed - lastSampleProcessed) / seconds;
+            rowsPerSecond = RATE_SMOOTHING * current + (1 - RATE_SMOOTHING) * rowsPerSecond;
+            lastSampleNanos = now;
+            lastSampleProcessed = processed;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("syncLogId", syncLogId);
+            m.put("taskId", taskId);
+            m.put("startTime", startTime != null ? startTime.toString() : null);
+            m.put("stage", stage);
+            m.put("processedCount", getProcessed());
+            m.put("totalCount", total);
+            m.put("totalEstimated", totalEstimated);
+            m.put("rowsPerSecond", Math.round(rowsPerSecond));
+            Supplier<Map<String, Object>> metrics = stageMetrics;
+            if (metrics != null) {
+                try {
+                    m.put("stages", metrics.get());
+                } catch (Exception e) {
+                    // 指标只用于展示，读取失败时忽略
+                }
+            }
+            return m;
+        }
+    }
+}
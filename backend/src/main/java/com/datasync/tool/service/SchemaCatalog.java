@@ -0,0 +1,170 @@
+package com.datasync.tool.service;
+
+import com.datasync.tool.entity.DataSource;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按数据源缓存库中的表结构（表、列、主键、索引），由一次 information_schema 查询加载。
+ * 本工具执行 DDL 后调用 {@link #invalidate(Long)}；外部修改在 TTL 到期后生效，查不到的表会提前重新加载一次。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SchemaCatalog {
+    // 查不到表时，快照超过这个时间才重新加载，避免不存在的表反复触发全库查询
+    private static final long MISS_RELOAD_MS = 5000;
+
+    private static final String LOAD_SQL = "SELECT c.TABLE_NAME, t.TABLE_TYPE, c.COLUMN_NAME, c.DATA_TYPE, "
+            + "c.CHARACTER_MAXIMUM_LENGTH, c.COLUMN_COMMENT, s.INDEX_NAME, s.NON_UNIQUE "
+            + "FROM information_schema.COLUMNS c "
+            + "JOIN information_schema.TABLES t ON t.TABLE_SCHEMA = c.TABLE_SCHEMA AND t.TABLE_NAME = c.TABLE_NAME "
+            + "LEFT JOIN information_schema.STATISTICS s ON s.TABLE_SCHEMA = c.TABLE_SCHEMA "
+            + "AND s.TABLE_NAME = c.TABLE_NAME AND s.COLUMN_NAME = c.COLUMN_NAME "
+            + "WHERE c.TABLE_SCHEMA = DATABASE() "
+            + "ORDER BY c.TABLE_NAME, c.ORDINAL_POSITION, s.INDEX_NAME, s.SEQ_IN_INDEX";
+
+    private final DataSourcePoolRegistry poolRegistry;
+
+    @Value("${datasync.schema-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private final Map<Long, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<Long, ReentrantLock> loadLocks = new ConcurrentHashMap<>();
+
+    private record Snapshot(long loadedAt, Map<String, TableInfo> tables) {
+    }
+
+    public Optional<TableInfo> getTable(DataSource ds, String tableName) throws SQLException {
+        String key = tableName.toLowerCase(Locale.ROOT);
+        Snapshot snapshot = getSnapshot(ds, false);
+        TableInfo table = snapshot.tables().get(key);
+        if (table == null && System.currentTimeMillis() - snapshot.loadedAt() > MISS_RELOAD_MS) {
+            table = getSnapshot(ds, true).tables().get(key);
+        }
+        return Optional.ofNullable(table);
+    }
+
+    public void invalidate(Long dataSourceId) {
+        snapshots.remove(dataSourceId);
+    }
+
+    private Snapshot getSnapshot(DataSource ds, boolean reload) throws SQLException {
+        Snapshot snapshot = snapshots.get(ds.getId());
+        if (!reload && isFresh(snapshot)) {
+            return snapshot;
+        }
+        ReentrantLock lock = loadLocks.computeIfAbsent(ds.getId(), id -> new ReentrantLock());
+        lock.lock();
+        try {
+            // 等锁期间可能已被其它线程加载
+            Snapshot current = snapshots.get(ds.getId());
+            if (current != null && current != snapshot && isFresh(current)) {
+                return current;
+            }
+            Snapshot loaded = load(ds);
+            snapshots.put(ds.getId(), loaded);
+            return loaded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isFresh(Snapshot snapshot) {
+        return snapshot != null
+                && System.currentTimeMillis() - snapshot.loadedAt() < TimeUnit.SECONDS.toMillis(ttlSeconds);
+    }
+
+    private Snapshot load(DataSource ds) throws SQLException {
+        long start = System.currentTimeMillis();
+        Map<String, TableInfo> tables = new HashMap<>();
+        try (Connection conn = poolRegistry.getConnection(ds);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(LOAD_SQL)) {
+            while (rs.next()) {
+                String tableName = rs.getString("TABLE_NAME");
+                String tableType = rs.getString("TABLE_TYPE");
+                TableInfo table = tables.computeIfAbsent(tableName.toLowerCase(Locale.ROOT),
+                        k -> new TableInfo(tableName, tableType));
+                String columnName = rs.getString("COLUMN_NAME");
+                // 同一列属于多个索引时会出现多行
+                if (table.findColumn(columnName) == null) {
+                    long length = rs.getLong("CHARACTER_MAXIMUM_LENGTH");
+                    Long maxLength = rs.wasNull() ? null : length;
+                    table.columns.add(new ColumnInfo(columnName, rs.getString("DATA_TYPE").toUpperCase(Locale.ROOT),
+                            maxLength, rs.getString("COLUMN_COMMENT")));
+                }
+                String indexName = rs.getString("INDEX_NAME");
+                if (indexName != null) {
+                    if ("PRIMARY".equals(indexName)) {
+                        table.primaryKey.add(columnName);
+                    }
+                    table.indexes.computeIfAbsent(indexName, k -> new ArrayList<>()).add(columnName);
+                    if (rs.getInt("NON_UNIQUE") == 0) {
+                        table.uniqueIndexes.add(indexName);
+                    }
+                }
+            }
+        }
+        log.info("Loaded schema catalog of data source {}: {} tables in {}ms", ds.getId(), tables.size(),
+                System.currentTimeMillis() - start);
+        return new Snapshot(System.currentTimeMillis(), tables);
+    }
+
+    @Getter
+    public static class TableInfo {
+        private final String name;
+        private final String tableType;
+        private final List<ColumnInfo> columns = new ArrayList<>();
+        private final List<String> primaryKey = new ArrayList<>();
+        private final Map<String, List<String>> indexes = new LinkedHashMap<>();
+        private final Set<String> uniqueIndexes = new LinkedHashSet<>();
+
+        TableInfo(String name, String tableType) {
+            this.name = name;
+            this.tableType = tableType;
+        }
+
+        public boolean isBaseTable() {
+            return "BASE TABLE".equalsIgnoreCase(tableType);
+        }
+
+        public ColumnInfo findColumn(String columnName) {
+            for (ColumnInfo column : columns) {
+                if (column.getName().equalsIgnoreCase(columnName)) {
+                    return column;
+                }
+            }
+            return null;
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class ColumnInfo {
+        private final String name;
+        private final String dataType;
+        private final Long maxLength;
+        private final String comment;
+    }
+}
@@ -0,0 +1,194 @@
+package com.datasync.tool.service;
+
+import com.datasync.tool.engine.runner.RunScope;
+import com.datasync.tool.entity.DataSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 同步后删除源数据的清理阶段：写入线程在目标事务提交后投递已提交批次的主键，由独立的清理线程批量删除。
+ * 连续的整数主键合并为 BETWEEN 范围删除，其余按 IN 分块删除；并发数和每秒删除行数可限制，避免清理压垮源库。
+ */
+@Slf4j
+public class SourcePurger {
+    // 连续主键达到该长度时改用范围删除
+    private static final int MIN_RANGE_LENGTH = 16;
+    private static final List<Object> END = List.of();
+
+    private final TableWriter tableWriter;
+    private final DataSourcePoolRegistry poolRegistry;
+    private final DataSource sourceDs;
+    private final String tableName;
+    private final String keyColumn;
+    private final int concurrency;
+    private final long maxRowsPerSecond;
+    private final BlockingQueue<List<Object>> queue;
+    private final List<Future<?>> workers = new ArrayList<>();
+
+    private final AtomicLong purgedRows = new AtomicLong();
+    private final AtomicLong rangeStatements = new AtomicLong();
+    private final AtomicLong inStatements = new AtomicLong();
+    private final AtomicLong throttledMs = new AtomicLong();
+    private final AtomicLong purgeNanos = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private volatile Throwable failure;
+    private volatile boolean aborted;
+
+    public SourcePurger(TableWriter tableWriter, DataSourcePoolRegistry poolRegistry, DataSource sourceDs,
+                        String tableName, String keyColumn, int concurrency, long maxRowsPerSecond, RunScope scope) {
+        this.tableWriter = tableWriter;
+        this.poolRegistry = poolRegistry;
+        this.sourceDs = sourceDs;
+        this.tableName = tableName;
+        this.keyColumn = keyColumn;
+        this.concurrency = Math.max(1, concurrency);
+        this.maxRowsPerSecond = maxRowsPerSecond;
+        this.queue = new ArrayBlockingQueue<>(this.concurrency * 4);
+        for (int i = 0; i < this.concurrency; i++) {
+            workers.add(scope.fork(this::workerLoop));
+        }
+    }
+
+    /**
+     * 投递一个已提交批次的主键，队列满时阻塞（对写入形成背压）。
+     */
+    public void submit(List<Object> keys) throws InterruptedException {
+        if (failure != null) {
+            throw new RuntimeException("Source purge failed: " + failure.getMessage(), failure);
+        }
+        if (!keys.isEmpty() && !aborted) {
+            queue.put(keys);
+        }
+    }
+
+    /**
+     * 等待已投递的主键全部删除完毕，清理失败时抛出异常。
+     */
+    public void finish() throws InterruptedException {
+        for (int i = 0; i < concurrency; i++) {
+            queue.put(END);
+        }
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (ExecutionException | CancellationException e) {
+                // 失败原因已记录在 failure 中，取消由运行本身处理
+            }
+        }
+        if (failure != null) {
+            throw new RuntimeException("Source purge failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * 丢弃尚未删除的主键：这些行仍留在源表，下次同步会再次写入目标表。
+     */
+    public void abort() {
+        aborted = true;
+        queue.clear();
+        for (int i = 0; i < concurrency; i++) {
+            queue.offer(END);
+        }
+    }
+
+    private void workerLoop() {
+        Connection conn = null;
+        try {
+            List<Object> keys;
+            while ((keys = queue.take()) != END) {
+                // 失败或中止后继续取出队列中的主键，避免写入线程阻塞在 submit 上
+                if (aborted || failure != null) continue;
+                try {
+                    if (conn == null) {
+                        conn = poolRegistry.getConnection(sourceDs);
+                    }
+                    long start = System.nanoTime();
+                    purge(conn, keys);
+                    purgeNanos.addAndGet(System.nanoTime() - start);
+                } catch (Exception e) {
+                    log.error("Failed to purge source rows from {}", tableName, e);
+                    failure = e;
+                    continue;
+                }
+                throttle(keys.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    log.warn("Failed to close purge connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void purge(Connection conn, List<Object> keys) throws SQLException {
+        List<Object> scattered = new ArrayList<>();
+        if (keys.stream().allMatch(k -> k instanceof Long || k instanceof Integer)) {
+            List<Long> sorted = keys.stream().map(k -> ((Number) k).longValue()).sorted(Comparator.naturalOrder()).toList();
+            int runStart = 0;
+            for (int i = 1; i <= sorted.size(); i++) {
+                if (i < sorted.size() && sorted.get(i) <= sorted.get(i - 1) + 1) continue;
+                // [runStart, i) 是一段连续主键，区间内的行都已同步，可以整段删除
+                if (i - runStart >= MIN_RANGE_LENGTH) {
+                    purgedRows.addAndGet(tableWriter.deleteKeyRange(conn, tableName, keyColumn,
+                            sorted.get(runStart), sorted.get(i - 1)));
+                    rangeStatements.incrementAndGet();
+                } else {
+                    scattered.addAll(sorted.subList(runStart, i));
+                }
+                runStart = i;
+            }
+        } else {
+            scattered.addAll(keys);
+        }
+        if (!scattered.isEmpty()) {
+            purgedRows.addAndGet(tableWriter.deleteByKeys(conn, tableName, keyColumn, scattered));
+            inStatements.addAndGet((scattered.size() + TableWriter.DELETE_CHUNK_SIZE - 1) / TableWriter.DELETE_CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * 按已删除行数限速：所有清理线程合计不超过 maxRowsPerSecond。
+     */
+    private void throttle(int rows) throws InterruptedException {
+        if (maxRowsPerSecond <= 0) return;
+        long expectedMs = purgedRows.get() * 1000 / maxRowsPerSecond;
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (expectedMs > elapsedMs) {
+            long sleep = Math.min(expectedMs - elapsedMs, rows * 1000L / maxRowsPerSecond + 1);
+            throttledMs.addAndGet(sleep);
+            Thread.sleep(sleep);
+        }
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("tableName", tableName);
+        m.put("purgedRows", purgedRows.get());
+        m.put("rangeStatements", rangeStatements.get());
+        m.put("inStatements", inStatements.get());
+        m.put("purgeMs", TimeUnit.NANOSECONDS.toMillis(purgeNanos.get()));
+        m.put("throttledMs", throttledMs.get());
+        m.put("concurrency", concurrency);
+        m.put("maxRowsPerSecond", maxRowsPerSecond);
+        return m;
+    }
+}
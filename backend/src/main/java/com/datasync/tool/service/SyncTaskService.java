@@ -1,7 +1,9 @@
 package com.datasync.tool.service;
 
+import com.datasync.tool.engine.ExecutionPlanCompiler;
 import com.datasync.tool.entity.SyncTask;
 import com.datasync.tool.repository.SyncTaskRepository;
+import com.datasync.tool.repository.SyncWatermarkRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -12,6 +14,8 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class SyncTaskService {
     private final SyncTaskRepository syncTaskRepository;
+    private final ExecutionPlanCompiler planCompiler;
+    private final SyncWatermarkRepository watermarkRepository;
 
     public List<SyncTask> findAll() {
         return syncTaskRepository.findAll();
@@ -27,5 +31,7 @@ public class SyncTaskService {
 
     public void deleteById(Long id) {
         syncTaskRepository.deleteById(id);
+        watermarkRepository.deleteById(id);
+        planCompiler.invalidate(id);
     }
 }
@@ -0,0 +1,745 @@
+package com.datasync.tool.service;
+
+import com.datasync.tool.engine.BulkLoadEncoder;
+import com.datasync.tool.engine.ExecutionPlan;
+import com.datasync.tool.engine.ExecutionPlanCompiler;
+import com.datasync.tool.engine.InsertTemplate;
+import com.datasync.tool.engine.RowBatch;
+import com.datasync.tool.engine.ValueConverter;
+import com.datasync.tool.entity.DataSource;
+import com.mysql.cj.jdbc.JdbcStatement;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * 对 MySQL 表的写操作：自动建表/补列、批量写入和按主键批量删除，全量同步与变更日志同步共用。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TableWriter {
+    static final int DELETE_CHUNK_SIZE = 1000;
+    // 目标库不支持 LOAD DATA LOCAL 时，在这段时间内直接使用 INSERT
+    private static final long BULK_LOAD_RETRY_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final DataSourcePoolRegistry poolRegistry;
+    private final SchemaCatalog schemaCatalog;
+
+    private static final int MAX_RETRIES = 5;
+    // 预编译语句的占位符上限
+    private static final int MAX_PLACEHOLDERS = 65535;
+    // 语句大小按估算值计算，只使用 max_allowed_packet 的一部分留出余量
+    private static final double PACKET_FILL_RATIO = 0.75;
+    private static final int DEFAULT_MAX_ALLOWED_PACKET = 4 * 1024 * 1024;
+
+    private final Map<Long, Long> bulkLoadDisabledUntil = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> maxAllowedPacket = new ConcurrentHashMap<>();
+
+    /**
+     * 确保目标表存在且包含所有输出字段。表结构取自 {@link SchemaCatalog} 缓存，结构完整时不访问目标库。
+     */
+    public void ensureTargetTable(DataSource ds, String tableName, List<ExecutionPlan.OutputField> fields, String primaryKey) throws SQLException {
+        Optional<SchemaCatalog.TableInfo> existing = schemaCatalog.getTable(ds, tableName).filter(SchemaCatalog.TableInfo::isBaseTable);
+        if (existing.isPresent()) {
+            SchemaCatalog.TableInfo table = existing.get();
+            List<ExecutionPlan.OutputField> missing = fields.stream()
+                    .filter(f -> table.findColumn(f.getName()) == null)
+                    .toList();
+            boolean needsPk = primaryKey != null && !primaryKey.isEmpty() && table.getPrimaryKey().isEmpty();
+            if (missing.isEmpty() && !needsPk) {
+                return;
+            }
+            try (Connection conn = poolRegistry.getConnection(ds)) {
+                for (ExecutionPlan.OutputField field : missing) {
+                    String colName = field.getName();
+                    String commentClause = "";
+                    String comment = field.getComment();
+                    if (comment != null && !comment.isEmpty()) {
+                        commentClause = String.format(" COMMENT '%s'", comment.replace("'", "''"));
+                    }
+
+                    String sql = String.format("ALTER TABLE `%s` ADD COLUMN `%s` %s%s", 
+                            tableName, colName, sanitizeType(field.getType()), commentClause);
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute(sql);
+                    }
+                    log.info("Added column {} to table {}", colName, tableName);
+                }
+
+                // IMPORTANT: Ensure Primary Key exists for Upsert to work
+                if (needsPk) {
+                    // If no primary key exists, try to add it
+                    try (Statement stmt = conn.createStatement()) {
+                        String addPkSql = String.format("ALTER TABLE `%s` ADD PRIMARY KEY (`%s`)", tableName, primaryKey);
+                        stmt.execute(addPkSql);
+                        log.info("Added primary key constraint on {} for table {}", primaryKey, tableName);
+                    } catch (SQLException e) {
+                        log.warn("Could not add primary key constraint: {}. Upsert might not work if no unique index exists.", e.getMessage());
+                    }
+                }
+            } finally {
+                schemaCatalog.invalidate(ds.getId());
+            }
+            return;
+        }
+
+        // Create Table
+        StringBuilder sql = new StringBuilder("CREATE TABLE `").append(tableName).append("` (");
+        
+        // If user specified a primary key that exists in the fields list, use it.
+        // Otherwise, if no 'id' field, add an auto-incrementing 'id'.
+        boolean pkFound = false;
+        if (primaryKey != null && !primaryKey.isEmpty()) {
+            pkFound = fields.stream().anyMatch(f -> primaryKey.equalsIgnoreCase(f.getName()));
+        }
+        
+        boolean hasIdField = fields.stream().anyMatch(f -> "id".equalsIgnoreCase(f.getName()));
+        
+        if (!pkFound && !hasIdField) {
+            sql.append("`id` INT AUTO_INCREMENT PRIMARY KEY");
+        }
+        
+        for (int i = 0; i < fields.size(); i++) {
+            ExecutionPlan.OutputField field = fields.get(i);
+            String name = field.getName();
+            String comment = field.getComment();
+            boolean isPk = field.isPk();
+            
+            // Handle comma
+            if (i > 0 || (!pkFound && !hasIdField)) {
+                sql.append(", ");
+            }
+            
+            sql.append("`").append(name).append("` ").append(sanitizeType(field.getType()));
+            
+            // If this is marked as PK in field config or matches the global primaryKey setting
+            if (isPk || name.equalsIgnoreCase(primaryKey)) {
+                sql.append(" PRIMARY KEY");
+            }
+
+            if (comment != null && !comment.isEmpty()) {
+                sql.append(" COMMENT '").append(comment.replace("'", "''")).append("'");
+            }
+        }
+        sql.append(")");
+        try (Connection conn = poolRegistry.getConnection(ds);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql.toString());
+        } finally {
+            schemaCatalog.invalidate(ds.getId());
+        }
+        log.info("Created table: {} with primary key: {}", tableName, primaryKey);
+    }
+
+    // 影子表、暂存表不经过 SchemaCatalog 查询，替换后目标表结构不变，这些 DDL 不需要使缓存失效
+
+    /**
+     * 重建 OVERWRITE_SWAP 的影子表（CREATE TABLE ... LIKE 目标表）。deferIndexes 时先删除影子表的非唯一二级索引，
+     * 返回需要在加载完成后补建的索引定义；唯一索引保留，冲突检测依赖它们。
+     */
+    public List<String> prepareShadowTable(DataSource ds, ExecutionPlan plan) throws SQLException {
+        String shadow = plan.getWriteTable();
+        List<String> deferred = new ArrayList<>();
+        try (Connection conn = poolRegistry.getConnection(ds);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS `" + shadow + "`");
+            stmt.execute("CREATE TABLE `" + shadow + "` LIKE `" + plan.getTargetTable() + "`");
+            if (plan.isDeferIndexes()) {
+                Map<String, String> indexes = secondaryIndexes(conn, shadow);
+                if (!indexes.isEmpty()) {
+                    List<String> drops = new ArrayList<>();
+                    for (Map.Entry<String, String> index : indexes.entrySet()) {
+                        drops.add("DROP INDEX `" + index.getKey() + "`");
+                        deferred.add("ADD " + index.getValue());
+                    }
+                    stmt.execute("ALTER TABLE `" + shadow + "` " + String.join(", ", drops));
+                }
+            }
+        }
+        log.info("Prepared shadow table {} for {} ({} indexes deferred)", shadow, plan.getTargetTable(), deferred.size());
+        return deferred;
+    }
+
+    /**
+     * 补建延后的索引，然后一条 RENAME TABLE 原子地把影子表换成目标表，再删除旧表。
+     */
+    public void swapShadowTable(DataSource ds, ExecutionPlan plan, List<String> deferredIndexes) throws SQLException {
+        String target = plan.getTargetTable();
+        String shadow = plan.getWriteTable();
+        String retired = ExecutionPlanCompiler.swapTableName(target, ExecutionPlanCompiler.RETIRED_SUFFIX);
+        try (Connection conn = poolRegistry.getConnection(ds);
+             Statement stmt = conn.createStatement()) {
+            if (!deferredIndexes.isEmpty()) {
+                long start = System.currentTimeMillis();
+                stmt.execute("ALTER TABLE `" + shadow + "` " + String.join(", ", deferredIndexes));
+                log.info("Rebuilt {} deferred indexes on {} in {}ms", deferredIndexes.size(), shadow,
+                        System.currentTimeMillis() - start);
+            }
+            stmt.execute("DROP TABLE IF EXISTS `" + retired + "`");
+            stmt.execute("RENAME TABLE `" + target + "` TO `" + retired + "`, `" + shadow + "` TO `" + target + "`");
+            stmt.execute("DROP TABLE `" + retired + "`");
+        }
+        log.info("Swapped shadow table {} into {}", shadow, target);
+    }
+
+    /**
+     * 删除影子表或暂存表。
+     */
+    public void dropWriteTable(DataSource ds, ExecutionPlan plan) {
+        try (Connection conn = poolRegistry.getConnection(ds);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS `" + plan.getWriteTable() + "`");
+        } catch (SQLException e) {
+            log.warn("Failed to drop table {}: {}", plan.getWriteTable(), e.getMessage());
+        }
+    }
+
+    /**
+     * 重建 STAGE_MERGE 的暂存表：结构与目标表相同，只保留主键，写入时没有二级索引维护和来自其它任务的锁竞争。
+     */
+    public void prepareStagingTable(DataSource ds, ExecutionPlan plan) throws SQLException {
+        String staging = plan.getWriteTable();
+        try (Connection conn = poolRegistry.getConnection(ds);
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS `" + staging + "`");
+            stmt.execute("CREATE TABLE `" + staging + "` LIKE `" + plan.getTargetTable() + "`");
+            List<String> drops = new ArrayList<>();
+            try (PreparedStatement ps = conn.prepareStatement("SELECT DISTINCT INDEX_NAME FROM information_schema.STATISTICS "
+                    + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND INDEX_NAME <> 'PRIMARY'")) {
+                ps.setString(1, staging);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        drops.add("DROP INDEX `" + rs.getString(1) + "`");
+                    }
+                }
+            }
+            if (!drops.isEmpty()) {
+                stmt.execute("ALTER TABLE `" + staging + "` " + String.join(", ", drops));
+            }
+        }
+        log.info("Prepared staging table {} for {}", staging, plan.getTargetTable());
+    }
+
+    /**
+     * 把暂存表按主键顺序分块合并到目标表（INSERT ... SELECT，冲突策略与普通写入相同），每块单独提交。
+     * deleteMissing 时再按目标表主键分块删除暂存表中不存在的行。每块开始前调用 beforeChunk（用于检查取消）。
+     */
+    public Map<String, Object> mergeStagingTable(DataSource ds, ExecutionPlan plan, Runnable beforeChunk) throws SQLException {
+        String target = plan.getTargetTable();
+        String staging = plan.getWriteTable();
+        String pk = "`" + plan.getPrimaryKey() + "`";
+        StringBuilder cols = new StringBuilder();
+        for (ExecutionPlan.OutputField field : plan.getOutputFields()) {
+            if (cols.length() > 0) cols.append(", ");
+            cols.append("`").append(field.getName()).append("`");
+        }
+        String verb = "IGNORE".equalsIgnoreCase(plan.getConflictStrategy()) ? "INSERT IGNORE INTO `" : "INSERT INTO `";
+        String update = "UPDATE".equalsIgnoreCase(plan.getConflictStrategy())
+                ? InsertTemplate.updateClause(plan.getOutputFields(), plan.getPrimaryKey()) : "";
+
+        long mergeStart = System.currentTimeMillis();
+        int chunks = 0;
+        long merged = 0;
+        long deleted = 0;
+        try (Connection conn = poolRegistry.getConnection(ds)) {
+            Object lo = null;
+            boolean more = true;
+            while (more) {
+                beforeChunk.run();
+                Object hi = chunkUpperBound(conn, staging, pk, lo, plan.getMergeChunkSize());
+                more = hi != null;
+                String sql = verb + target + "` (" + cols + ") SELECT " + cols + " FROM `" + staging + "` WHERE "
+                        + rangePredicate(pk, lo, hi) + " ORDER BY " + pk + update;
+                Object from = lo;
+                merged += executeWithRetry(() -> {
+                    try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                        bindRange(ps, from, hi);
+                        return ps.executeUpdate();
+                    }
+                });
+                chunks++;
+                lo = hi;
+            }
+            long mergeMs = System.currentTimeMillis() - mergeStart;
+
+            if (plan.isDeleteMissing()) {
+                lo = null;
+                more = true;
+                while (more) {
+                    beforeChunk.run();
+                    Object hi = chunkUpperBound(conn, target, pk, lo, plan.getMergeChunkSize());
+                    more = hi != null;
+                    String sql = "DELETE t FROM `" + target + "` t LEFT JOIN `" + staging + "` s ON s." + pk + " = t." + pk
+                            + " WHERE " + rangePredicate("t." + pk, lo, hi) + " AND s." + pk + " IS NULL";
+                    Object from = lo;
+                    deleted += executeWithRetry(() -> {
+                        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                            bindRange(ps, from, hi);
+                            return ps.executeUpdate();
+                        }
+                    });
+                    lo = hi;
+                }
+            }
+
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("mergeChunks", chunks);
+            m.put("mergeAffectedRows", merged);
+            m.put("mergeMs", mergeMs);
+            if (plan.isDeleteMissing()) {
+                m.put("deletedMissingRows", deleted);
+                m.put("deleteMissingMs", System.currentTimeMillis() - mergeStart - mergeMs);
+            }
+            log.info("Merged staging table {} into {}: {} chunks, {} affected rows, {} rows deleted",
+                    staging, target, chunks, merged, deleted);
+            return m;
+        }
+    }
+
+    /**
+     * 主键大于 lo 的第 chunkSize 个主键值，作为本块的上界（含）；剩余行不足一块时返回 null。
+     */
+    private Object chunkUpperBound(Connection conn, String table, String pk, Object lo, int chunkSize) throws SQLException {
+        String sql = "SELECT " + pk + " FROM `" + table + "`" + (lo != null ? " WHERE " + pk + " > ?" : "")
+                + " ORDER BY " + pk + " LIMIT 1 OFFSET " + (chunkSize - 1);
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (lo != null) ps.setObject(1, lo);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getObject(1) : null;
+            }
+        }
+    }
+
+    private static String rangePredicate(String pk, Object lo, Object hi) {
+        if (lo == null && hi == null) return "1 = 1";
+        if (lo == null) return pk + " <= ?";
+        if (hi == null) return pk + " > ?";
+        return pk + " > ? AND " + pk + " <= ?";
+    }
+
+    private static void bindRange(PreparedStatement ps, Object lo, Object hi) throws SQLException {
+        int index = 1;
+        if (lo != null) ps.setObject(index++, lo);
+        if (hi != null) ps.setObject(index, hi);
+    }
+
+    /**
+     * 读取表的非唯一二级索引，返回 索引名 -> 索引定义；函数索引无法按列重建，不在其中。
+     */
+    private Map<String, String> secondaryIndexes(Connection conn, String tableName) throws SQLException {
+        Map<String, List<String>> columns = new LinkedHashMap<>();
+        Map<String, String> types = new LinkedHashMap<>();
+        List<String> skipped = new ArrayList<>();
+        String sql = "SELECT INDEX_NAME, COLUMN_NAME, SUB_PART, COLLATION, INDEX_TYPE FROM information_schema.STATISTICS "
+                + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND NON_UNIQUE = 1 ORDER BY INDEX_NAME, SEQ_IN_INDEX";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, tableName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString("INDEX_NAME");
+                    String column = rs.getString("COLUMN_NAME");
+                    if (column == null) {
+                        skipped.add(name);
+                        continue;
+                    }
+                    StringBuilder part = new StringBuilder("`").append(column).append("`");
+                    int subPart = rs.getInt("SUB_PART");
+                    if (!rs.wasNull()) part.append("(").append(subPart).append(")");
+                    if ("D".equals(rs.getString("COLLATION"))) part.append(" DESC");
+                    columns.computeIfAbsent(name, k -> new ArrayList<>()).add(part.toString());
+                    types.put(name, rs.getString("INDEX_TYPE"));
+                }
+            }
+        }
+        Map<String, String> result = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> index : columns.entrySet()) {
+            if (skipped.contains(index.getKey())) continue;
+            String type = types.get(index.getKey());
+            String kind = "FULLTEXT".equals(type) || "SPATIAL".equals(type) ? type + " INDEX" : "INDEX";
+            result.put(index.getKey(), kind + " `" + index.getKey() + "` (" + String.join(", ", index.getValue()) + ")");
+        }
+        return result;
+    }
+
+    private String sanitizeType(String type) {
+        if (type == null || type.isEmpty()) return "VARCHAR(255)";
+        String upperType = type.toUpperCase();
+        if (upperType.equals("VARCHAR") || upperType.equals("STRING")) {
+            return "VARCHAR(255)";
+        }
+        if (upperType.equals("INT") || upperType.equals("INTEGER")) {
+            return "INT";
+        }
+        if (upperType.equals("DATETIME") || upperType.equals("TIMESTAMP")) {
+            return "DATETIME";
+        }
+        return type;
+    }
+
+    /**
+     * 按输出节点的写入方法写入一个批次：bulkLoad 为 true 时 conn 须来自 {@link DataSourcePoolRegistry#getBulkLoadConnection}，
+     * 目标库拒绝 LOAD DATA LOCAL 时自动回退为批量 INSERT。
+     * 返回写入过程中因锁等待超时或死锁重试的次数。
+     */
+    public int writeBatch(Connection conn, boolean bulkLoad, ExecutionPlan plan, ValueConverter[] converters,
+                          RowBatch data, WriteStats stats) throws SQLException {
+        if (bulkLoad) {
+            try {
+                return loadBatch(conn, plan, converters, data, stats);
+            } catch (SQLException e) {
+                if (!isLocalInfileRejected(e)) {
+                    throw e;
+                }
+                bulkLoadDisabledUntil.put(plan.getTargetDataSourceId(), System.currentTimeMillis() + BULK_LOAD_RETRY_MS);
+                log.warn("LOAD DATA LOCAL INFILE rejected by target data source {} ({}), falling back to INSERT",
+                        plan.getTargetDataSourceId(), e.getMessage());
+            }
+        }
+        return insertBatch(conn, plan, converters, data, stats);
+    }
+
+    public boolean isBulkLoadAvailable(Long dataSourceId) {
+        if (!poolRegistry.isLoadLocalInfileAllowed()) return false;
+        Long until = bulkLoadDisabledUntil.get(dataSourceId);
+        return until == null || until < System.currentTimeMillis();
+    }
+
+    /**
+     * 把批次编码为内存中的文本流，通过 Connector/J 的 setLocalInfileInputStream 交给 LOAD DATA LOCAL INFILE，不落临时文件。
+     * 按主键更新已有目标表时先载入会话级临时表再合并，临时表在批次结束时删除（TEMPORARY 表的建删不会隐式提交事务）。
+     */
+    private int loadBatch(Connection conn, ExecutionPlan plan, ValueConverter[] converters, RowBatch data,
+                          WriteStats stats) throws SQLException {
+        if (data.isEmpty()) return 0;
+        byte[] payload = BulkLoadEncoder.encode(data, converters);
+        long start = System.nanoTime();
+        AtomicInteger conflicts = new AtomicInteger();
+        int affected = executeWithRetry(() -> {
+            try (Statement stmt = conn.createStatement()) {
+                String staging = plan.getLoadStagingTable();
+                if (staging == null) {
+                    stmt.unwrap(JdbcStatement.class).setLocalInfileInputStream(new ByteArrayInputStream(payload));
+                    return stmt.executeUpdate(plan.getLoadDataSql());
+                }
+                stmt.execute("CREATE TEMPORARY TABLE `" + staging + "` LIKE `" + plan.getTargetTable() + "`");
+                try {
+                    stmt.unwrap(JdbcStatement.class).setLocalInfileInputStream(new ByteArrayInputStream(payload));
+                    stmt.executeUpdate(plan.getLoadDataSql());
+                    return stmt.executeUpdate(plan.getLoadMergeSql());
+                } finally {
+                    stmt.execute("DROP TEMPORARY TABLE IF EXISTS `" + staging + "`");
+                }
+            }
+        }, code -> {
+            conflicts.incrementAndGet();
+            if (stats != null) stats.recordLockConflict(code);
+        });
+        // LOCAL 模式下重复键只产生警告，冲突策略为 ERROR 时按 INSERT 的行为报错
+        if ("ERROR".equalsIgnoreCase(plan.getConflictStrategy()) && affected < data.size()) {
+            throw new RuntimeException(String.format("Bulk load into %s skipped %d of %d rows (duplicate key)",
+                    plan.getTargetTable(), data.size() - affected, data.size()));
+        }
+        if (stats != null) {
+            stats.record(data.size(), payload.length, System.nanoTime() - start);
+        }
+        return conflicts.get();
+    }
+
+    private boolean isLocalInfileRejected(SQLException e) {
+        // 1148: 服务端禁止该命令；3948: 服务端 local_infile 关闭；2068: 客户端拒绝
+        return e.getErrorCode() == 1148 || e.getErrorCode() == 3948 || e.getErrorCode() == 2068;
+    }
+
+    public int insertBatch(Connection conn, ExecutionPlan plan, ValueConverter[] converters, RowBatch data)
+            throws SQLException {
+        return insertBatch(conn, plan, converters, data, null);
+    }
+
+    /**
+     * 以多行 INSERT 写入批次，按 max_allowed_packet 估算的字节数而不是行数切分语句。
+     * 每条语句的行数取 2 的幂，同一列布局只会产生少数几种语句，便于服务端预编译语句在连接上复用。
+     * 返回因锁等待超时或死锁重试的次数。
+     */
+    public int insertBatch(Connection conn, ExecutionPlan plan, ValueConverter[] converters, RowBatch data,
+                           WriteStats stats) throws SQLException {
+        return insertBatch(conn, plan, converters, data, stats, MAX_RETRIES);
+    }
+
+    /**
+     * 在调用方的多语句事务中写入批次，锁等待超时和死锁不在语句级重试：死锁已回滚整个事务，
+     * 之前语句的写入随之丢失，只能由调用方回滚后整体重做。
+     */
+    public void insertBatchInTransaction(Connection conn, ExecutionPlan plan, ValueConverter[] converters,
+                                         RowBatch data) throws SQLException {
+        insertBatch(conn, plan, converters, data, null, 1);
+    }
+
+    private int insertBatch(Connection conn, ExecutionPlan plan, ValueConverter[] converters, RowBatch data,
+                            WriteStats stats, int maxRetries) throws SQLException {
+        if (data.isEmpty()) return 0;
+
+        InsertTemplate template = plan.getInsertTemplate();
+        long budget = (long) (getMaxAllowedPacket(conn, plan.getTargetDataSourceId()) * PACKET_FILL_RATIO);
+        int maxRows = Integer.highestOneBit(MAX_PLACEHOLDERS / Math.max(1, template.columnCount()));
+
+        int retryCount = 0;
+        Random random = new Random();
+        int from = 0;
+        while (from < data.size()) {
+            int rows = 0;
+            long bytes = template.fixedBytes();
+            while (from + rows < data.size() && rows < maxRows) {
+                long rowBytes = template.rowTupleBytes() + estimateRowBytes(data, from + rows, template.columnCount());
+                if (rows > 0 && bytes + rowBytes > budget) break;
+                bytes += rowBytes;
+                rows++;
+            }
+            // 单行超过预算时仍单独发送，由服务端报告 max_allowed_packet 错误
+            rows = Integer.highestOneBit(rows);
+            long start = System.nanoTime();
+            try {
+                executeInsert(conn, converters, template.sql(rows), data, from, rows);
+            } catch (SQLException e) {
+                if ((e.getErrorCode() != 1205 && e.getErrorCode() != 1213) || ++retryCount >= maxRetries) {
+                    throw e;
+                }
+                log.warn("Database lock issue (code: {}). Retrying {}/{}...", e.getErrorCode(), retryCount, maxRetries);
+                if (stats != null) {
+                    stats.recordLockConflict(e.getErrorCode());
+                }
+                try {
+                    // Wait with exponential backoff and jitter
+                    Thread.sleep((long) (Math.pow(2, retryCount) * 1000) + random.nextInt(1000));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                // 死锁会回滚整个事务，从批次开头重新写入；锁等待超时只回滚当前语句
+                if (e.getErrorCode() == 1213) {
+                    from = 0;
+                }
+                continue;
+            }
+            if (stats != null) {
+                stats.record(rows, bytes, System.nanoTime() - start);
+            }
+            from += rows;
+        }
+        return retryCount;
+    }
+
+    private void executeInsert(Connection conn, ValueConverter[] converters, String sql, RowBatch data, int from, int rows)
+            throws SQLException {
+        int colCount = converters.length;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (int row = from; row < from + rows; row++) {
+                for (int i = 0; i < colCount; i++) {
+                    // 转换器在解析投影时已按源列类型和目标字段类型选定
+                    converters[i].bind(pstmt, index++, data.column(i), row);
+                }
+            }
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static long estimateRowBytes(RowBatch data, int row, int colCount) {
+        long bytes = 0;
+        for (int i = 0; i < colCount; i++) {
+            RowBatch.Column column = data.column(i);
+            if (column.isNull(row)) {
+                bytes += 4;
+                continue;
+            }
+            switch (column.kind()) {
+                case LONG, DOUBLE -> bytes += 24;
+                default -> {
+                    Object value = column.getObject(row);
+                    if (value instanceof String str) {
+                        // UTF-8 最多 3 字节/字符，也覆盖了客户端转义后的长度
+                        bytes += str.length() * 3L + 8;
+                    } else if (value instanceof byte[] b) {
+                        bytes += b.length * 2L + 8;
+                    } else {
+                        bytes += 40;
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private int getMaxAllowedPacket(Connection conn, Long dataSourceId) {
+        return maxAllowedPacket.computeIfAbsent(dataSourceId, id -> {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT @@max_allowed_packet")) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            } catch (SQLException e) {
+                log.warn("Failed to read max_allowed_packet of data source {}: {}", id, e.getMessage());
+            }
+            return DEFAULT_MAX_ALLOWED_PACKET;
+        });
+    }
+
+    /**
+     * 数据源修改后重新读取 max_allowed_packet。
+     */
+    public void evict(Long dataSourceId) {
+        maxAllowedPacket.remove(dataSourceId);
+        bulkLoadDisabledUntil.remove(dataSourceId);
+    }
+
+    /**
+     * 按键批量删除，每条语句最多 IN 1000 个键，返回删除的行数。
+     */
+    public int deleteByKeys(Connection conn, String tableName, String keyColumn, List<Object> keys) throws SQLException {
+        return deleteByKeys(conn, tableName, keyColumn, keys, MAX_RETRIES);
+    }
+
+    /**
+     * 在调用方的多语句事务中按键删除，锁冲突直接抛出，由调用方回滚整个事务，见 {@link #insertBatchInTransaction}。
+     */
+    public int deleteByKeysInTransaction(Connection conn, String tableName, String keyColumn, List<Object> keys)
+            throws SQLException {
+        return deleteByKeys(conn, tableName, keyColumn, keys, 1);
+    }
+
+    private int deleteByKeys(Connection conn, String tableName, String keyColumn, List<Object> keys, int maxRetries)
+            throws SQLException {
+        int deleted = 0;
+        for (int from = 0; from < keys.size(); from += DELETE_CHUNK_SIZE) {
+            List<Object> chunk = keys.subList(from, Math.min(keys.size(), from + DELETE_CHUNK_SIZE));
+            StringBuilder sql = new StringBuilder("DELETE FROM `").append(tableName)
+                    .append("` WHERE `").append(keyColumn).append("` IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+            deleted += executeWithRetry(() -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        pstmt.setObject(i + 1, chunk.get(i));
+                    }
+                    return pstmt.executeUpdate();
+                }
+            }, code -> {
+            }, maxRetries);
+        }
+        return deleted;
+    }
+
+    /**
+     * 删除键在 [lo, hi] 区间内的行，返回删除的行数。
+     */
+    public int deleteKeyRange(Connection conn, String tableName, String keyColumn, Object lo, Object hi) throws SQLException {
+        String sql = "DELETE FROM `" + tableName + "` WHERE `" + keyColumn + "` BETWEEN ? AND ?";
+        return executeWithRetry(() -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setObject(1, lo);
+                pstmt.setObject(2, hi);
+                return pstmt.executeUpdate();
+            }
+        });
+    }
+
+    private interface SqlCall {
+        int call() throws SQLException;
+    }
+
+    /**
+     * 锁等待超时(1205)和死锁(1213)时按指数退避重试。
+     */
+    private int executeWithRetry(SqlCall call) throws SQLException {
+        return executeWithRetry(call, code -> {
+        });
+    }
+
+    private int executeWithRetry(SqlCall call, IntConsumer onLockConflict) throws SQLException {
+        return executeWithRetry(call, onLockConflict, MAX_RETRIES);
+    }
+
+    private int executeWithRetry(SqlCall call, IntConsumer onLockConflict, int maxRetries) throws SQLException {
+        int retryCount = 0;
+        Random random = new Random();
+        while (true) {
+            try {
+                return call.call();
+            } catch (SQLException e) {
+                if ((e.getErrorCode() != 1205 && e.getErrorCode() != 1213) || ++retryCount >= maxRetries) {
+                    throw e;
+                }
+                log.warn("Database lock issue (code: {}). Retrying {}/{}...", e.getErrorCode(), retryCount, maxRetries);
+                onLockConflict.accept(e.getErrorCode());
+                try {
+                    Thread.sleep((long) (Math.pow(2, retryCount) * 1000) + random.nextInt(1000));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * 一次运行的写入统计，多个写入线程并发累加，结束时写入输出节点的 nodeDetails。
+     */
+    public static class WriteStats {
+        private final LongAdder statements = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final AtomicLong maxStatementBytes = new AtomicLong();
+        private final LongAdder lockWaitRetries = new LongAdder();
+        private final LongAdder deadlockRetries = new LongAdder();
+
+        void record(int statementRows, long statementBytes, long elapsedNanos) {
+            statements.increment();
+            rows.add(statementRows);
+            bytes.add(statementBytes);
+            nanos.add(elapsedNanos);
+            maxStatementBytes.accumulateAndGet(statementBytes, Math::max);
+        }
+
+        void recordLockConflict(int errorCode) {
+            if (errorCode == 1213) {
+                deadlockRetries.increment();
+            } else {
+                lockWaitRetries.increment();
+            }
+        }
+
+        public Map<String, Object> toMap() {
+            long count = statements.sum();
+            long writeMs = TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("statements", count);
+            m.put("avgRowsPerStatement", count == 0 ? 0 : rows.sum() / count);
+            m.put("avgStatementBytes", count == 0 ? 0 : bytes.sum() / count);
+            m.put("maxStatementBytes", maxStatementBytes.get());
+            m.put("statementTimeMs", writeMs);
+            // 按语句执行耗时计算，不含排队和事务提交
+            m.put("rowsPerSecond", writeMs == 0 ? 0 : rows.sum() * 1000 / writeMs);
+            m.put("lockWaitRetries", lockWaitRetries.sum());
+            m.put("deadlockRetries", deadlockRetries.sum());
+            return m;
+        }
+    }
+}
@@ -1,17 +1,37 @@
 package com.datasync.tool.service;
 
+import com.datasync.tool.engine.CheckpointTracker;
+import com.datasync.tool.engine.ExecutionPlan;
+import com.datasync.tool.engine.ExecutionPlanCompiler;
+import com.datasync.tool.engine.RowBatch;
+import com.datasync.tool.engine.LookupTable;
+import com.datasync.tool.engine.RowFilter;
+import com.datasync.tool.engine.TransformChain;
+import com.datasync.tool.engine.RowSchema;
+import com.datasync.tool.engine.SourcePartitioner;
+import com.datasync.tool.engine.SourceQuery;
+import com.datasync.tool.engine.ValueConverter;
+import com.datasync.tool.engine.WatermarkTracker;
+import com.datasync.tool.engine.pipeline.AdaptiveBatchController;
+import com.datasync.tool.engine.pipeline.BatchScheduler;
+import com.datasync.tool.engine.pipeline.KeyRouter;
+import com.datasync.tool.engine.pipeline.PipelineBatch;
+import com.datasync.tool.engine.pipeline.SyncPipeline;
+import com.datasync.tool.engine.runner.TaskRunner;
 import com.datasync.tool.entity.DataSource;
 import com.datasync.tool.entity.SyncLog;
 import com.datasync.tool.entity.SyncTask;
+import com.datasync.tool.entity.SyncWatermark;
 import com.datasync.tool.repository.SyncLogRepository;
 import com.datasync.tool.repository.SyncTaskRepository;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.datasync.tool.repository.SyncWatermarkRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.quartz.*;
 import org.quartz.impl.StdSchedulerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.stereotype.Service;
@@ -20,25 +40,59 @@ import java.sql.*;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class TaskExecutionService implements ApplicationContextAware {
     private final DataSourceService dataSourceService;
+    private final DataSourcePoolRegistry poolRegistry;
+    private final TableWriter tableWriter;
+    private final LookupRegistry lookupRegistry;
+    private final ChangelogSyncService changelogSyncService;
     private final SyncTaskRepository syncTaskRepository;
     private final SyncLogRepository syncLogRepository;
+    private final SyncWatermarkRepository watermarkRepository;
     private final ObjectMapper objectMapper;
+    private final ExecutionPlanCompiler planCompiler;
+    private final BatchScheduler batchScheduler;
+    private final TaskRunner taskRunner;
+    private final RunProgressRegistry progressRegistry;
     private final Scheduler scheduler;
     private static ApplicationContext context;
 
-    private final ExecutorService taskExecutor = new ThreadPoolExecutor(
-            5, 5, 0L, TimeUnit.MILLISECONDS,
-            new LinkedBlockingQueue<>(100),
-            new ThreadPoolExecutor.CallerRunsPolicy()
-    );
+    @Value("${datasync.pipeline.writer-threads:5}")
+    private int defaultWriterThreads;
+
+    @Value("${datasync.pipeline.queue-max-rows:20000}")
+    private long queueMaxRows;
+
+    @Value("${datasync.pipeline.queue-max-bytes:67108864}")
+    private long queueMaxBytes;
+
+    // 开启快照时等待全局读锁的秒数，拿不到时不再阻塞源库写入
+    private static final int SNAPSHOT_LOCK_WAIT_SECONDS = 2;
+
+    // 保存任务时等待旧的变更日志消费循环退出的毫秒数
+    private static final long CONSUMER_STOP_TIMEOUT_MS = 30_000;
+
+    private static final Pattern SINGLE_TABLE_FROM = Pattern.compile("(?i)\\bfrom\\s+`?(\\w+)`?");
+
+    @Value("${datasync.purge.concurrency:2}")
+    private int purgeConcurrency;
+
+    @Value("${datasync.purge.max-rows-per-second:0}")
+    private long purgeMaxRowsPerSecond;
+
+    @Value("${datasync.checkpoint.resume-on-startup:false}")
+    private boolean resumeOnStartup;
 
     @Override
     public void setApplicationContext(ApplicationContext applicationContext) {
@@ -48,15 +102,30 @@ public class TaskExecutionService implements ApplicationContextAware {
     @PostConstruct
     public void init() throws SchedulerException {
         // 应用启动时，清理异常终止的任务状态
-        cleanupRunningTasks();
+        List<Long> interrupted = cleanupRunningTasks();
         
         if (!scheduler.isStarted()) {
             scheduler.start();
         }
         refreshAllSchedules();
+
+        // 有检查点的运行从断点继续
+        if (resumeOnStartup) {
+            for (Long taskId : interrupted) {
+                try {
+                    log.info("Resuming task {} after restart: {}", taskId, resumeTask(taskId));
+                } catch (Exception e) {
+                    log.warn("Failed to resume task {} after restart: {}", taskId, e.getMessage());
+                }
+            }
+        }
     }
 
-    private void cleanupRunningTasks() {
+    /**
+     * 把异常终止的运行标记为失败，返回其中带检查点、可以续传的任务 id。
+     */
+    private List<Long> cleanupRunningTasks() {
+        List<Long> resumable = new ArrayList<>();
         try {
             List<SyncLog> runningLogs = syncLogRepository.findAllByResult("RUNNING");
             if (!runningLogs.isEmpty()) {
@@ -66,11 +135,15 @@ public class TaskExecutionService implements ApplicationContextAware {
                     syncLog.setMessage("Task terminated unexpectedly due to application shutdown or crash.");
                     syncLog.setEndTime(LocalDateTime.now());
                     syncLogRepository.save(syncLog);
+                    if (syncLog.getCheckpoint() != null && !resumable.contains(syncLog.getTaskId())) {
+                        resumable.add(syncLog.getTaskId());
+                    }
                 }
             }
         } catch (Exception e) {
             log.error("Failed to cleanup running tasks", e);
         }
+        return resumable;
     }
 
     public void refreshAllSchedules() {
@@ -88,6 +161,20 @@ public class TaskExecutionService implements ApplicationContextAware {
             JobKey jobKey = JobKey.jobKey("task_" + task.getId(), "sync_tasks");
             scheduler.deleteJob(jobKey);
 
+            // 运行中的消费循环仍按旧配置执行：先停止并等待其退出，仍是启用的变更日志任务时再按新配置启动
+            if (changelogSyncService.isActive(task.getId())) {
+                taskRunner.cancelTask(task.getId());
+                if (!changelogSyncService.awaitReleased(task.getId(), CONSUMER_STOP_TIMEOUT_MS)) {
+                    log.warn("Changelog consumer for task {} did not stop within {}ms", task.getId(), CONSUMER_STOP_TIMEOUT_MS);
+                }
+            }
+            boolean enabled = "ENABLED".equals(task.getStatus());
+            // 变更日志任务常驻运行，不按 cron 调度
+            if (enabled && isChangelogTask(task)) {
+                executeTask(task.getId());
+                return;
+            }
+
             if (task.getCron() != null && !task.getCron().isEmpty() && "ENABLED".equals(task.getStatus())) {
                 JobDetail jobDetail = JobBuilder.newJob(SyncJob.class)
                         .withIdentity(jobKey)
@@ -120,221 +207,425 @@ public class TaskExecutionService implements ApplicationContextAware {
     public String executeTask(Long taskId) {
         SyncTask task = syncTaskRepository.findById(taskId).orElseThrow(() -> new RuntimeException("Task not found"));
 
-        new Thread(() -> {
-            try {
-                runTask(task);
-            } catch (Exception e) {
-                log.error("Task execution failed", e);
+        if (isChangelogTask(task)) {
+            if (!changelogSyncService.tryAcquire(task.getId())) {
+                return "Changelog consumer is already running";
             }
-        }).start();
+            // 消费循环常驻不结束，不占用普通运行的并发名额
+            taskRunner.submitConsumer(task.getId(), task.getName(),
+                    run -> changelogSyncService.run(task, planCompiler.getPlan(task), run),
+                    () -> changelogSyncService.release(task.getId()));
+            return "Changelog consumer started";
+        }
+
+        // 在虚拟线程上运行，超出并发上限时排队
+        taskRunner.submit(task.getId(), task.getName(), run -> runTask(task, run, null, null));
 
         return "Task started successfully";
     }
 
-    private void runTask(SyncTask task) {
+    /**
+     * 从最近一次失败或取消的运行保存的检查点继续执行，已提交的行不再读取和写入。
+     */
+    public String resumeTask(Long taskId) {
+        SyncTask task = syncTaskRepository.findById(taskId).orElseThrow(() -> new RuntimeException("Task not found"));
+        if (!taskRunner.findByTask(taskId).isEmpty()) {
+            throw new RuntimeException("Task is already running");
+        }
+        SyncLog last = syncLogRepository.findFirstByTaskIdOrderByStartTimeDesc(taskId)
+                .orElseThrow(() -> new RuntimeException("Task has no previous run to resume"));
+        if (!"FAILURE".equals(last.getResult()) && !"CANCELLED".equals(last.getResult())) {
+            throw new RuntimeException("Latest run is " + last.getResult() + ", nothing to resume");
+        }
+        if (last.getCheckpoint() == null) {
+            throw new RuntimeException("Latest run has no checkpoint");
+        }
+        CheckpointTracker.State state;
+        try {
+            state = objectMapper.readValue(last.getCheckpoint(), CheckpointTracker.State.class);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read checkpoint: " + e.getMessage(), e);
+        }
+        taskRunner.submit(task.getId(), task.getName(), run -> runTask(task, run, last.getId(), state));
+        return "Task resumed from run " + last.getId();
+    }
+
+    private boolean isChangelogTask(SyncTask task) {
+        try {
+            return planCompiler.getPlan(task).isChangelogMode();
+        } catch (Exception e) {
+            // 配置不完整的任务按普通任务处理，执行时再报告错误
+            return false;
+        }
+    }
+
+    /**
+     * 停止任务的所有运行：取消源端查询、中止管道中排队的批次，进行中的批次事务回滚。
+     */
+    public String stopTask(Long taskId) {
+        int cancelled = taskRunner.cancelTask(taskId);
+        if (cancelled == 0) {
+            return "Task is not running";
+        }
+        return "Stopping " + cancelled + " running or queued execution(s)";
+    }
+
+    private void runTask(SyncTask task, TaskRunner.Run run, Long resumedFrom, CheckpointTracker.State resumeState) {
         SyncLog syncLog = new SyncLog();
         syncLog.setTaskId(task.getId());
         syncLog.setTaskName(task.getName());
         syncLog.setStartTime(LocalDateTime.now());
         syncLog.setResult("RUNNING");
         syncLog = syncLogRepository.save(syncLog); // Save immediately to show in stats
+        run.bindLog(syncLog.getId());
+        RunProgressRegistry.RunProgress progress = progressRegistry.start(syncLog);
 
-        int totalCount = 0;
-        AtomicInteger totalSyncCountAtomic = new AtomicInteger(0);
+        AtomicLong totalSyncCountAtomic = new AtomicLong(0);
         List<Map<String, Object>> nodeDetails = new ArrayList<>();
+        SyncPipeline pipeline = null;
+        Map<String, Object> outputLog = new HashMap<>();
+        TableWriter.WriteStats writeStats = new TableWriter.WriteStats();
+        Runnable dropWriteTable = null;
+        SourcePurger purger = null;
+        AsyncCount asyncCount = null;
+        CheckpointTracker checkpoint = null;
+        AdaptiveBatchController adaptive = null;
+        Map<String, Map<String, Object>> filterLogs = new HashMap<>();
+        Map<String, Map<String, Object>> transformLogs = new HashMap<>();
+        Map<String, Map<String, Object>> lookupLogs = new HashMap<>();
+        List<TransformChain> transforms = new ArrayList<>();
 
         try {
-            JsonNode flow = objectMapper.readTree(task.getContent());
-            JsonNode nodes = flow.get("nodes");
-
-            // ... (rest of parsing)
-            JsonNode inputNode = null;
-            JsonNode outputNode = null;
-            List<JsonNode> mappingNodes = new ArrayList<>();
-
-            for (JsonNode node : nodes) {
-                String type = node.path("type").asText();
-                String label = node.path("label").asText("");
-                if ("input".equals(type)) {
-                    inputNode = node;
-                } else if ("output".equals(type)) {
-                    outputNode = node;
-                } else if ("字段映射".equals(label) || "mapping".equals(type)) {
-                    mappingNodes.add(node);
-                }
-            }
-
-            if (inputNode == null || outputNode == null) {
-                throw new RuntimeException("Task must have at least one input and one output node");
-            }
+            // 执行计划按任务版本缓存，定时触发和手动执行都不再重复解析流程 JSON
+            ExecutionPlan plan = planCompiler.getPlan(task);
 
             // 记录输入节点日志
             Map<String, Object> inputLog = new HashMap<>();
-            inputLog.put("nodeId", inputNode.path("id").asText());
+            inputLog.put("nodeId", plan.getInputNodeId());
             inputLog.put("nodeType", "INPUT");
             inputLog.put("nodeName", "MySQL输入");
             inputLog.put("startTime", LocalDateTime.now().toString());
             
-            JsonNode sourceData = inputNode.path("data");
-            String sourceSql = sourceData.path("sql").asText();
+            String sourceSql = plan.getSourceSql();
             inputLog.put("sql", sourceSql);
-            inputLog.put("batchSize", sourceData.path("batchSize").asInt(1000));
+            inputLog.put("batchSize", plan.getBatchSize());
             nodeDetails.add(inputLog);
 
             // 记录处理节点日志
-            for (JsonNode mNode : mappingNodes) {
+            for (ExecutionPlan.MappingStep step : plan.getMappingSteps()) {
                 Map<String, Object> mLog = new HashMap<>();
-                mLog.put("nodeId", mNode.path("id").asText());
+                mLog.put("nodeId", step.getNodeId());
                 mLog.put("nodeType", "MAPPING");
                 mLog.put("nodeName", "字段映射");
-                mLog.put("mappingCount", mNode.path("data").path("mappings").size());
+                mLog.put("mappingCount", step.getSourceNames().length);
                 nodeDetails.add(mLog);
             }
+            for (ExecutionPlan.FilterStep step : plan.getFilterSteps()) {
+                Map<String, Object> fLog = new HashMap<>();
+                fLog.put("nodeId", step.getNodeId());
+                fLog.put("nodeType", "FILTER");
+                fLog.put("nodeName", "数据过滤");
+                fLog.put("expression", step.getExpression().getText());
+                nodeDetails.add(fLog);
+                filterLogs.put(step.getNodeId(), fLog);
+            }
+            for (ExecutionPlan.ComputeStep step : plan.getComputeSteps()) {
+                Map<String, Object> tLog = new HashMap<>();
+                tLog.put("nodeId", step.getNodeId());
+                tLog.put("nodeType", "TRANSFORM");
+                tLog.put("nodeName", "表达式计算");
+                tLog.put("expressionCount", step.getFields().size());
+                nodeDetails.add(tLog);
+                transformLogs.put(step.getNodeId(), tLog);
+            }
+            for (ExecutionPlan.LookupStep step : plan.getLookupSteps()) {
+                Map<String, Object> lLog = new HashMap<>();
+                lLog.put("nodeId", step.getNodeId());
+                lLog.put("nodeType", "LOOKUP");
+                lLog.put("nodeName", "维表关联");
+                lLog.put("lookupTable", step.getTableName());
+                lLog.put("loadMode", step.isPreload() ? "PRELOAD" : "LAZY");
+                nodeDetails.add(lLog);
+                lookupLogs.put(step.getNodeId(), lLog);
+            }
 
             // 2. Prepare Data Sources
-            JsonNode targetData = outputNode.path("data");
-            
-            Map<String, Object> outputLog = new HashMap<>();
-            outputLog.put("nodeId", outputNode.path("id").asText());
+            outputLog.put("nodeId", plan.getOutputNodeId());
             outputLog.put("nodeType", "OUTPUT");
             outputLog.put("nodeName", "MySQL输出");
-            outputLog.put("tableName", targetData.path("tableName").asText());
-            outputLog.put("writeMode", targetData.path("writeMode").asText("APPEND"));
+            outputLog.put("tableName", plan.getTargetTable());
+            outputLog.put("writeMode", plan.getWriteMode());
+            outputLog.put("writeMethod", plan.isBulkLoad() && tableWriter.isBulkLoadAvailable(plan.getTargetDataSourceId())
+                    ? "BULK_LOAD" : "INSERT");
             nodeDetails.add(outputLog);
 
-            if (sourceData.isMissingNode() || targetData.isMissingNode()) {
-                throw new RuntimeException("Node data is missing");
-            }
-
-            Long sourceDsId = sourceData.path("dataSourceId").asLong(0L);
-            Long targetDsId = targetData.path("dataSourceId").asLong(0L);
-            
-            if (sourceDsId == 0 || targetDsId == 0) {
-                throw new RuntimeException("DataSource ID is missing in configuration");
-            }
+            DataSource sourceDs = dataSourceService.findById(plan.getSourceDataSourceId());
+            DataSource targetDs = dataSourceService.findById(plan.getTargetDataSourceId());
 
-            DataSource sourceDs = dataSourceService.findById(sourceDsId);
-            DataSource targetDs = dataSourceService.findById(targetDsId);
+            String targetTable = plan.getTargetTable();
+            int batchSize = plan.getBatchSize();
 
-            String sourceUrl = getJdbcUrl(sourceDs);
-            String targetUrl = getJdbcUrl(targetDs);
+            // 3. Auto-create or update target table
+            tableWriter.ensureTargetTable(targetDs, targetTable, plan.getOutputFields(), plan.getPrimaryKey());
 
-            String targetTable = targetData.path("tableName").asText();
-            int batchSize = sourceData.path("batchSize").asInt(1000);
-            
-            String writeMode = targetData.path("writeMode").asText("APPEND");
-            String primaryKey = targetData.path("primaryKey").asText("");
-            String conflictStrategy = targetData.path("conflictStrategy").asText("UPDATE");
-            
-            boolean deleteAfterSync = targetData.path("deleteAfterSync").asBoolean(false);
-            String sourcePrimaryKey = targetData.path("sourcePrimaryKey").asText("");
-            String sourceTableName = targetData.path("sourceTableName").asText("");
+            long syncStartTime = System.currentTimeMillis();
+            SyncLog finalSyncLog = syncLog;
 
-            if (sourceSql.isEmpty() || targetTable.isEmpty()) {
-                throw new RuntimeException("SQL or Target Table name is missing");
+            // 增量同步：只读取水位之后的数据，水位在全部批次提交后才推进
+            SourceQuery sourceQuery = SourceQuery.of(sourceSql);
+            WatermarkTracker watermark = null;
+            Object from = null;
+            if (!plan.getIncrementalColumn().isEmpty()) {
+                watermark = new WatermarkTracker(plan.getIncrementalColumn());
+                if (resumeState != null) {
+                    // 续传沿用原运行的读取起点，剩余分区和已提交的部分对应同一个数据范围
+                    from = resumeState.startingWatermark();
+                } else {
+                    from = loadWatermark(task.getId(), plan.getIncrementalColumn());
+                    if (from != null) {
+                        from = WatermarkTracker.applyLookback(from, plan.getLookbackOverlap());
+                    }
+                }
+                if (from != null) {
+                    sourceQuery = sourceQuery.where(SourceQuery.quote(plan.getIncrementalColumn()) + " > ?", from);
+                }
+                inputLog.put("incrementalColumn", plan.getIncrementalColumn());
+                inputLog.put("watermarkFrom", from != null ? from.toString() : null);
             }
+            WatermarkTracker finalWatermark = watermark;
+            List<String> deferredIndexes = null;
 
-            // 3. Auto-create or update target table
-            List<Map<String, String>> targetFields = new ArrayList<>();
-            JsonNode fieldsNode = targetData.path("fields");
-            if (fieldsNode.isArray()) {
-                for (JsonNode field : fieldsNode) {
-                    Map<String, String> f = new HashMap<>();
-                    f.put("sourceName", field.path("sourceName").asText(""));
-                    f.put("name", field.path("name").asText());
-                    f.put("type", field.path("type").asText("VARCHAR(255)"));
-                    f.put("comment", field.path("comment").asText(""));
-                    f.put("isPk", field.path("isPk").asBoolean() ? "true" : "false");
-                    targetFields.add(f);
+            // 4. Batch Processing
+            List<Connection> readers = new ArrayList<>();
+            boolean snapshotOpen = false;
+            DataSourcePoolRegistry.ReaderLease readerLease = null;
+            try (Connection sourceConn = poolRegistry.getConnection(sourceDs)) {
+
+                // 过滤节点：只引用源列的条件下推为源查询的 WHERE，被过滤的行不再经过网络；其余在转换阶段过滤
+                List<ExecutionPlan.FilterStep> outputFilters = new ArrayList<>();
+                if (!plan.getFilterSteps().isEmpty()) {
+                    RowSchema probed = probeSchema(sourceConn, sourceQuery);
+                    for (ExecutionPlan.FilterStep step : plan.getFilterSteps()) {
+                        Map<String, Object> fLog = filterLogs.get(step.getNodeId());
+                        if (step.getExpression().resolvableIn(probed) && !plan.referencesDerived(step.getExpression())) {
+                            sourceQuery = step.getExpression().pushDown(sourceQuery);
+                            fLog.put("pushedDown", true);
+                            fLog.put("sql", step.getExpression().toSql());
+                        } else {
+                            outputFilters.add(step);
+                            fLog.put("pushedDown", false);
+                        }
+                    }
+                    // 删除源数据按读取到的源批次进行，不能包含在转换阶段被过滤掉的行
+                    if (!outputFilters.isEmpty() && plan.isDeleteAfterSync()) {
+                        throw new RuntimeException("Deleting source data requires filters that only reference source columns");
+                    }
                 }
-            }
-            
-            if (targetFields.isEmpty()) {
-                throw new RuntimeException("No output fields configured");
-            }
 
-            ensureTargetTable(targetDs, targetUrl, targetTable, targetFields, primaryKey);
+                // 维表缓存跨任务共享，预加载在第一个批次转换时进行
+                List<LookupTable> lookups = lookupRegistry.open(plan);
 
-            long syncStartTime = System.currentTimeMillis();
-            SyncLog finalSyncLog = syncLog;
+                List<SourceQuery> partitions = List.of(sourceQuery);
+                List<Object> boundaries = List.of();
+                if (resumeState != null) {
+                    // 续传沿用上次的分区分界，保证各分区的检查点仍然对应同一个键范围
+                    checkpoint = CheckpointTracker.resume(resumeState, String.valueOf(plan.getVersion()));
+                    boundaries = checkpoint.getBoundaries();
+                } else if (plan.getPartitionCount() > 1) {
+                    // 每个分区占用一个源端连接，实际分区数取该数据源剩余的读取名额，名额不足两个时单连接读取
+                    readerLease = poolRegistry.reserveReaders(sourceDs, plan.getPartitionCount());
+                    if (readerLease.count() > 1) {
+                        boundaries = SourcePartitioner.computeBoundaries(sourceConn, sourceQuery,
+                                plan.getPartitionColumn(), readerLease.count());
+                    } else {
+                        log.info("Task {} reads without partitions: no reader connections left on data source {}",
+                                task.getId(), sourceDs.getName());
+                    }
+                }
+                if (!boundaries.isEmpty()) {
+                    partitions = SourcePartitioner.split(sourceQuery, plan.getPartitionColumn(), boundaries);
+                    inputLog.put("partitionColumn", plan.getPartitionColumn());
+                    inputLog.put("partitionCount", partitions.size());
+                }
+                if (plan.isCheckpointed() && checkpoint == null) {
+                    checkpoint = CheckpointTracker.start(plan.getCheckpointColumn(), String.valueOf(plan.getVersion()),
+                            boundaries, from);
+                }
 
-            // 4. Batch Processing
-            try (Connection sourceConn = DriverManager.getConnection(sourceUrl, sourceDs.getUsername(), sourceDs.getPassword())) {
-                
-                // 获取源数据总数用于进度显示
-                int sourceTotal = getSourceCount(sourceConn, sourceSql);
+                // 有检查点时每个分区按检查点列升序读取，续传时跳过已完成的分区、从检查点之后继续
+                List<SourceQuery> reads = new ArrayList<>();
+                List<CheckpointTracker.Partition> readParts = new ArrayList<>();
+                for (int i = 0; i < partitions.size(); i++) {
+                    if (checkpoint == null) {
+                        reads.add(partitions.get(i));
+                        readParts.add(null);
+                        continue;
+                    }
+                    CheckpointTracker.Partition part = checkpoint.getPartitions().get(i);
+                    if (!part.isDone()) {
+                        reads.add(part.remaining(partitions.get(i)));
+                        readParts.add(part);
+                    }
+                }
+                CheckpointTracker finalCheckpoint = checkpoint;
+                if (checkpoint != null) {
+                    progress.setCheckpoint(() -> checkpointJson(finalCheckpoint));
+                    inputLog.put("checkpointColumn", checkpoint.getColumn());
+                    if (resumedFrom != null) {
+                        long resumedRows = checkpoint.resumedRows();
+                        totalSyncCountAtomic.set(resumedRows);
+                        progress.setProcessed(resumedRows);
+                        inputLog.put("resumedFrom", resumedFrom);
+                        inputLog.put("resumedRows", resumedRows);
+                        log.info("Task {} resumes run {}: {} rows already committed, {} of {} partitions left",
+                                task.getId(), resumedFrom, resumedRows, reads.size(), partitions.size());
+                    }
+                }
+
+                // 分区读取连接在开始计数和清理之前全部取得，一致性快照也在这时开启，不与本次运行的其它查询争用锁
+                if (reads.size() > 1) {
+                    if (readerLease == null) {
+                        readerLease = poolRegistry.reserveReaders(sourceDs, reads.size());
+                    }
+                    // 续传时剩余分区可能多于可用名额，读取者依次领取分区；没有名额时用一个连接依次读取
+                    int readerCount = Math.max(1, Math.min(reads.size(), readerLease.count()));
+                    for (int i = 0; i < readerCount; i++) {
+                        readers.add(poolRegistry.getConnection(sourceDs));
+                    }
+                    inputLog.put("readers", readerCount);
+                    if (plan.isConsistentSnapshot()) {
+                        inputLog.put("snapshot", beginConsistentSnapshot(readers, plan.isSnapshotGlobalLock()));
+                        snapshotOpen = true;
+                    }
+                }
+
+                // 进度总数不阻塞读取：估算值立即可用，精确计数在另一个连接上与读取并行执行
+                int sourceTotal = -1;
+                if ("ESTIMATED".equals(plan.getProgressTotal())) {
+                    sourceTotal = estimateSourceCount(sourceConn, sourceQuery);
+                    finalSyncLog.setTotalEstimated(sourceTotal >= 0);
+                    progress.setTotal(sourceTotal, sourceTotal >= 0);
+                } else if ("EXACT_ASYNC".equals(plan.getProgressTotal())) {
+                    asyncCount = startAsyncCount(sourceDs, sourceQuery, progress, run);
+                }
+                inputLog.put("progressTotal", plan.getProgressTotal());
                 finalSyncLog.setTotalCount(sourceTotal);
                 finalSyncLog.setProcessedCount(0);
                 syncLogRepository.save(finalSyncLog);
 
-                // Handle Write Mode: OVERWRITE
-                if ("OVERWRITE".equalsIgnoreCase(writeMode)) {
-                    try (Connection targetConn = DriverManager.getConnection(targetUrl, targetDs.getUsername(), targetDs.getPassword())) {
+                checkCancelled(run);
+                // OVERWRITE_SWAP：写入影子表，全部批次提交后再原子替换目标表，运行期间目标表照常可读
+                if (plan.isSwapOverwrite() || plan.isStageMerge()) {
+                    if (taskRunner.findByTask(task.getId()).stream().filter(TaskRunner.Run::isStarted).count() > 1) {
+                        throw new RuntimeException("Another run of this task is already loading " + plan.getWriteTable());
+                    }
+                    dropWriteTable = () -> tableWriter.dropWriteTable(targetDs, plan);
+                }
+                if (plan.isSwapOverwrite()) {
+                    deferredIndexes = tableWriter.prepareShadowTable(targetDs, plan);
+                    outputLog.put("shadowTable", plan.getWriteTable());
+                    outputLog.put("deferredIndexes", deferredIndexes.size());
+                }
+                // STAGE_MERGE：写入线程只写暂存表，全部批次提交后由一个连接按主键顺序合并到目标表
+                if (plan.isStageMerge()) {
+                    tableWriter.prepareStagingTable(targetDs, plan);
+                    outputLog.put("stagingTable", plan.getWriteTable());
+                }
+                // Handle Write Mode: OVERWRITE（续传时目标表里已有上次写入的数据，不能清空）
+                if ("OVERWRITE".equalsIgnoreCase(plan.getWriteMode()) && resumeState == null) {
+                    try (Connection targetConn = poolRegistry.getConnection(targetDs)) {
                         try (Statement stmt = targetConn.createStatement()) {
-                            stmt.execute("SET SESSION lock_wait_timeout = 60");
                             stmt.execute("TRUNCATE TABLE `" + targetTable + "`");
                         }
                         log.info("Truncated table: {}", targetTable);
                     }
                 }
                 
-                List<Future<?>> futures = new ArrayList<>();
-                String streamingSql = sourceSql;
-                
-                try (Statement stmt = sourceConn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
-                    // Enable MySQL streaming
-                    stmt.setFetchSize(Integer.MIN_VALUE);
-                    
-                    try (ResultSet rs = stmt.executeQuery(streamingSql)) {
-                        ResultSetMetaData metaData = rs.getMetaData();
-                        int columnCount = metaData.getColumnCount();
-                        
-                        List<Map<String, Object>> currentBatchData = new ArrayList<>();
-                        int batchCount = 0;
-                        
-                        while (rs.next()) {
-                            Map<String, Object> row = new HashMap<>();
-                            for (int i = 1; i <= columnCount; i++) {
-                                row.put(metaData.getColumnLabel(i), rs.getObject(i));
-                            }
-                            currentBatchData.add(row);
-                            
-                            if (currentBatchData.size() >= batchSize) {
-                                final List<Map<String, Object>> batchToProcess = currentBatchData;
-                                final int batchNum = ++batchCount;
-                                
-                                futures.add(taskExecutor.submit(() -> {
-                                    processBatch(batchToProcess, targetUrl, targetDs, targetTable, targetFields, 
-                                               mappingNodes, primaryKey, conflictStrategy, deleteAfterSync, 
-                                               sourceUrl, sourceDs, sourcePrimaryKey, sourceTableName, 
-                                               finalSyncLog, batchNum, totalSyncCountAtomic);
-                                }));
-                                
-                                currentBatchData = new ArrayList<>();
+                int writerThreads = plan.getWriterThreads() > 0 ? plan.getWriterThreads() : defaultWriterThreads;
+                // 自适应批次：配置的批次大小和写入线程数作为初始值，写入线程数同时作为并发上限
+                if (plan.isAdaptiveBatch()) {
+                    adaptive = new AdaptiveBatchController(batchSize, plan.getMinBatchSize(), plan.getMaxBatchSize(),
+                            writerThreads, plan.getMinWriterThreads(), writerThreads, plan.getTargetBatchMs());
+                }
+                AdaptiveBatchController finalAdaptive = adaptive;
+                IntSupplier batchSizes = adaptive != null ? adaptive::batchSize : () -> batchSize;
+
+                // 同步后删除源数据：目标事务提交后由独立的清理阶段按主键批量删除
+                if (plan.isDeleteAfterSync() && !plan.getSourcePrimaryKey().isEmpty() && !plan.getSourceTableName().isEmpty()) {
+                    purger = new SourcePurger(tableWriter, poolRegistry, sourceDs, plan.getSourceTableName(),
+                            plan.getSourcePrimaryKey(), purgeConcurrency, purgeMaxRowsPerSecond, run.getScope());
+                }
+                SourcePurger finalPurger = purger;
+                progress.setStage("SYNCING");
+
+                if (reads.size() > 1) {
+                    // 分区并行读取：多个读取者共用一个管道
+                    RowSchema sourceSchema = probeSchema(sourceConn, sourceQuery);
+                    pipeline = startPipeline(task, plan, run, sourceSchema, sourceDs, targetDs, progress,
+                            totalSyncCountAtomic, finalWatermark, writeStats, finalPurger, finalCheckpoint,
+                            finalAdaptive, writerThreads, outputFilters, lookups, transforms);
+                    try {
+                        readPartitions(readers, reads, readParts, sourceSchema, batchSizes, pipeline, run, inputLog);
+                    } catch (Exception e) {
+                        pipeline.abort(e);
+                    }
+                    pipeline.finish();
+                } else if (!reads.isEmpty()) {
+                    SourceQuery readQuery = reads.get(0);
+                    try (PreparedStatement stmt = sourceConn.prepareStatement(readQuery.toSql(),
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                        // Enable MySQL streaming
+                        stmt.setFetchSize(Integer.MIN_VALUE);
+                        // 停止任务时终止源端查询，流式读取随即抛出异常结束
+                        run.onCancel(() -> cancelStatement(stmt));
+                        readQuery.bind(stmt);
+
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            // 列下标、存储类型和输出投影只在这里解析一次
+                            RowSchema sourceSchema = RowSchema.fromMetaData(rs.getMetaData());
+                            pipeline = startPipeline(task, plan, run, sourceSchema, sourceDs, targetDs, progress,
+                                    totalSyncCountAtomic, finalWatermark, writeStats, finalPurger, finalCheckpoint,
+                                    finalAdaptive, writerThreads, outputFilters, lookups, transforms);
+                            try {
+                                readInto(rs, sourceSchema, batchSizes, pipeline, readParts.get(0));
+                                if (pipeline.isFailed()) cancelStatement(stmt);
+                            } catch (Exception e) {
+                                pipeline.abort(e);
                             }
-                        }
-                        
-                        // Process remaining data
-                        if (!currentBatchData.isEmpty()) {
-                            final List<Map<String, Object>> batchToProcess = currentBatchData;
-                            final int batchNum = ++batchCount;
-                            futures.add(taskExecutor.submit(() -> {
-                                processBatch(batchToProcess, targetUrl, targetDs, targetTable, targetFields, 
-                                           mappingNodes, primaryKey, conflictStrategy, deleteAfterSync, 
-                                           sourceUrl, sourceDs, sourcePrimaryKey, sourceTableName, 
-                                           finalSyncLog, batchNum, totalSyncCountAtomic);
-                            }));
+
+                            // Wait for all batches to complete
+                            pipeline.finish();
                         }
                     }
                 }
-                
-                // Wait for all batches to complete
-                for (Future<?> future : futures) {
-                    future.get();
+                if (purger != null) {
+                    progress.setStage("PURGING");
+                    purger.finish();
+                }
+            } finally {
+                closeReaders(readers, snapshotOpen);
+                if (readerLease != null) {
+                    readerLease.close();
                 }
             }
             
-            int totalProcessed = totalSyncCountAtomic.get();
+            if (deferredIndexes != null) {
+                checkCancelled(run);
+                progress.setStage("SWAPPING");
+                tableWriter.swapShadowTable(targetDs, plan, deferredIndexes);
+                dropWriteTable = null;
+            }
+            if (plan.isStageMerge()) {
+                progress.setStage("MERGING");
+                outputLog.putAll(tableWriter.mergeStagingTable(targetDs, plan, () -> checkCancelled(run)));
+            }
+
+            // 续传只读取了剩余分区，其最大值不覆盖已提交分区在原运行之后的更新：保持原水位，下次运行从原起点重新读取
+            if (watermark != null && resumeState == null) {
+                saveWatermark(task.getId(), plan.getIncrementalColumn(), watermark, syncLog.getId(), inputLog);
+            }
+
+            long totalProcessed = totalSyncCountAtomic.get();
             // 更新节点完成日志
             long duration = System.currentTimeMillis() - syncStartTime;
             inputLog.put("endTime", LocalDateTime.now().toString());
@@ -343,17 +634,29 @@ public class TaskExecutionService implements ApplicationContextAware {
             outputLog.put("rowCount", totalProcessed);
             outputLog.put("durationMs", duration);
 
+            // 成功时读取的行数就是准确的总数
+            if (asyncCount != null) {
+                asyncCount.cancel();
+            }
+            syncLog.setTotalCount(RunProgressRegistry.clampCount(totalProcessed));
+            syncLog.setTotalEstimated(false);
             syncLog.setResult("SUCCESS");
             syncLog.setMessage("Successfully synchronized " + totalProcessed + " records.");
         } catch (Exception e) {
-            log.error("Task execution failed", e);
-            syncLog.setResult("FAILURE");
-            syncLog.setMessage(e.getMessage());
+            if (run.isCancelled()) {
+                log.info("Task {} cancelled after {} records", task.getId(), totalSyncCountAtomic.get());
+                syncLog.setResult("CANCELLED");
+                syncLog.setMessage("Task cancelled by user after " + totalSyncCountAtomic.get() + " records.");
+            } else {
+                log.error("Task execution failed", e);
+                syncLog.setResult("FAILURE");
+                syncLog.setMessage(e.getMessage());
+            }
             // 记录失败时的异常堆栈
             try {
                 Map<String, Object> errorLog = new HashMap<>();
-                errorLog.put("nodeType", "ERROR");
-                errorLog.put("nodeName", "Execution Error");
+                errorLog.put("nodeType", run.isCancelled() ? "CANCELLED" : "ERROR");
+                errorLog.put("nodeName", run.isCancelled() ? "Execution Cancelled" : "Execution Error");
                 errorLog.put("time", LocalDateTime.now().toString());
                 errorLog.put("error", e.getMessage());
                 nodeDetails.add(errorLog);
@@ -361,437 +664,507 @@ public class TaskExecutionService implements ApplicationContextAware {
                 log.warn("Failed to add error to nodeDetails", ex);
             }
         } finally {
+            if (purger != null) {
+                purger.abort();
+                Map<String, Object> purgeLog = new HashMap<>();
+                purgeLog.put("nodeType", "PURGE");
+                purgeLog.put("nodeName", "源数据清理");
+                purgeLog.putAll(purger.metrics());
+                nodeDetails.add(purgeLog);
+            }
+            // 影子表和暂存表用完即删；失败或取消时 OVERWRITE_SWAP 的目标表保持原样
+            if (dropWriteTable != null) {
+                dropWriteTable.run();
+            }
             syncLog.setEndTime(LocalDateTime.now());
+            if (asyncCount != null && !"SUCCESS".equals(syncLog.getResult())) {
+                asyncCount.finish(syncLog);
+            }
             // 确保即使失败也记录当前进度
-            syncLog.setProcessedCount(totalSyncCountAtomic.get());
-            syncLog.setSyncCount(totalSyncCountAtomic.get());
+            syncLog.setProcessedCount(RunProgressRegistry.clampCount(totalSyncCountAtomic.get()));
+            syncLog.setSyncCount(RunProgressRegistry.clampCount(totalSyncCountAtomic.get()));
             syncLog.setDurationMs(Duration.between(syncLog.getStartTime(), syncLog.getEndTime()).toMillis());
+            // 成功后不再需要检查点
+            if (checkpoint != null && !"SUCCESS".equals(syncLog.getResult())) {
+                syncLog.setCheckpoint(checkpointJson(checkpoint));
+            }
+            outputLog.putAll(writeStats.toMap());
+            for (TransformChain chain : transforms) {
+                for (RowFilter rowFilter : chain.filters()) {
+                    filterLogs.get(rowFilter.getNodeId()).putAll(rowFilter.toMap());
+                }
+                chain.expressionMetrics().forEach((nodeId, metrics) -> transformLogs.get(nodeId).put("expressions", metrics));
+                chain.lookupMetrics().forEach((nodeId, metrics) -> lookupLogs.get(nodeId).putAll(metrics));
+            }
+            if (pipeline != null) {
+                nodeDetails.add(pipelineLog(pipeline));
+            }
+            if (adaptive != null) {
+                Map<String, Object> aLog = new HashMap<>();
+                aLog.put("nodeType", "ADAPTIVE");
+                aLog.put("nodeName", "自适应批次");
+                aLog.putAll(adaptive.toMap());
+                nodeDetails.add(aLog);
+            }
             try {
                 syncLog.setNodeDetails(objectMapper.writeValueAsString(nodeDetails));
             } catch (Exception e) {
                 log.warn("Failed to serialize node details", e);
             }
+            progressRegistry.finish(syncLog.getId());
             syncLogRepository.save(syncLog);
         }
     }
 
-    private void processBatch(List<Map<String, Object>> currentBatch, String targetUrl, DataSource targetDs, 
-                             String targetTable, List<Map<String, String>> targetFields, 
-                             List<JsonNode> mappingNodes, String primaryKey, String conflictStrategy, 
-                             boolean deleteAfterSync, String sourceUrl, DataSource sourceDs, 
-                             String sourcePrimaryKey, String sourceTableName, 
-                             SyncLog finalSyncLog, int batchNum, AtomicInteger totalSyncCountAtomic) {
-        long batchStart = System.currentTimeMillis();
-        try (Connection threadTargetConn = DriverManager.getConnection(targetUrl, targetDs.getUsername(), targetDs.getPassword())) {
-            // Set session timeout for each worker thread
-            try (Statement stmt = threadTargetConn.createStatement()) {
-                stmt.execute("SET SESSION innodb_lock_wait_timeout = 120");
-            }
+    /**
+     * 读取(调用线程) → 转换 → 写入，写入由共享调度器执行，队列满时读取线程阻塞等待。
+     */
+    private SyncPipeline startPipeline(SyncTask task, ExecutionPlan plan, TaskRunner.Run run, RowSchema sourceSchema,
+                                       DataSource sourceDs, DataSource targetDs, RunProgressRegistry.RunProgress progress,
+                                       AtomicLong totalSyncCountAtomic, WatermarkTracker watermark,
+                                       TableWriter.WriteStats writeStats, SourcePurger purger,
+                                       CheckpointTracker checkpoint, AdaptiveBatchController adaptive,
+                                       int writerThreads, List<ExecutionPlan.FilterStep> outputFilters,
+                                       List<LookupTable> lookups, List<TransformChain> transforms) {
+        // 计算列、维表关联和未下推的过滤条件按源 schema 编译一次，在转换阶段执行
+        TransformChain chain = TransformChain.compile(plan, sourceSchema, outputFilters, lookups);
+        transforms.add(chain);
+        // 源表主键列只解析一次
+        int sourcePkIndex = sourceSchema.indexOf(plan.getSourcePrimaryKey());
+        if (purger != null && sourcePkIndex < 0) {
+            log.warn("Primary key {} not found in source columns, skip deleting from {}",
+                    plan.getSourcePrimaryKey(), plan.getSourceTableName());
+        }
+        SourcePurger batchPurger = sourcePkIndex >= 0 ? purger : null;
+        SyncPipeline pipeline = new SyncPipeline("task-" + task.getId(), chain::apply,
+                batch -> processBatch(batch, plan, chain.converters(), targetDs, batchPurger, sourcePkIndex,
+                        progress, totalSyncCountAtomic, watermark, checkpoint, adaptive, writeStats, run),
+                queueMaxRows, queueMaxBytes, run.getScope());
+        // 多个写入线程按目标主键分片：同一主键总是由同一分片串行写入，语句内按主键排序，避免 upsert 互相死锁
+        int keyIndex = plan.getPrimaryKey().isEmpty() ? -1 : chain.outputSchema().indexOf(plan.getPrimaryKey());
+        if (keyIndex >= 0 && writerThreads > 1) {
+            pipeline.setRouter(new KeyRouter(keyIndex, writerThreads));
+        }
+        pipeline.start(batchScheduler, task.getId(), task.getPriority() != null ? task.getPriority() : 5,
+                writerThreads, targetDs.getId());
+        run.onCancel(() -> pipeline.abort(new CancellationException("Task cancelled by user")));
+        if (adaptive != null) {
+            adaptive.onWritersChanged(pipeline::setMaxWriters);
+        }
+        progress.setStageMetrics(pipeline::metrics);
+        return pipeline;
+    }
 
-            threadTargetConn.setAutoCommit(false);
-            
-            // Apply intermediate mappings
-            long mappingStart = System.currentTimeMillis();
-            List<Map<String, Object>> currentData = applyMapping(currentBatch, mappingNodes);
-            
-            // Apply Output Node Field Mapping
-            List<Map<String, Object>> finalMappedData = new ArrayList<>();
-            for (Map<String, Object> row : currentData) {
-                Map<String, Object> mappedRow = new HashMap<>();
-                for (Map<String, String> fieldDef : targetFields) {
-                    String sourceName = fieldDef.get("sourceName");
-                    String targetName = fieldDef.get("name");
-                    
-                    Object value;
-                    if (sourceName != null && !sourceName.isEmpty()) {
-                        value = row.get(sourceName);
-                    } else {
-                        // 如果没有配置源字段名，尝试按目标字段名寻找
-                        value = row.get(targetName);
-                    }
-                    
-                    // 类型转换支持
-                    String targetType = fieldDef.get("type");
-                    mappedRow.put(targetName, convertType(value, targetType));
-                }
-                finalMappedData.add(mappedRow);
-            }
-            long mappingEnd = System.currentTimeMillis();
+    /**
+     * 按批读取结果集并投递到管道，管道失败时提前返回。返回读取的行数。
+     */
+    private long readInto(ResultSet rs, RowSchema schema, IntSupplier batchSize, SyncPipeline pipeline,
+                          CheckpointTracker.Partition checkpoint) throws Exception {
+        long rows = 0;
+        // 每个新批次按当前批次大小创建，自适应调整在下一个批次生效
+        RowBatch currentBatchData = new RowBatch(schema, batchSize.getAsInt());
+        while (rs.next()) {
+            currentBatchData.appendFrom(rs);
+            rows++;
 
-            long insertStart = System.currentTimeMillis();
-            insertBatch(threadTargetConn, targetTable, targetFields, finalMappedData, primaryKey, conflictStrategy);
-            threadTargetConn.commit();
-            long insertEnd = System.currentTimeMillis();
-            
-            int currentProcessed = totalSyncCountAtomic.addAndGet(currentBatch.size());
-            
-            // 更新进度 (使用原生SQL以提高并发性能)
-            syncLogRepository.updateProcessedCount(finalSyncLog.getId(), currentProcessed);
-            
-            long deleteDuration = 0;
-            // Delete from source if enabled
-            if (deleteAfterSync && !sourcePrimaryKey.isEmpty() && !sourceTableName.isEmpty()) {
-                long deleteStart = System.currentTimeMillis();
-                try (Connection threadSourceConn = DriverManager.getConnection(sourceUrl, sourceDs.getUsername(), sourceDs.getPassword())) {
-                    deleteFromSource(threadSourceConn, sourceTableName, sourcePrimaryKey, currentBatch);
-                }
-                deleteDuration = System.currentTimeMillis() - deleteStart;
+            if (currentBatchData.isFull()) {
+                if (checkpoint != null) checkpoint.register(currentBatchData);
+                if (!pipeline.submit(currentBatchData)) return rows;
+                currentBatchData = new RowBatch(schema, batchSize.getAsInt());
             }
-            
-            long totalBatchDuration = System.currentTimeMillis() - batchStart;
-            log.info("Batch {} processed: size={}, total={}ms [Mapping: {}ms, Insert: {}ms, Delete: {}ms]", 
-                    batchNum, currentBatch.size(), totalBatchDuration, (mappingEnd - mappingStart), (insertEnd - insertStart), deleteDuration);
+        }
 
-        } catch (Exception e) {
-            log.error("Batch processing failed for batch " + batchNum, e);
-            throw new RuntimeException(e);
+        // Process remaining data
+        if (!currentBatchData.isEmpty() && !pipeline.isFailed()) {
+            if (checkpoint != null) checkpoint.register(currentBatchData);
+            if (!pipeline.submit(currentBatchData)) return rows;
         }
+        if (checkpoint != null && !pipeline.isFailed()) {
+            checkpoint.readFinished();
+        }
+        return rows;
     }
 
-    private int getSourceCount(Connection conn, String sql) {
-        // Remove any LIMIT/OFFSET from the SQL if we're wrapping it to get total count
-        String lowerSql = sql.toLowerCase();
-        if (lowerSql.contains("limit")) {
-            return -1; // If it already has a limit, total count might be misleading
-        }
-        
-        String countSql = "SELECT COUNT(*) FROM (" + sql + ") as t";
-        try (Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(countSql)) {
-            if (rs.next()) {
-                return rs.getInt(1);
+    private RowSchema probeSchema(Connection conn, SourceQuery query) throws SQLException {
+        SourceQuery empty = query.where("1 = 0");
+        try (PreparedStatement ps = conn.prepareStatement(empty.toSql())) {
+            empty.bind(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                return RowSchema.fromMetaData(rs.getMetaData());
             }
-        } catch (SQLException e) {
-            log.warn("Failed to get source count: {}", e.getMessage());
         }
-        return -1;
     }
 
-    private String getJdbcUrl(DataSource ds) {
-        return String.format("jdbc:mysql://%s:%d/%s?useSSL=false&serverTimezone=UTC&allowPublicKeyRetrieval=true",
-                ds.getHost(), ds.getPort(), ds.getDatabaseName());
+    /**
+     * 多个读取连接并行流式读取各分区，读取者作为本次运行的子任务执行，读完一个分区再领取下一个。
+     */
+    private void readPartitions(List<Connection> readers, List<SourceQuery> partitions,
+                                List<CheckpointTracker.Partition> checkpoints, RowSchema schema,
+                                IntSupplier batchSize, SyncPipeline pipeline, TaskRunner.Run run,
+                                Map<String, Object> inputLog) throws Exception {
+        long[] rowCounts = new long[partitions.size()];
+        AtomicInteger nextPartition = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (Connection reader : readers) {
+            futures.add(run.getScope().fork(() -> {
+                try {
+                    int idx;
+                    while (!pipeline.isFailed() && (idx = nextPartition.getAndIncrement()) < partitions.size()) {
+                        rowCounts[idx] = readPartition(reader, partitions.get(idx), schema,
+                                batchSize, pipeline, checkpoints.get(idx), run);
+                    }
+                } catch (Exception e) {
+                    pipeline.abort(e);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        List<Map<String, Object>> partitionLogs = new ArrayList<>();
+        for (int i = 0; i < partitions.size(); i++) {
+            Map<String, Object> pLog = new HashMap<>();
+            pLog.put("range", partitions.get(i).getParams());
+            pLog.put("rowCount", rowCounts[i]);
+            partitionLogs.add(pLog);
+        }
+        inputLog.put("partitions", partitionLogs);
     }
 
-    private void ensureTargetTable(DataSource ds, String url, String tableName, List<Map<String, String>> fields, String primaryKey) throws SQLException {
-        try (Connection conn = DriverManager.getConnection(url, ds.getUsername(), ds.getPassword())) {
-            // Set session timeout for DDL operations
-            try (Statement stmt = conn.createStatement()) {
-                stmt.execute("SET SESSION innodb_lock_wait_timeout = 60");
-            }
-            DatabaseMetaData metaData = conn.getMetaData();
-            
-            try (ResultSet tables = metaData.getTables(null, null, null, new String[]{"TABLE"})) {
-                boolean exists = false;
-                while (tables.next()) {
-                    if (tableName.equalsIgnoreCase(tables.getString("TABLE_NAME"))) {
-                        exists = true;
-                        break;
-                    }
+    private void closeReaders(List<Connection> readers, boolean snapshotOpen) {
+        for (Connection conn : readers) {
+            if (snapshotOpen) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("COMMIT");
+                } catch (SQLException e) {
+                    log.warn("Failed to end snapshot transaction: {}", e.getMessage());
                 }
-                
-                if (!exists) {
-                    // Create Table
-                    StringBuilder sql = new StringBuilder("CREATE TABLE `").append(tableName).append("` (");
-                    
-                    // If user specified a primary key that exists in the fields list, use it.
-                    // Otherwise, if no 'id' field, add an auto-incrementing 'id'.
-                    boolean pkFound = false;
-                    if (primaryKey != null && !primaryKey.isEmpty()) {
-                        pkFound = fields.stream().anyMatch(f -> primaryKey.equalsIgnoreCase(f.get("name")));
-                    }
-                    
-                    boolean hasIdField = fields.stream().anyMatch(f -> "id".equalsIgnoreCase(f.get("name")));
-                    
-                    if (!pkFound && !hasIdField) {
-                        sql.append("`id` INT AUTO_INCREMENT PRIMARY KEY");
-                    }
-                    
-                    for (int i = 0; i < fields.size(); i++) {
-                        Map<String, String> field = fields.get(i);
-                        String name = field.get("name");
-                        String comment = field.get("comment");
-                        boolean isPk = "true".equals(field.get("isPk"));
-                        
-                        // Handle comma
-                        if (i > 0 || (!pkFound && !hasIdField)) {
-                            sql.append(", ");
-                        }
-                        
-                        sql.append("`").append(name).append("` ").append(sanitizeType(field.get("type")));
-                        
-                        // If this is marked as PK in field config or matches the global primaryKey setting
-                        if (isPk || name.equalsIgnoreCase(primaryKey)) {
-                            sql.append(" PRIMARY KEY");
-                        }
+            }
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                log.warn("Failed to close reader connection: {}", e.getMessage());
+            }
+        }
+    }
 
-                        if (comment != null && !comment.isEmpty()) {
-                            sql.append(" COMMENT '").append(comment.replace("'", "''")).append("'");
-                        }
-                    }
-                    sql.append(")");
-                    try (Statement stmt = conn.createStatement()) {
-                        stmt.execute(sql.toString());
-                    }
-                    log.info("Created table: {} with primary key: {}", tableName, primaryKey);
-                } else {
-                    // Check and Update Fields
-                    DatabaseMetaData md = conn.getMetaData();
-                    for (Map<String, String> field : fields) {
-                        String colName = field.get("name");
-                        boolean colExists = false;
-                        try (ResultSet cols = md.getColumns(null, null, tableName, colName)) {
-                            if (cols.next()) {
-                                colExists = true;
-                            }
-                        }
-                        
-                        if (!colExists) {
-                            String commentClause = "";
-                            String comment = field.get("comment");
-                            if (comment != null && !comment.isEmpty()) {
-                                commentClause = String.format(" COMMENT '%s'", comment.replace("'", "''"));
-                            }
-                            
-                            String sql = String.format("ALTER TABLE `%s` ADD COLUMN `%s` %s%s", 
-                                    tableName, colName, sanitizeType(field.get("type")), commentClause);
-                            try (Statement stmt = conn.createStatement()) {
-                                stmt.execute(sql);
-                            }
-                            log.info("Added column {} to table {}", colName, tableName);
-                        }
-                    }
+    private long readPartition(Connection conn, SourceQuery query, RowSchema schema, IntSupplier batchSize,
+                               SyncPipeline pipeline, CheckpointTracker.Partition checkpoint,
+                               TaskRunner.Run run) throws Exception {
+        try (PreparedStatement ps = conn.prepareStatement(query.toSql(),
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(Integer.MIN_VALUE);
+            run.onCancel(() -> cancelStatement(ps));
+            query.bind(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                long rows = readInto(rs, schema, batchSize, pipeline, checkpoint);
+                // 提前结束时终止查询，避免关闭流式结果集时把剩余行读完
+                if (pipeline.isFailed()) cancelStatement(ps);
+                return rows;
+            }
+        }
+    }
 
-                    // IMPORTANT: Ensure Primary Key exists for Upsert to work
-                    if (primaryKey != null && !primaryKey.isEmpty()) {
-                        boolean hasPk = false;
-                        try (ResultSet pks = md.getPrimaryKeys(null, null, tableName)) {
-                            if (pks.next()) {
-                                hasPk = true;
-                            }
-                        }
-                        
-                        if (!hasPk) {
-                            // If no primary key exists, try to add it
-                            try (Statement stmt = conn.createStatement()) {
-                                String addPkSql = String.format("ALTER TABLE `%s` ADD PRIMARY KEY (`%s`)", tableName, primaryKey);
-                                stmt.execute(addPkSql);
-                                log.info("Added primary key constraint on {} for table {}", primaryKey, tableName);
-                            } catch (SQLException e) {
-                                log.warn("Could not add primary key constraint: {}. Upsert might not work if no unique index exists.", e.getMessage());
-                            }
-                        }
+    /**
+     * 各读取连接依次开启一致性快照，时间点之间只差开启快照的几次往返。
+     * globalLock 时与 mysqldump 相同，先加全局读锁，全部开启后立即解锁，快照时间点完全一致；
+     * 全局读锁要等源库上所有进行中的语句结束，只短暂等待，拿不到锁（或没有 RELOAD 权限）时退化为依次开启。
+     */
+    private String beginConsistentSnapshot(List<Connection> readers, boolean globalLock) throws SQLException {
+        Connection coordinator = readers.get(0);
+        boolean locked = false;
+        if (globalLock) {
+            try (Statement stmt = coordinator.createStatement()) {
+                long previousTimeout = 0;
+                try (ResultSet rs = stmt.executeQuery("SELECT @@SESSION.lock_wait_timeout")) {
+                    if (rs.next()) previousTimeout = rs.getLong(1);
+                }
+                stmt.execute("SET SESSION lock_wait_timeout = " + SNAPSHOT_LOCK_WAIT_SECONDS);
+                try {
+                    stmt.execute("FLUSH TABLES WITH READ LOCK");
+                    locked = true;
+                } catch (SQLException e) {
+                    log.warn("FLUSH TABLES WITH READ LOCK failed, opening snapshots one after another: {}", e.getMessage());
+                } finally {
+                    if (previousTimeout > 0) {
+                        stmt.execute("SET SESSION lock_wait_timeout = " + previousTimeout);
                     }
                 }
             }
         }
+        try {
+            for (Connection conn : readers) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY");
+                }
+            }
+        } finally {
+            if (locked) {
+                try (Statement stmt = coordinator.createStatement()) {
+                    stmt.execute("UNLOCK TABLES");
+                }
+            }
+        }
+        return locked ? "CONSISTENT" : "SEQUENTIAL";
+    }
+
+    private Object loadWatermark(Long taskId, String column) {
+        Optional<SyncWatermark> stored = watermarkRepository.findById(taskId);
+        if (stored.isEmpty()) {
+            return null;
+        }
+        SyncWatermark wm = stored.get();
+        if (!column.equalsIgnoreCase(wm.getColumnName())) {
+            log.info("Incremental column of task {} changed from {} to {}, reading all rows",
+                    taskId, wm.getColumnName(), column);
+            return null;
+        }
+        return WatermarkTracker.parse(wm.getValueType(), wm.getWatermarkValue());
+    }
+
+    /**
+     * 所有批次提交后推进水位；本次没有读到数据时保持原水位。
+     */
+    private void saveWatermark(Long taskId, String column, WatermarkTracker tracker, Long syncLogId,
+                               Map<String, Object> inputLog) {
+        Object max = tracker.max();
+        if (max == null) {
+            return;
+        }
+        SyncWatermark wm = watermarkRepository.findById(taskId).orElseGet(SyncWatermark::new);
+        wm.setTaskId(taskId);
+        wm.setColumnName(column);
+        wm.setValueType(WatermarkTracker.typeOf(max));
+        wm.setWatermarkValue(max.toString());
+        wm.setSyncLogId(syncLogId);
+        watermarkRepository.save(wm);
+        inputLog.put("watermarkTo", max.toString());
     }
 
-    private String sanitizeType(String type) {
-        if (type == null || type.isEmpty()) return "VARCHAR(255)";
-        String upperType = type.toUpperCase();
-        if (upperType.equals("VARCHAR") || upperType.equals("STRING")) {
-            return "VARCHAR(255)";
+    private void checkCancelled(TaskRunner.Run run) {
+        if (run.isCancelled()) {
+            throw new CancellationException("Task cancelled by user");
         }
-        if (upperType.equals("INT") || upperType.equals("INTEGER")) {
-            return "INT";
+    }
+
+    private void cancelStatement(Statement stmt) {
+        try {
+            stmt.cancel();
+        } catch (SQLException e) {
+            log.warn("Failed to cancel statement: {}", e.getMessage());
         }
-        if (upperType.equals("DATETIME") || upperType.equals("TIMESTAMP")) {
-            return "DATETIME";
+    }
+
+    private String checkpointJson(CheckpointTracker checkpoint) {
+        try {
+            return objectMapper.writeValueAsString(checkpoint.state());
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to serialize checkpoint", e);
         }
-        return type;
     }
 
-    private List<Map<String, Object>> applyMapping(List<Map<String, Object>> data, List<JsonNode> mappingNodes) {
-        if (mappingNodes.isEmpty()) return data;
+    private Map<String, Object> pipelineLog(SyncPipeline pipeline) {
+        Map<String, Object> pLog = new HashMap<>();
+        pLog.put("nodeType", "PIPELINE");
+        pLog.put("nodeName", "执行管道");
+        pLog.putAll(pipeline.metrics());
+        return pLog;
+    }
 
-        List<Map<String, Object>> currentData = data;
-        
-        // 按顺序应用所有映射节点
-        for (JsonNode mappingNode : mappingNodes) {
-            JsonNode mappings = mappingNode.path("data").path("mappings");
-            if (!mappings.isArray() || mappings.isEmpty()) continue;
+    private void processBatch(PipelineBatch batch, ExecutionPlan plan, ValueConverter[] converters, DataSource targetDs,
+                              SourcePurger purger,
+                              int sourcePkIndex, RunProgressRegistry.RunProgress progress, AtomicLong totalSyncCountAtomic,
+                              WatermarkTracker watermark, CheckpointTracker checkpoint, AdaptiveBatchController adaptive,
+                              TableWriter.WriteStats writeStats, TaskRunner.Run run) {
+        long batchStart = System.currentTimeMillis();
+        RowBatch currentBatch = batch.getSource();
+        int batchNum = batch.getSequence();
+        // BULK_LOAD 只能在声明支持 LOCAL INFILE 的连接上执行，本批次用哪种连接在取连接前确定
+        boolean bulkLoad = plan.isBulkLoad() && tableWriter.isBulkLoadAvailable(plan.getTargetDataSourceId());
+        try (Connection threadTargetConn = bulkLoad
+                ? poolRegistry.getBulkLoadConnection(targetDs) : poolRegistry.getConnection(targetDs)) {
+            threadTargetConn.setAutoCommit(false);
+            
+            // 映射已在转换阶段完成
+            RowBatch finalMappedData = batch.getOutput();
+
+            long insertStart = System.currentTimeMillis();
+            long writeNanos;
+            long commitNanos;
+            int lockConflicts;
+            try {
+                long writeStart = System.nanoTime();
+                lockConflicts = tableWriter.writeBatch(threadTargetConn, bulkLoad, plan, converters, finalMappedData, writeStats);
+                // 任务已被停止时不再提交进行中的批次
+                checkCancelled(run);
+                long commitStart = System.nanoTime();
+                writeNanos = commitStart - writeStart;
+                threadTargetConn.commit();
+                commitNanos = System.nanoTime() - commitStart;
+            } catch (Exception e) {
+                threadTargetConn.rollback();
+                throw e;
+            }
+            long insertEnd = System.currentTimeMillis();
+            if (adaptive != null) {
+                adaptive.observe(finalMappedData.size(), writeNanos, commitNanos, lockConflicts);
+            }
+            // 按主键分片时，读取批次的所有分片都提交后才推进水位、检查点和计数
+            if (!batch.completePart()) {
+                log.debug("Batch {} shard {} processed: size={}", batchNum, batch.getShard(), finalMappedData.size());
+                return;
+            }
+            if (watermark != null) {
+                watermark.observe(currentBatch);
+            }
+            if (checkpoint != null) {
+                checkpoint.committed(currentBatch);
+            }
             
-            List<Map<String, Object>> nextData = new ArrayList<>();
-            for (Map<String, Object> row : currentData) {
-                Map<String, Object> newRow = new HashMap<>();
-                for (JsonNode m : mappings) {
-                    String source = m.path("source").asText();
-                    String target = m.path("target").asText();
-                    if (!source.isEmpty() && row.containsKey(source)) {
-                        newRow.put(target.isEmpty() ? source : target, row.get(source));
+            totalSyncCountAtomic.addAndGet(currentBatch.size());
+            // 只更新内存中的进度，由 RunProgressRegistry 定时合并写库
+            progress.addProcessed(currentBatch.size());
+            
+            long purgeWait = 0;
+            // 目标事务已提交，把这批主键交给清理阶段删除源数据
+            if (purger != null) {
+                long purgeStart = System.currentTimeMillis();
+                RowBatch.Column pkColumn = currentBatch.column(sourcePkIndex);
+                List<Object> keys = new ArrayList<>(currentBatch.size());
+                for (int row = 0; row < currentBatch.size(); row++) {
+                    if (!pkColumn.isNull(row)) {
+                        keys.add(pkColumn.getObject(row));
                     }
                 }
-                nextData.add(newRow);
+                purger.submit(keys);
+                purgeWait = System.currentTimeMillis() - purgeStart;
             }
-            currentData = nextData;
+            
+            long totalBatchDuration = System.currentTimeMillis() - batchStart;
+            log.info("Batch {} processed: size={}, total={}ms [Insert: {}ms, Purge wait: {}ms]", 
+                    batchNum, currentBatch.size(), totalBatchDuration, (insertEnd - insertStart), purgeWait);
+
+        } catch (CancellationException e) {
+            log.info("Batch {} rolled back, task cancelled", batchNum);
+            throw e;
+        } catch (Exception e) {
+            log.error("Batch processing failed for batch " + batchNum, e);
+            throw new RuntimeException(e);
         }
-        
-        return currentData;
     }
 
-    private void insertBatch(Connection conn, String tableName, List<Map<String, String>> fields, 
-                             List<Map<String, Object>> data, String primaryKey, String conflictStrategy) throws SQLException {
-        if (data.isEmpty()) return;
-
-        boolean useUpsert = !primaryKey.isEmpty() && "UPDATE".equalsIgnoreCase(conflictStrategy);
-        boolean useIgnore = !primaryKey.isEmpty() && "IGNORE".equalsIgnoreCase(conflictStrategy);
-
-        StringBuilder sql = new StringBuilder();
-        if (useIgnore) {
-            sql.append("INSERT IGNORE INTO `").append(tableName).append("` (");
-        } else {
-            sql.append("INSERT INTO `").append(tableName).append("` (");
+    /**
+     * 与读取并行执行的 COUNT(*)，使用单独的连接，结果到达时更新运行进度的总数；读取先结束时取消。
+     */
+    private AsyncCount startAsyncCount(DataSource sourceDs, SourceQuery query, RunProgressRegistry.RunProgress progress,
+                                       TaskRunner.Run run) {
+        // 带 LIMIT 的查询总数可能有误导性，不统计
+        if (query.getBaseSql().toLowerCase().contains("limit")) {
+            return null;
         }
-        
-        StringBuilder values = new StringBuilder("VALUES (");
-        List<String> colNames = new ArrayList<>();
-        for (int i = 0; i < fields.size(); i++) {
-            String col = fields.get(i).get("name");
-            colNames.add(col);
-            sql.append("`").append(col).append("` ");
-            values.append("?");
-            if (i < fields.size() - 1) {
-                sql.append(", ");
-                values.append(", ");
+        String countSql = "SELECT COUNT(*) FROM (" + query.toSql() + ") as t";
+        AsyncCount count = new AsyncCount();
+        count.future = run.getScope().fork(() -> {
+            long start = System.currentTimeMillis();
+            try (Connection conn = poolRegistry.getConnection(sourceDs);
+                 PreparedStatement stmt = conn.prepareStatement(countSql)) {
+                count.statement = stmt;
+                if (count.cancelled) return -1;
+                query.bind(stmt);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    int total = rs.next() ? rs.getInt(1) : -1;
+                    progress.setTotal(total, false);
+                    log.info("Source count of log {} finished in {}ms: {}", progress.getSyncLogId(), System.currentTimeMillis() - start, total);
+                    return total;
+                }
+            } catch (SQLException e) {
+                if (!count.cancelled) {
+                    log.warn("Failed to get source count: {}", e.getMessage());
+                }
+                return -1;
             }
-        }
-        sql.append(") ").append(values).append(")");
+        });
+        run.onCancel(count::cancel);
+        return count;
+    }
+
+    private final class AsyncCount {
+        private Future<Integer> future;
+        private volatile Statement statement;
+        private volatile boolean cancelled;
 
-        if (useUpsert) {
-            sql.append(" ON DUPLICATE KEY UPDATE ");
-            List<String> updateParts = new ArrayList<>();
-            for (String col : colNames) {
-                if (col.equalsIgnoreCase(primaryKey)) continue;
-                // Use VALUES(col) to ensure update with current values
-                updateParts.add("`" + col + "` = VALUES(`" + col + "`) ");
+        void cancel() {
+            if (future.isDone()) return;
+            cancelled = true;
+            Statement stmt = statement;
+            if (stmt != null) {
+                cancelStatement(stmt);
             }
-            sql.append(String.join(", ", updateParts));
+            future.cancel(true);
         }
 
-        String finalSql = sql.toString();
-        
-        int maxRetries = 5;
-        int retryCount = 0;
-        SQLException lastException = null;
-        Random random = new Random();
-
-        while (retryCount < maxRetries) {
-            try (PreparedStatement pstmt = conn.prepareStatement(finalSql)) {
-                for (Map<String, Object> row : data) {
-                    for (int i = 0; i < colNames.size(); i++) {
-                        pstmt.setObject(i + 1, row.get(colNames.get(i)));
-                    }
-                    pstmt.addBatch();
-                }
-                pstmt.executeBatch();
-                return; // Success
-            } catch (SQLException e) {
-                lastException = e;
-                // MySQL Error Codes: 1205 (Lock wait timeout exceeded), 1213 (Deadlock found)
-                if (e.getErrorCode() == 1205 || e.getErrorCode() == 1213) {
-                    retryCount++;
-                    log.warn("Database lock issue (code: {}). Retrying {}/{}...", e.getErrorCode(), retryCount, maxRetries);
-                    try {
-                        // Wait with exponential backoff and jitter
-                        long sleepTime = (long) (Math.pow(2, retryCount) * 1000) + random.nextInt(1000);
-                        Thread.sleep(sleepTime);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw e;
+        /**
+         * 计数已完成时把结果带入最终保存的 SyncLog，否则取消。
+         */
+        void finish(SyncLog syncLog) {
+            if (future.isDone() && !future.isCancelled()) {
+                try {
+                    int total = future.get();
+                    if (total >= 0) {
+                        syncLog.setTotalCount(total);
                     }
-                } else {
-                    throw e; // Other SQL exceptions should not be retried
+                } catch (Exception e) {
+                    // 计数失败不影响运行结果
                 }
+            } else {
+                cancel();
             }
         }
-        throw lastException;
     }
 
-    private void deleteFromSource(Connection conn, String tableName, String primaryKey, List<Map<String, Object>> data) throws SQLException {
-        if (data.isEmpty()) return;
-
-        StringBuilder sql = new StringBuilder("DELETE FROM `")
-                .append(tableName)
-                .append("` WHERE `")
-                .append(primaryKey)
-                .append("` = ?");
-
-        String finalSql = sql.toString();
-        int maxRetries = 5;
-        int retryCount = 0;
-        SQLException lastException = null;
-        Random random = new Random();
-
-        while (retryCount < maxRetries) {
-            try (PreparedStatement pstmt = conn.prepareStatement(finalSql)) {
-                for (Map<String, Object> row : data) {
-                    Object pkValue = row.get(primaryKey);
-                    if (pkValue == null) {
-                        // Try case-insensitive lookup
-                        for (String key : row.keySet()) {
-                            if (key.equalsIgnoreCase(primaryKey)) {
-                                pkValue = row.get(key);
-                                break;
-                            }
-                        }
-                    }
-
-                    if (pkValue != null) {
-                        pstmt.setObject(1, pkValue);
-                        pstmt.addBatch();
-                    }
+    /**
+     * 用 EXPLAIN 的行数估算（各表 rows * filtered 之积）作为进度总数；EXPLAIN 不可用时，
+     * 单表查询退回 information_schema.TABLES.TABLE_ROWS。无法估算时返回 -1。
+     */
+    private int estimateSourceCount(Connection conn, SourceQuery query) {
+        try (PreparedStatement ps = conn.prepareStatement("EXPLAIN " + query.toSql())) {
+            query.bind(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                double rows = 1;
+                boolean found = false;
+                while (rs.next()) {
+                    String table = rs.getString("table");
+                    long tableRows = rs.getLong("rows");
+                    if (rs.wasNull() || table == null || table.startsWith("<")) continue;
+                    double filtered = rs.getDouble("filtered");
+                    if (rs.wasNull()) filtered = 100;
+                    rows *= tableRows * filtered / 100;
+                    found = true;
                 }
-                int[] results = pstmt.executeBatch();
-                log.info("Deleted {} records from source table {}", results.length, tableName);
-                return; // Success
-            } catch (SQLException e) {
-                lastException = e;
-                if (e.getErrorCode() == 1205 || e.getErrorCode() == 1213) {
-                    retryCount++;
-                    log.warn("Database lock issue in deleteFromSource (code: {}). Retrying {}/{}...", e.getErrorCode(), retryCount, maxRetries);
-                    try {
-                        long sleepTime = (long) (Math.pow(2, retryCount) * 1000) + random.nextInt(1000);
-                        Thread.sleep(sleepTime);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw e;
-                    }
-                } else {
-                    throw e;
+                if (found) {
+                    return (int) Math.min(Integer.MAX_VALUE, Math.round(rows));
                 }
             }
+        } catch (SQLException e) {
+            log.warn("Failed to estimate source count with EXPLAIN: {}", e.getMessage());
         }
-        throw lastException;
-    }
 
-    private Object convertType(Object value, String targetType) {
-        if (value == null) return null;
-        if (targetType == null) return value;
-
-        String type = targetType.toUpperCase();
-        try {
-            if (type.contains("INT") || type.contains("BIGINT")) {
-                if (value instanceof Number) return ((Number) value).longValue();
-                return Long.parseLong(value.toString());
-            } else if (type.contains("DECIMAL") || type.contains("DOUBLE") || type.contains("FLOAT")) {
-                if (value instanceof Number) return ((Number) value).doubleValue();
-                return Double.parseDouble(value.toString());
-            } else if (type.contains("DATETIME") || type.contains("TIMESTAMP")) {
-                // Keep as is if it's already a date/time object, otherwise string
-                return value;
-            } else if (type.contains("BOOLEAN")) {
-                if (value instanceof Boolean) return value;
-                String s = value.toString().toLowerCase();
-                return "true".equals(s) || "1".equals(s) || "yes".equals(s);
-            } else if (type.contains("JSON")) {
-                // If it's already a map or list, maybe stringify it? 
-                // For now, keep as is and let JDBC handle it
-                return value;
+        Matcher matcher = SINGLE_TABLE_FROM.matcher(query.getBaseSql());
+        if (matcher.find() && !query.getBaseSql().toLowerCase().contains(" join ")) {
+            try (PreparedStatement ps = conn.prepareStatement("SELECT TABLE_ROWS FROM information_schema.TABLES "
+                    + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?")) {
+                ps.setString(1, matcher.group(1));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        long tableRows = rs.getLong(1);
+                        return rs.wasNull() ? -1 : (int) Math.min(Integer.MAX_VALUE, tableRows);
+                    }
+                }
+            } catch (SQLException e) {
+                log.warn("Failed to read table rows estimate: {}", e.getMessage());
             }
-        } catch (Exception e) {
-            log.warn("Failed to convert value '{}' to type {}: {}", value, targetType, e.getMessage());
         }
-        
-        return value;
+        return -1;
     }
 }
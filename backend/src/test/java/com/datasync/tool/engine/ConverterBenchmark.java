@@ -0,0 +1,217 @@
+package com.datasync.tool.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * 对比按目标类型字符串选择的旧转换器（ValueConverter.forTargetType）与按（源列存储类型, 目标类型）选择的
+ * {@link ConverterRegistry}：每次调用把一个批次的所有行绑定到 PreparedStatement。
+ * 旧路径中 DECIMAL 源列按 getObject 读取为对象列，新路径为 DECIMAL 列。
+ * PreparedStatement 用动态代理记录绑定的值，两条路径的代理开销相同，结果只用于相对比较。
+ * 在测试 classpath 上运行 main 方法，先输出 DECIMAL 精度对比再运行基准。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConverterBenchmark {
+    private static final int ROWS = 1024;
+
+    @Param({"LONG", "DECIMAL", "STRING"})
+    private String source;
+
+    @Param({"BIGINT", "DECIMAL(24,6)", "DOUBLE"})
+    private String targetType;
+
+    private RowBatch.Column legacyColumn;
+    private RowBatch.Column column;
+    private ValueConverter legacy;
+    private ValueConverter converter;
+    private Sink sink;
+
+    @Setup
+    public void setup() {
+        switch (source) {
+            case "LONG" -> {
+                legacyColumn = fill(RowSchema.ColumnKind.LONG, i -> (long) i * 7919);
+                column = legacyColumn;
+            }
+            case "DECIMAL" -> {
+                legacyColumn = fill(RowSchema.ColumnKind.OBJECT, ConverterBenchmark::decimal);
+                column = fill(RowSchema.ColumnKind.DECIMAL, ConverterBenchmark::decimal);
+            }
+            default -> {
+                legacyColumn = fill(RowSchema.ColumnKind.OBJECT, i -> Long.toString((long) i * 7919));
+                column = legacyColumn;
+            }
+        }
+        legacy = Legacy.forTargetType(targetType);
+        converter = ConverterRegistry.resolve(column.kind(), ConverterRegistry.TargetType.of(targetType));
+        sink = new Sink();
+    }
+
+    @Benchmark
+    public void legacyConvertType(Blackhole bh) throws SQLException {
+        bindAll(legacy, legacyColumn, bh);
+    }
+
+    @Benchmark
+    public void converterRegistry(Blackhole bh) throws SQLException {
+        bindAll(converter, column, bh);
+    }
+
+    private void bindAll(ValueConverter c, RowBatch.Column values, Blackhole bh) throws SQLException {
+        for (int row = 0; row < ROWS; row++) {
+            c.bind(sink.statement, 1, values, row);
+        }
+        bh.consume(sink.last);
+    }
+
+    /**
+     * 先输出两条路径写入 DECIMAL(24,6) 时不精确的行数，再运行全部基准。
+     */
+    public static void main(String[] args) throws RunnerException, SQLException {
+        ConverterBenchmark b = new ConverterBenchmark();
+        b.source = "DECIMAL";
+        b.targetType = "DECIMAL(24,6)";
+        b.setup();
+        System.out.printf("DECIMAL(24,6) rows bound inexactly: legacy %d of %d, registry %d of %d%n",
+                inexact(b.legacy, b.legacyColumn), ROWS, inexact(b.converter, b.column), ROWS);
+
+        new Runner(new OptionsBuilder().include(ConverterBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static int inexact(ValueConverter c, RowBatch.Column values) throws SQLException {
+        Sink sink = new Sink();
+        int count = 0;
+        for (int row = 0; row < ROWS; row++) {
+            c.bind(sink.statement, 1, values, row);
+            // setDouble 绑定的 double 按其十进制表示写入 DECIMAL 列
+            BigDecimal bound = new BigDecimal(sink.last.toString());
+            if (bound.compareTo(decimal(row)) != 0) count++;
+        }
+        return count;
+    }
+
+    private static BigDecimal decimal(int i) {
+        // 18 位整数部分加 6 位小数，超出 double 的 15~17 位有效数字
+        return new BigDecimal("123456789012345678.000000").add(BigDecimal.valueOf(i * 7919L, 6));
+    }
+
+    private static RowBatch.Column fill(RowSchema.ColumnKind kind, IntFunction<Object> value) {
+        RowBatch.Column c = RowBatch.Column.create(kind, ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            c.setValue(i, value.apply(i));
+        }
+        return c;
+    }
+
+    /**
+     * 只记录最后一次绑定值的 PreparedStatement。
+     */
+    private static final class Sink {
+        private Object last;
+        private final PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> {
+                    if (method.getName().startsWith("set") && args != null && args.length >= 2) {
+                        last = args[1];
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * 旧的转换器：按目标类型字符串的子串选择，DECIMAL 目标经 double 绑定。
+     */
+    private static final class Legacy {
+        static ValueConverter forTargetType(String targetType) {
+            String type = targetType.toUpperCase(Locale.ROOT);
+            if (type.contains("INT")) {
+                return INTEGER;
+            } else if (type.contains("DECIMAL") || type.contains("DOUBLE") || type.contains("FLOAT")) {
+                return FLOATING;
+            }
+            return PASS_THROUGH;
+        }
+
+        static final ValueConverter PASS_THROUGH = (ps, idx, column, row) -> {
+            if (column.isNull(row)) {
+                ps.setObject(idx, null);
+                return;
+            }
+            switch (column.kind()) {
+                case LONG -> ps.setLong(idx, column.getLong(row));
+                case DOUBLE -> ps.setDouble(idx, column.getDouble(row));
+                default -> ps.setObject(idx, column.getObject(row));
+            }
+        };
+
+        static final ValueConverter INTEGER = (ps, idx, column, row) -> {
+            if (column.isNull(row)) {
+                ps.setObject(idx, null);
+                return;
+            }
+            switch (column.kind()) {
+                case LONG, DOUBLE -> ps.setLong(idx, column.getLong(row));
+                default -> {
+                    Object value = column.getObject(row);
+                    if (value instanceof Number) {
+                        ps.setLong(idx, ((Number) value).longValue());
+                    } else {
+                        try {
+                            ps.setLong(idx, Long.parseLong(value.toString()));
+                        } catch (NumberFormatException e) {
+                            ps.setObject(idx, value);
+                        }
+                    }
+                }
+            }
+        };
+
+        static final ValueConverter FLOATING = (ps, idx, column, row) -> {
+            if (column.isNull(row)) {
+                ps.setObject(idx, null);
+                return;
+            }
+            switch (column.kind()) {
+                case LONG, DOUBLE -> ps.setDouble(idx, column.getDouble(row));
+                default -> {
+                    Object value = column.getObject(row);
+                    if (value instanceof Number) {
+                        ps.setDouble(idx, ((Number) value).doubleValue());
+                    } else {
+                        try {
+                            ps.setDouble(idx, Double.parseDouble(value.toString()));
+                        } catch (NumberFormatException e) {
+                            ps.setObject(idx, value);
+                        }
+                    }
+                }
+            }
+        };
+    }
+}